@@ -0,0 +1,82 @@
+package org.kthing.transactionsmicroservice.benchmark;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CSVUtil;
+import org.kthing.transactionsmicroservice.util.CsvLine;
+import org.kthing.transactionsmicroservice.util.TransactionRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of turning a CSV line into a {@link TransactionRecord}: {@link CsvLine#tokenize} followed
+ * by {@link CSVUtil#decodeRecord}, and the {@code Transaction} built for returned rows. The lines are
+ * the first rows of the smallest generated file, held in memory so that no I/O is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParserBenchmark {
+
+    private static final int LINES = 4096;
+
+    private final CsvLine line = new CsvLine();
+    private final TransactionRecord record = new TransactionRecord();
+    private ByteBuffer buffer;
+    private final int[] starts = new int[LINES];
+    private final int[] ends = new int[LINES];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] bytes = Files.readAllBytes(BenchmarkData.incomes(60_000));
+        buffer = ByteBuffer.wrap(bytes);
+        int position = BenchmarkData.HEADER.length() + 1;
+        for (int i = 0; i < LINES; i++) {
+            int end = position;
+            while (bytes[end] != '\n') {
+                end++;
+            }
+            starts[i] = position;
+            ends[i] = end;
+            position = end + 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void decodeRecord(Blackhole blackhole) {
+        for (int i = 0; i < LINES; i++) {
+            line.tokenize(buffer, starts[i], ends[i]);
+            CSVUtil.decodeRecord(line, record);
+            blackhole.consume(record);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void decodeTransaction(Blackhole blackhole) {
+        for (int i = 0; i < LINES; i++) {
+            line.tokenize(buffer, starts[i], ends[i]);
+            CSVUtil.decodeRecord(line, record);
+            blackhole.consume(record.toTransaction(Transaction.TransactionType.INCOME));
+        }
+    }
+}
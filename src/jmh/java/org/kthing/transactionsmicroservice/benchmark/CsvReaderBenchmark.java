@@ -0,0 +1,90 @@
+package org.kthing.transactionsmicroservice.benchmark;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CsvFileVersion;
+import org.kthing.transactionsmicroservice.util.CsvTimeIndex;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PagedCsvReader}: reading the records of one page from the first and the last offsets of the
+ * time index, the binary search that bounds a date range, and the full scan that builds the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CsvReaderBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"60000", "1000000", "10000000"})
+    int rows;
+
+    private String filePath;
+    private CsvFileVersion version;
+    /** A freshly built index has a single segment. */
+    private CsvTimeIndex.Segment index;
+    private long[] firstPageOffsets;
+    private long[] deepPageOffsets;
+    private long middleEpochSecond;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filePath = BenchmarkData.incomes(rows).toString();
+        version = PagedCsvReader.fileVersion(filePath);
+        index = CsvTimeIndex.build(filePath, version).getSegments().get(0);
+        firstPageOffsets = offsets(0);
+        deepPageOffsets = offsets(index.size() - PAGE_SIZE);
+        middleEpochSecond = index.epochSecond(index.size() / 2);
+    }
+
+    @Benchmark
+    public List<Transaction> readFirstPage() {
+        return PagedCsvReader.readTransactionsAt(filePath, Transaction.TransactionType.INCOME, firstPageOffsets, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Transaction> readDeepPage() {
+        return PagedCsvReader.readTransactionsAt(filePath, Transaction.TransactionType.INCOME, deepPageOffsets, PAGE_SIZE);
+    }
+
+    /** Where a date-bounded run starts or ends, which is also what decides whether more pages follow. */
+    @Benchmark
+    public int findDateBound() {
+        return index.firstPositionAfter(middleEpochSecond);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public CsvTimeIndex buildTimeIndex() {
+        return CsvTimeIndex.build(filePath, version);
+    }
+
+    private long[] offsets(int from) {
+        long[] offsets = new long[PAGE_SIZE];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            offsets[i] = index.offset(from + i);
+        }
+        return offsets;
+    }
+}
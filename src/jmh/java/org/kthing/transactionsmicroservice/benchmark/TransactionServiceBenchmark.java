@@ -0,0 +1,131 @@
+package org.kthing.transactionsmicroservice.benchmark;
+
+import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
+import org.kthing.transactionsmicroservice.service.TransactionService;
+import org.kthing.transactionsmicroservice.store.ColumnarTransactionStore;
+import org.kthing.transactionsmicroservice.store.CsvTransactionStore;
+import org.kthing.transactionsmicroservice.store.TimeOrderedRun;
+import org.kthing.transactionsmicroservice.store.TransactionFilter;
+import org.kthing.transactionsmicroservice.store.TransactionStore;
+import org.kthing.transactionsmicroservice.util.PageToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TransactionService#getTransactions} end to end, for both storage modes, without and with the
+ * account and date filters, and for a page in the middle of the unfiltered results. The page cache is
+ * left out, so every invocation reads its page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TransactionServiceBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"60000", "1000000", "10000000"})
+    int rows;
+
+    @Param({"csv", "memory"})
+    String storageMode;
+
+    private TransactionStore store;
+    private TransactionService service;
+    private String accountId;
+    private LocalDateTime fromDate;
+    private LocalDateTime toDate;
+    private String middlePageToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String incomes = BenchmarkData.incomes(rows).toString();
+        String outcomes = BenchmarkData.outcomes(rows).toString();
+        if ("memory".equals(storageMode)) {
+            ColumnarTransactionStore columnar = new ColumnarTransactionStore();
+            ReflectionTestUtils.setField(columnar, "incomesFilePath", incomes);
+            ReflectionTestUtils.setField(columnar, "outcomesFilePath", outcomes);
+            ReflectionTestUtils.setField(columnar, "snapshotFilePath", "");
+            ReflectionTestUtils.setField(columnar, "pollIntervalMillis", 0L);
+            columnar.load();
+            store = columnar;
+        } else {
+            store = new CsvTransactionStore();
+            ReflectionTestUtils.setField(store, "incomesFilePath", incomes);
+            ReflectionTestUtils.setField(store, "outcomesFilePath", outcomes);
+        }
+        service = new TransactionService();
+        ReflectionTestUtils.setField(service, "transactionStore", store);
+        ReflectionTestUtils.setField(service, "pageSize", PAGE_SIZE);
+
+        accountId = BenchmarkData.accountId(rows);
+        fromDate = BenchmarkData.fromDate();
+        toDate = BenchmarkData.toDate();
+        middlePageToken = middlePageToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (store instanceof ColumnarTransactionStore columnar) {
+            columnar.close();
+        }
+    }
+
+    @Benchmark
+    public TransactionPageResponse firstPage() {
+        return service.getTransactions(null, null, null, null);
+    }
+
+    @Benchmark
+    public TransactionPageResponse middlePage() {
+        return service.getTransactions(null, null, null, middlePageToken);
+    }
+
+    @Benchmark
+    public TransactionPageResponse accountPage() {
+        return service.getTransactions(accountId, null, null, null);
+    }
+
+    @Benchmark
+    public TransactionPageResponse dateRangePage() {
+        return service.getTransactions(null, fromDate, toDate, null);
+    }
+
+    @Benchmark
+    public TransactionPageResponse accountAndDateRangePage() {
+        return service.getTransactions(accountId, fromDate, toDate, null);
+    }
+
+    // after the middle transaction of the first run, as if about half of all rows had been paged through
+    private String middlePageToken() {
+        List<TimeOrderedRun> runs = store.runs(TransactionFilter.of(null, null, null));
+        List<Long> generations = new ArrayList<>();
+        for (TimeOrderedRun run : runs) {
+            if (run.source() == generations.size()) {
+                generations.add(run.generation());
+            }
+        }
+        TimeOrderedRun first = runs.get(0);
+        int middle = first.size() / 2;
+        return new PageToken(first.epochSecond(middle), first.source(), first.sequence(middle), generations).encode();
+    }
+}
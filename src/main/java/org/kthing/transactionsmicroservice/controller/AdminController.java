@@ -0,0 +1,38 @@
+package org.kthing.transactionsmicroservice.controller;
+
+import org.kthing.transactionsmicroservice.model.DuplicateTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.QuarantineResponse;
+import org.kthing.transactionsmicroservice.service.TransactionService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final TransactionService transactionService;
+
+    public AdminController(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * The occurrences of transaction IDs that were already seen, in source order, up to
+     * {@code transaction.duplicates.max-reported} of them, and how many there are in total.
+     */
+    @GetMapping("/duplicates")
+    public ResponseEntity<DuplicateTransactionsResponse> getDuplicates() {
+        return ResponseEntity.ok(transactionService.getDuplicates());
+    }
+
+    /**
+     * The records that failed validation when their file was read and are left out of all responses,
+     * up to the first 1000 per file, with the line, field and reason, and how many there are in total.
+     */
+    @GetMapping("/quarantine")
+    public ResponseEntity<QuarantineResponse> getQuarantine() {
+        return ResponseEntity.ok(transactionService.getQuarantine());
+    }
+}
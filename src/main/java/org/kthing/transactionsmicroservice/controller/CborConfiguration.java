@@ -0,0 +1,21 @@
+package org.kthing.transactionsmicroservice.controller;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Answers requests that accept {@code application/cbor} with CBOR instead of JSON: the same properties,
+ * serializers and {@code spring.jackson.*} settings, in a compact binary encoding meant for internal
+ * callers. JSON stays the default.
+ */
+@Configuration
+public class CborConfiguration {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
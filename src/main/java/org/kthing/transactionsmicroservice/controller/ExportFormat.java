@@ -0,0 +1,86 @@
+package org.kthing.transactionsmicroservice.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.service.TransactionExport;
+import org.springframework.http.MediaType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Body formats of {@code GET /api/transactions/export}. Both flush after every batch, so the client
+ * receives rows while the export is still running.
+ */
+@Getter
+enum ExportFormat {
+
+    /** One JSON object per line, serialized like the transactions of a page. */
+    NDJSON(MediaType.parseMediaType("application/x-ndjson"), "ndjson") {
+        @Override
+        void write(TransactionExport export, OutputStream out, ObjectMapper objectMapper) throws IOException {
+            ObjectWriter writer = objectMapper.writerFor(Transaction.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                export.writeTo(batch -> {
+                    for (Transaction transaction : batch) {
+                        writer.writeValue(generator, transaction);
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                });
+            }
+        }
+    },
+
+    /** The columns of the source files followed by the transaction type. */
+    CSV(MediaType.parseMediaType("text/csv"), "csv") {
+        @Override
+        void write(TransactionExport export, OutputStream out, ObjectMapper objectMapper) throws IOException {
+            CSVFormat format = CSVFormat.DEFAULT.builder()
+                    .setHeader("TRANSACTION_ID", "CUSTOMER_ID", "ACCOUNT_ID", "AMOUNT", "DATE_TIME", "TYPE")
+                    .setRecordSeparator('\n')
+                    .build();
+            try (CSVPrinter printer = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), format)) {
+                export.writeTo(batch -> {
+                    for (Transaction transaction : batch) {
+                        printer.printRecord(transaction.getTransactionId(), transaction.getCustomerId(),
+                                transaction.getAccountId(), transaction.getAmount().toPlainString(),
+                                DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(transaction.getDateTime()), transaction.getType());
+                    }
+                    printer.flush();
+                });
+            }
+        }
+    };
+
+    private final MediaType mediaType;
+    private final String fileExtension;
+
+    ExportFormat(MediaType mediaType, String fileExtension) {
+        this.mediaType = mediaType;
+        this.fileExtension = fileExtension;
+    }
+
+    abstract void write(TransactionExport export, OutputStream out, ObjectMapper objectMapper) throws IOException;
+
+    static ExportFormat of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new TransactionServiceException("Unsupported export format: " + name);
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package org.kthing.transactionsmicroservice.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.kthing.transactionsmicroservice.model.BatchTransactionsRequest;
+import org.kthing.transactionsmicroservice.model.BatchTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.LargestTransactionsResponse;
 import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
+import org.kthing.transactionsmicroservice.model.TransactionRollupResponse;
+import org.kthing.transactionsmicroservice.service.TransactionExport;
 import org.kthing.transactionsmicroservice.service.TransactionService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 
@@ -16,19 +28,90 @@ import java.time.LocalDateTime;
 public class TransactionController {
 
     private final TransactionService transactionService;
+    private final ObjectMapper objectMapper;
 
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService, ObjectMapper objectMapper) {
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * One page of transactions. The ETag is the data version, so a client polling with
+     * {@code If-None-Match} gets a 304 without the page being read until the data changes. JSON and
+     * CBOR bodies share the ETag, so responses vary by {@code Accept}.
+     */
     @GetMapping
     public ResponseEntity<TransactionPageResponse> getTransactions(
             @RequestParam(required = false) String accountId,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
-            @RequestParam(required = false) String pageToken) {
-        
+            @RequestParam(required = false) String pageToken,
+            WebRequest webRequest,
+            HttpServletResponse servletResponse) {
+
+        servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        // taken before the page is read, so a change while reading yields a new ETag on the next request
+        if (webRequest.checkNotModified("\"" + Long.toHexString(transactionService.dataVersion()) + "\"")) {
+            return null;
+        }
         TransactionPageResponse response = transactionService.getTransactions(accountId, fromDate, toDate, pageToken);
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    /**
+     * The first page, or the page after each account's {@code pageToken}, of many accounts at once,
+     * keyed by account. The request's date range applies to accounts without one of their own.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchTransactionsResponse> getTransactionsBatch(@RequestBody BatchTransactionsRequest request) {
+        return ResponseEntity.ok(transactionService.getTransactionsBatch(request));
+    }
+
+    /**
+     * Income and outcome totals, counts and amount extremes per {@code hour}, {@code day} (default) or
+     * {@code month}, plus the totals of the whole range. Served from rollups, so the date range is
+     * widened to whole hours.
+     */
+    @GetMapping("/rollups")
+    public ResponseEntity<TransactionRollupResponse> getRollups(
+            @RequestParam(required = false) String accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(defaultValue = "day") String bucket) {
+
+        return ResponseEntity.ok(transactionService.getRollups(accountId, fromDate, toDate, bucket));
+    }
+
+    /**
+     * The {@code limit} (default 100) matching transactions with the largest amounts, largest first,
+     * optionally only {@code INCOME} or {@code OUTCOME} ones.
+     */
+    @GetMapping("/largest")
+    public ResponseEntity<LargestTransactionsResponse> getLargestTransactions(
+            @RequestParam(required = false) String accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(transactionService.getLargestTransactions(accountId, fromDate, toDate, type, limit));
+    }
+
+    /**
+     * Streams every matching transaction in time order as {@code ndjson} (default) or {@code csv}. The
+     * filters are checked before the response starts; a client that disconnects stops the export.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @RequestParam(required = false) String accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(defaultValue = "ndjson") String format) {
+
+        ExportFormat exportFormat = ExportFormat.of(format);
+        TransactionExport export = transactionService.exportTransactions(accountId, fromDate, toDate);
+        return ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"transactions." + exportFormat.getFileExtension() + "\"")
+                .body(out -> exportFormat.write(export, out, objectMapper));
+    }
+}
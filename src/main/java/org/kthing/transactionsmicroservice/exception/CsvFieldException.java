@@ -0,0 +1,18 @@
+package org.kthing.transactionsmicroservice.exception;
+
+import lombok.Getter;
+
+/**
+ * A field of a CSV record that is missing or fails validation.
+ */
+@Getter
+public class CsvFieldException extends TransactionServiceException {
+
+    /** The field's header name. */
+    private final String field;
+
+    public CsvFieldException(String field, String message) {
+        super(message);
+        this.field = field;
+    }
+}
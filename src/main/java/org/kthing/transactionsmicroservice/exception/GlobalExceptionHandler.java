@@ -1,10 +1,13 @@
 package org.kthing.transactionsmicroservice.exception;
 
+import org.kthing.transactionsmicroservice.service.TransactionMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.AsyncRequestNotUsableException;
 
 import java.io.FileNotFoundException;
 import java.time.LocalDateTime;
@@ -14,23 +17,36 @@ import java.util.Map;
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
+    @Autowired(required = false)
+    private TransactionMetrics metrics = TransactionMetrics.NOOP;
+
     @ExceptionHandler(TransactionServiceException.class)
     public ResponseEntity<Object> handleTransactionServiceException(TransactionServiceException ex, WebRequest request) {
+        metrics.recordError(ex);
         return createErrorResponse(HttpStatus.BAD_REQUEST, "Transaction service error", ex.getMessage());
     }
 
     @ExceptionHandler(FileNotFoundException.class)
     public ResponseEntity<Object> handleFileNotFoundException(FileNotFoundException ex, WebRequest request) {
+        metrics.recordError(ex);
         return createErrorResponse(HttpStatus.NOT_FOUND, "Transaction data file not found", ex.getMessage());
     }
     
+    // the client went away, e.g. in the middle of an export; there is nobody left to answer
+    @ExceptionHandler(AsyncRequestNotUsableException.class)
+    public void handleDisconnectedClient(AsyncRequestNotUsableException ex) {
+        metrics.recordError(ex);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleGlobalException(Exception ex, WebRequest request) {
+        metrics.recordError(ex);
         return createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Internal server error", ex.getMessage());
     }
     
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<Object> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
+        metrics.recordError(ex);
         return createErrorResponse(HttpStatus.BAD_REQUEST, "Bad request", ex.getMessage());
     }
     
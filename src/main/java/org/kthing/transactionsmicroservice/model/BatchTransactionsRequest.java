@@ -0,0 +1,33 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Accounts to page through together. The date range applies to every account that does not set its own.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTransactionsRequest {
+    private LocalDateTime fromDate;
+    private LocalDateTime toDate;
+    private List<AccountQuery> accounts;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AccountQuery {
+        private String accountId;
+        private LocalDateTime fromDate;
+        private LocalDateTime toDate;
+        private String pageToken;
+    }
+}
@@ -0,0 +1,17 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTransactionsResponse {
+    /** One page per requested account, in request order. */
+    private Map<String, TransactionPageResponse> accounts;
+}
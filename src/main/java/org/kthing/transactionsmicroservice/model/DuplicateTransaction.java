@@ -0,0 +1,16 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DuplicateTransaction {
+    private String transactionId;
+    private String file;
+    private Transaction.TransactionType type;
+}
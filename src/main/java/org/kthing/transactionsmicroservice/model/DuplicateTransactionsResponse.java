@@ -0,0 +1,17 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DuplicateTransactionsResponse {
+    private long count;
+    private List<DuplicateTransaction> duplicates;
+}
@@ -0,0 +1,19 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LargestTransactionsResponse {
+    private String accountId;
+    private Transaction.TransactionType type;
+    private int limit;
+    private List<Transaction> transactions;
+}
@@ -0,0 +1,19 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuarantinedRecord {
+    private String file;
+    /** {@code null} for a record appended after the file was loaded. */
+    private Long lineNumber;
+    private long offset;
+    private String field;
+    private String reason;
+}
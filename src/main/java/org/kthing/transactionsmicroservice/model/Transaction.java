@@ -1,5 +1,6 @@
 package org.kthing.transactionsmicroservice.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,6 +13,7 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonSerialize(using = TransactionSerializer.class)
 public class Transaction {
     private String transactionId;
     private String customerId;
@@ -0,0 +1,26 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionRollup {
+    private LocalDateTime periodStart;
+    private LocalDateTime periodEnd;
+    private BigDecimal totalIncome;
+    private BigDecimal totalOutcome;
+    private BigDecimal net;
+    private long incomeCount;
+    private long outcomeCount;
+    private long count;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+}
@@ -0,0 +1,19 @@
+package org.kthing.transactionsmicroservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionRollupResponse {
+    private String accountId;
+    private String bucket;
+    private TransactionRollup totals;
+    private List<TransactionRollup> buckets;
+}
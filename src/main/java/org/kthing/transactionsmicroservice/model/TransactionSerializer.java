@@ -0,0 +1,108 @@
+package org.kthing.transactionsmicroservice.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes a {@link Transaction} field by field instead of through bean introspection: the property names
+ * and type values are encoded once, and the date is written digit by digit instead of through a
+ * {@link DateTimeFormatter}. The output is what the default serializers write with the application's
+ * settings: properties in declaration order, nulls included, the amount as a number and the date as an
+ * ISO local date-time, or as the configured date serializer writes it if
+ * {@link SerializationFeature#WRITE_DATES_AS_TIMESTAMPS} is enabled. Being a plain serializer, it is used
+ * for every format and every response that holds transactions.
+ */
+public class TransactionSerializer extends StdSerializer<Transaction> {
+
+    private static final SerializedString TRANSACTION_ID = new SerializedString("transactionId");
+    private static final SerializedString CUSTOMER_ID = new SerializedString("customerId");
+    private static final SerializedString ACCOUNT_ID = new SerializedString("accountId");
+    private static final SerializedString AMOUNT = new SerializedString("amount");
+    private static final SerializedString DATE_TIME = new SerializedString("dateTime");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString[] TYPE_NAMES = {
+            new SerializedString(Transaction.TransactionType.INCOME.name()),
+            new SerializedString(Transaction.TransactionType.OUTCOME.name())};
+
+    // yyyy-MM-ddTHH:mm:ss
+    private static final int DATE_TIME_LENGTH = 19;
+
+    public TransactionSerializer() {
+        super(Transaction.class);
+    }
+
+    @Override
+    public void serialize(Transaction transaction, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(transaction);
+        generator.writeFieldName(TRANSACTION_ID);
+        writeString(generator, transaction.getTransactionId());
+        generator.writeFieldName(CUSTOMER_ID);
+        writeString(generator, transaction.getCustomerId());
+        generator.writeFieldName(ACCOUNT_ID);
+        writeString(generator, transaction.getAccountId());
+        generator.writeFieldName(AMOUNT);
+        if (transaction.getAmount() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(transaction.getAmount());
+        }
+        generator.writeFieldName(DATE_TIME);
+        writeDateTime(generator, provider, transaction.getDateTime());
+        generator.writeFieldName(TYPE);
+        if (transaction.getType() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(TYPE_NAMES[transaction.getType().ordinal()]);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, String value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    private static void writeDateTime(JsonGenerator generator, SerializerProvider provider, LocalDateTime dateTime) throws IOException {
+        if (dateTime == null) {
+            generator.writeNull();
+            return;
+        }
+        int year = dateTime.getYear();
+        if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS) || year < 0 || year > 9999
+                || dateTime.getNano() != 0) {
+            // rare enough to go through the configured serializer
+            provider.defaultSerializeValue(dateTime, generator);
+            return;
+        }
+        char[] text = new char[DATE_TIME_LENGTH];
+        digits(text, 0, year, 4);
+        text[4] = '-';
+        digits(text, 5, dateTime.getMonthValue(), 2);
+        text[7] = '-';
+        digits(text, 8, dateTime.getDayOfMonth(), 2);
+        text[10] = 'T';
+        digits(text, 11, dateTime.getHour(), 2);
+        text[13] = ':';
+        digits(text, 14, dateTime.getMinute(), 2);
+        text[16] = ':';
+        digits(text, 17, dateTime.getSecond(), 2);
+        generator.writeString(text, 0, DATE_TIME_LENGTH);
+    }
+
+    private static void digits(char[] text, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.kthing.transactionsmicroservice.service;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.store.SourceFetcher;
+import org.kthing.transactionsmicroservice.store.TimeOrderedMerge;
+import org.kthing.transactionsmicroservice.store.TimeOrderedRun;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+/**
+ * Every transaction matching a query, in the order pages return them. The runs are resolved when the
+ * export is created, so bad filters fail before anything is written; the transactions themselves are
+ * merged and materialized one batch at a time while they are written, so memory use does not grow with
+ * the number of matches.
+ */
+public class TransactionExport {
+
+    private final List<TimeOrderedRun> runs;
+    private final SourceFetcher fetcher;
+    private final int batchSize;
+
+    TransactionExport(List<TimeOrderedRun> runs, SourceFetcher fetcher, int batchSize) {
+        this.runs = runs;
+        this.fetcher = fetcher;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Hands the transactions to {@code writer} batch by batch. An {@link IOException} from the writer,
+     * such as a client that disconnected, or an interrupt stops the export.
+     *
+     * @return the number of transactions written
+     */
+    public long writeTo(BatchWriter writer) throws IOException {
+        int[] positions = new int[runs.size()];
+        long written = 0;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Export interrupted after " + written + " transactions");
+            }
+            TimeOrderedMerge.Page page = TimeOrderedMerge.merge(runs, positions, batchSize, fetcher);
+            if (!page.getTransactions().isEmpty()) {
+                writer.write(page.getTransactions());
+                written += page.getTransactions().size();
+            }
+            if (!page.isHasMore()) {
+                return written;
+            }
+            positions = page.getNextPositions();
+        }
+    }
+
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(List<Transaction> batch) throws IOException;
+    }
+}
@@ -0,0 +1,119 @@
+package org.kthing.transactionsmicroservice.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the page path, exported through the actuator's {@code metrics} and {@code prometheus}
+ * endpoints:
+ * <ul>
+ *     <li>{@code transactions.page.stage}: time per stage, tagged {@code resolve} (finding the runs and
+ *     their bounds, including index builds), {@code select} (the merge that picks the page's rows) and
+ *     {@code materialize} (reading those rows)</li>
+ *     <li>{@code transactions.page.rows.scanned} and {@code .returned}: run positions the merge stepped
+ *     over and transactions it returned, and {@code transactions.page.scan.amplification}, their ratio</li>
+ *     <li>{@code transactions.page.depth}: transactions before the requested page</li>
+ *     <li>{@code transactions.csv.bytes.read}: bytes read from the CSV files</li>
+ *     <li>{@code transactions.page.cache.requests}: page cache lookups, tagged {@code hit}, {@code miss} or
+ *     {@code coalesced} (waited for the same page being read for another request)</li>
+ *     <li>{@code transactions.errors}: exceptions handled, tagged with their class</li>
+ * </ul>
+ * Timers and distributions publish percentile histograms.
+ */
+@Component
+public class TransactionMetrics {
+
+    /** Records nothing: a composite registry without registries hands out no-op meters. */
+    public static final TransactionMetrics NOOP = new TransactionMetrics(new CompositeMeterRegistry(), TransactionPageCache.DISABLED);
+
+    private final MeterRegistry registry;
+    private final Timer resolveTimer;
+    private final Timer selectTimer;
+    private final Timer materializeTimer;
+    private final DistributionSummary rowsScanned;
+    private final DistributionSummary rowsReturned;
+    private final DistributionSummary scanAmplification;
+    private final DistributionSummary pageDepth;
+
+    @Autowired
+    public TransactionMetrics(MeterRegistry registry, TransactionPageCache pageCache) {
+        this.registry = registry;
+        resolveTimer = stageTimer("resolve");
+        selectTimer = stageTimer("select");
+        materializeTimer = stageTimer("materialize");
+        rowsScanned = rowSummary("transactions.page.rows.scanned", "Run positions the merge stepped over for a page");
+        rowsReturned = rowSummary("transactions.page.rows.returned", "Transactions returned in a page");
+        scanAmplification = DistributionSummary.builder("transactions.page.scan.amplification")
+                .description("Run positions stepped over per transaction returned")
+                .publishPercentileHistogram()
+                .register(registry);
+        pageDepth = rowSummary("transactions.page.depth", "Transactions before the requested page");
+
+        FunctionCounter.builder("transactions.csv.bytes.read", PagedCsvReader.class, reader -> PagedCsvReader.bytesRead())
+                .description("Bytes read from the CSV files")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        FunctionCounter.builder("transactions.page.cache.requests", pageCache, cache -> cache.stats().getHits())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("transactions.page.cache.requests", pageCache, cache -> cache.stats().getMisses())
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("transactions.page.cache.requests", pageCache, cache -> cache.stats().getCoalesced())
+                .tag("result", "coalesced")
+                .register(registry);
+        FunctionCounter.builder("transactions.page.cache.requests", pageCache, cache -> cache.stats().getTimedOut())
+                .tag("result", "wait-timeout")
+                .register(registry);
+    }
+
+    void recordResolve(long nanos) {
+        resolveTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a page that was read rather than served from the cache.
+     *
+     * @param depth   transactions before the page
+     * @param scanned run positions stepped over, the returned ones included
+     */
+    void recordPage(long selectNanos, long materializeNanos, long depth, long scanned, int returned) {
+        selectTimer.record(selectNanos, TimeUnit.NANOSECONDS);
+        materializeTimer.record(materializeNanos, TimeUnit.NANOSECONDS);
+        pageDepth.record(depth);
+        rowsScanned.record(scanned);
+        rowsReturned.record(returned);
+        if (returned > 0) {
+            scanAmplification.record((double) scanned / returned);
+        }
+    }
+
+    public void recordError(Throwable error) {
+        registry.counter("transactions.errors", "exception", error.getClass().getSimpleName()).increment();
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("transactions.page.stage")
+                .description("Time spent per stage of a page request")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private DistributionSummary rowSummary(String name, String description) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("rows")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
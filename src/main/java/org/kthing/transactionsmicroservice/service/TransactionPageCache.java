@@ -0,0 +1,194 @@
+package org.kthing.transactionsmicroservice.service;
+
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
+import org.kthing.transactionsmicroservice.store.TransactionFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Least-recently-used cache of pages, bounded by their estimated heap size
+ * ({@code transaction.page-cache.max-bytes}, 0 to disable). Keys hold the resolved filter, the page
+ * token and the store's data version, so a page is never served for data older than it was read from;
+ * the first lookup after the data changed drops all entries of the previous version at once.
+ *
+ * <p>Pages are computed outside the lock, runs included. Concurrent requests for the same key share one
+ * computation, so a burst of requests on cold data resolves its runs, and builds or extends the store's
+ * index for them, only once. A request waits for another's computation at most
+ * {@code transaction.page-cache.wait-timeout-ms} and then computes the page itself.
+ */
+@Component
+public class TransactionPageCache {
+
+    /** Caches nothing, but still coalesces concurrent requests for the same page. */
+    public static final TransactionPageCache DISABLED = new TransactionPageCache(0);
+
+    static final long DEFAULT_WAIT_TIMEOUT_MILLIS = 30_000;
+
+    // rough retained size of a Transaction with its strings, BigDecimal and LocalDateTime
+    static final long TRANSACTION_BYTES = 400;
+    static final long PAGE_BYTES = 200;
+
+    private final long maxBytes;
+    private final long waitTimeoutMillis;
+    private final LinkedHashMap<Key, TransactionPageResponse> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<TransactionPageResponse>> inFlight = new HashMap<>();
+    private long version;
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TransactionPageCache(long maxBytes) {
+        this(maxBytes, DEFAULT_WAIT_TIMEOUT_MILLIS);
+    }
+
+    @Autowired
+    public TransactionPageCache(@Value("${transaction.page-cache.max-bytes:16777216}") long maxBytes,
+                                @Value("${transaction.page-cache.wait-timeout-ms:30000}") long waitTimeoutMillis) {
+        this.maxBytes = maxBytes;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    @lombok.Value
+    static class Key {
+        TransactionFilter filter;
+        String pageToken;
+        long dataVersion;
+    }
+
+    @lombok.Value
+    public static class Stats {
+        long hits;
+        /** Pages computed. */
+        long misses;
+        /** Requests that waited for a page another request was computing. */
+        long coalesced;
+        /** Requests that stopped waiting for another's computation and computed the page themselves. */
+        long timedOut;
+        long evictions;
+        int entries;
+        long bytes;
+    }
+
+    /**
+     * The cached page for the query, or the one {@code loader} computes, which is then cached. A request
+     * that misses while the same page is being computed for another one waits for that result, or its
+     * exception, instead of computing it again; this happens even with caching disabled. If the page is
+     * not ready within the wait timeout, the request computes it itself without caching it. The key holds
+     * the data version, taken before {@code loader} runs, so a waiter never receives a page of older data
+     * than it would have read itself.
+     */
+    TransactionPageResponse get(TransactionFilter filter, String pageToken, long dataVersion,
+                                Supplier<TransactionPageResponse> loader) {
+        Key key = new Key(filter, StringUtils.hasText(pageToken) ? pageToken : null, dataVersion);
+
+        CompletableFuture<TransactionPageResponse> flight;
+        synchronized (this) {
+            if (maxBytes > 0) {
+                if (version != dataVersion) {
+                    pages.clear();
+                    bytes = 0;
+                    version = dataVersion;
+                }
+                TransactionPageResponse cached = pages.get(key);
+                if (cached != null) {
+                    hits.increment();
+                    return cached;
+                }
+            }
+            flight = inFlight.get(key);
+            if (flight == null) {
+                inFlight.put(key, new CompletableFuture<>());
+            }
+        }
+        if (flight != null) {
+            coalesced.increment();
+            TransactionPageResponse page = await(flight);
+            if (page != null) {
+                return page;
+            }
+            timedOut.increment();
+            misses.increment();
+            return loader.get();
+        }
+
+        misses.increment();
+        TransactionPageResponse page;
+        try {
+            page = loader.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                flight = inFlight.remove(key);
+            }
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            flight = inFlight.remove(key);
+            put(key, dataVersion, page);
+        }
+        flight.complete(page);
+        return page;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), coalesced.sum(), timedOut.sum(), evictions.sum(), pages.size(), bytes);
+    }
+
+    // called holding the lock, so the page is cached before its computation stops being in flight
+    private void put(Key key, long dataVersion, TransactionPageResponse page) {
+        long pageBytes = estimateBytes(page);
+        // the data may have changed while the page was read
+        if (pageBytes > maxBytes || version != dataVersion || pages.put(key, page) != null) {
+            return;
+        }
+        bytes += pageBytes;
+        Iterator<Map.Entry<Key, TransactionPageResponse>> eldest = pages.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= estimateBytes(eldest.next().getValue());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /** The computed page, or {@code null} if it was not ready within the wait timeout. */
+    private TransactionPageResponse await(CompletableFuture<TransactionPageResponse> flight) {
+        try {
+            return flight.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionServiceException("Interrupted while waiting for a page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static long estimateBytes(TransactionPageResponse page) {
+        return PAGE_BYTES + page.getTransactions().size() * TRANSACTION_BYTES;
+    }
+}
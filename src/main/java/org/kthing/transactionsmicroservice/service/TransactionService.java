@@ -1,102 +1,313 @@
 package org.kthing.transactionsmicroservice.service;
 
 import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.BatchTransactionsRequest;
+import org.kthing.transactionsmicroservice.model.BatchTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.DuplicateTransaction;
+import org.kthing.transactionsmicroservice.model.DuplicateTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.LargestTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.QuarantineResponse;
+import org.kthing.transactionsmicroservice.model.QuarantinedRecord;
 import org.kthing.transactionsmicroservice.model.Transaction;
 import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
-import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.kthing.transactionsmicroservice.model.TransactionRollup;
+import org.kthing.transactionsmicroservice.model.TransactionRollupResponse;
+import org.kthing.transactionsmicroservice.store.LargestAmounts;
+import org.kthing.transactionsmicroservice.store.RollupBucket;
+import org.kthing.transactionsmicroservice.store.TimeOrderedMerge;
+import org.kthing.transactionsmicroservice.store.TimeOrderedRun;
+import org.kthing.transactionsmicroservice.store.TransactionDuplicates;
+import org.kthing.transactionsmicroservice.store.TransactionFilter;
+import org.kthing.transactionsmicroservice.store.TransactionRollups;
+import org.kthing.transactionsmicroservice.store.TransactionStore;
+import org.kthing.transactionsmicroservice.util.CSVUtil;
+import org.kthing.transactionsmicroservice.util.CsvQuarantine;
+import org.kthing.transactionsmicroservice.util.PageToken;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class TransactionService {
 
-    @Value("${transaction.incomes.file:incomes.csv}")
-    private String incomesFilePath;
-
-    @Value("${transaction.outcomes.file:outcomes.csv}")
-    private String outcomesFilePath;
-
-    private static final String PAGE_TOKEN_DELIMITER = ":";
-    
     @Value("${transaction.page.size:20}")
     private int pageSize;
 
+    @Value("${transaction.export.batch-size:1000}")
+    private int exportBatchSize;
+
+    @Value("${transaction.largest.max-limit:1000}")
+    private int largestMaxLimit;
+
+    @Value("${transaction.batch.max-accounts:10000}")
+    private int batchMaxAccounts;
+
+    @Autowired
+    private TransactionStore transactionStore;
+
+    @Autowired(required = false)
+    private TransactionPageCache pageCache = TransactionPageCache.DISABLED;
+
+    @Autowired(required = false)
+    private TransactionMetrics metrics = TransactionMetrics.NOOP;
+
     public TransactionPageResponse getTransactions(String accountId, LocalDateTime fromDate, LocalDateTime toDate, String pageToken) {
         validateInput(accountId, fromDate, toDate, pageToken);
-        long incomesPosition = 0;
-        long outcomesPosition = 0;
-        if (StringUtils.hasText(pageToken)) {
-            String[] positions = pageToken.split(PAGE_TOKEN_DELIMITER);
-            if (positions.length == 2) {
-                try {
-                    incomesPosition = Long.parseLong(positions[0]);
-                    outcomesPosition = Long.parseLong(positions[1]);
-                } catch (NumberFormatException e) {
-                    throw new TransactionServiceException("Invalid page token format");
-                }
-            } else {
-                throw new TransactionServiceException("Invalid page token format");
+        TransactionFilter filter = TransactionFilter.of(accountId, fromDate, toDate);
+        // the runs are resolved by the one request that reads the page, not by every request waiting for it
+        return pageCache.get(filter, pageToken, transactionStore.dataVersion(), () -> {
+            long started = System.nanoTime();
+            List<TimeOrderedRun> runs = transactionStore.runs(filter);
+            metrics.recordResolve(System.nanoTime() - started);
+            return readPage(runs, startPositions(runs, pageToken));
+        });
+    }
+
+    /**
+     * One page for each account of the batch, from the account's page token if it has one. The tokens
+     * returned are the same {@code getTransactions} returns for that account and date range, so either
+     * can continue. The store may find the pages of all accounts in a single pass over its data.
+     */
+    public BatchTransactionsResponse getTransactionsBatch(BatchTransactionsRequest request) {
+        List<BatchTransactionsRequest.AccountQuery> queries = request.getAccounts() == null ? List.of() : request.getAccounts();
+        if (queries.isEmpty() || queries.size() > batchMaxAccounts) {
+            throw new TransactionServiceException("A batch must have between 1 and " + batchMaxAccounts + " accounts");
+        }
+        List<List<TimeOrderedRun>> runs = new ArrayList<>(queries.size());
+        List<int[]> startPositions = new ArrayList<>(queries.size());
+        Set<Long> accountIds = new HashSet<>();
+        long started = System.nanoTime();
+        for (BatchTransactionsRequest.AccountQuery query : queries) {
+            if (!StringUtils.hasText(query.getAccountId())) {
+                throw new TransactionServiceException("Every account of a batch needs an accountId");
+            }
+            LocalDateTime fromDate = query.getFromDate() != null ? query.getFromDate() : request.getFromDate();
+            LocalDateTime toDate = query.getToDate() != null ? query.getToDate() : request.getToDate();
+            validateInput(query.getAccountId(), fromDate, toDate, query.getPageToken());
+            TransactionFilter filter = TransactionFilter.of(query.getAccountId(), fromDate, toDate);
+            if (!accountIds.add(filter.getAccountId())) {
+                throw new TransactionServiceException("Account appears more than once in the batch: " + query.getAccountId());
             }
+            List<TimeOrderedRun> queryRuns = transactionStore.runs(filter);
+            runs.add(queryRuns);
+            startPositions.add(startPositions(queryRuns, query.getPageToken()));
         }
+        // one more match per run than a page takes tells whether there are more
+        runs = transactionStore.prefetch(runs, startPositions, pageSize + 1);
+        metrics.recordResolve(System.nanoTime() - started);
 
-        List<Transaction> transactions = new ArrayList<>();
-        long nextIncomesPosition = incomesPosition;
-        long nextOutcomesPosition = outcomesPosition;
-        boolean hasMore = false;
+        Map<String, TransactionPageResponse> pages = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            pages.put(queries.get(i).getAccountId(), readPage(runs.get(i), startPositions.get(i)));
+        }
+        return BatchTransactionsResponse.builder().accounts(pages).build();
+    }
 
-        try {
-            List<Transaction> incomes = PagedCsvReader.readTransactions(incomesFilePath, Transaction.TransactionType.INCOME, incomesPosition, pageSize, accountId, fromDate, toDate);
+    /**
+     * Changes whenever the transaction data does; every response computed from the same data version
+     * for the same request is identical.
+     */
+    public long dataVersion() {
+        return transactionStore.dataVersion();
+    }
 
-            if (!incomes.isEmpty()) {
-                transactions.addAll(incomes);
-                nextIncomesPosition = incomesPosition + incomes.size();
-            }
+    private TransactionPageResponse readPage(List<TimeOrderedRun> runs, int[] startPositions) {
+        long started = System.nanoTime();
+        TimeOrderedMerge.Page page = TimeOrderedMerge.merge(runs, startPositions, pageSize, transactionStore.fetcher());
+        long mergeNanos = System.nanoTime() - started;
+        long depth = 0;
+        long scanned = 0;
+        for (int i = 0; i < startPositions.length; i++) {
+            depth += startPositions[i];
+            scanned += page.getNextPositions()[i] - startPositions[i];
+        }
+        metrics.recordPage(mergeNanos - page.getMaterializeNanos(), page.getMaterializeNanos(), depth, scanned,
+                page.getTransactions().size());
 
-            List<Transaction> outcomes = PagedCsvReader.readTransactions( outcomesFilePath, Transaction.TransactionType.OUTCOME, outcomesPosition, pageSize, accountId, fromDate, toDate);
+        String nextToken = page.isHasMore() ? nextPageToken(runs, page) : null;
 
-            if (!outcomes.isEmpty()) {
-                transactions.addAll(outcomes);
-                nextOutcomesPosition = outcomesPosition + outcomes.size();
-            }
+        return TransactionPageResponse.builder()
+                .transactions(page.getTransactions())
+                .hasMore(page.isHasMore())
+                .nextPageToken(nextToken)
+                .build();
+    }
+
+    /**
+     * All transactions matching the filters, to be written in page order without paging.
+     */
+    public TransactionExport exportTransactions(String accountId, LocalDateTime fromDate, LocalDateTime toDate) {
+        validateInput(accountId, fromDate, toDate, null);
+        List<TimeOrderedRun> runs = transactionStore.runs(TransactionFilter.of(accountId, fromDate, toDate));
+        return new TransactionExport(runs, transactionStore.fetcher(), exportBatchSize);
+    }
 
-            transactions.sort(Comparator.comparing(Transaction::getDateTime));
+    /**
+     * Totals of the matching transactions per {@code hour}, {@code day} or {@code month}, read from the
+     * store's rollups. The date range is widened to whole hours.
+     */
+    public TransactionRollupResponse getRollups(String accountId, LocalDateTime fromDate, LocalDateTime toDate, String bucket) {
+        validateInput(accountId, fromDate, toDate, null);
+        RollupBucket bucketSize = RollupBucket.of(bucket);
+        TransactionRollups.Result result = transactionStore.rollups().query(TransactionFilter.of(accountId, fromDate, toDate), bucketSize);
 
-            boolean moreIncomesExist = PagedCsvReader.hasMoreTransactions(incomesFilePath, nextIncomesPosition);
-            boolean moreOutcomesExist = PagedCsvReader.hasMoreTransactions(outcomesFilePath, nextOutcomesPosition);
-            
-            if (transactions.size() > pageSize) {
-                hasMore = true;
-                transactions = transactions.subList(0, pageSize);
-            } else {
-                hasMore = moreIncomesExist || moreOutcomesExist;
-            }
+        List<TransactionRollup> buckets = new ArrayList<>(result.getBuckets().size());
+        for (TransactionRollups.Aggregate aggregate : result.getBuckets()) {
+            buckets.add(toRollup(aggregate));
+        }
+        return TransactionRollupResponse.builder()
+                .accountId(StringUtils.hasText(accountId) ? accountId : null)
+                .bucket(bucketSize.name().toLowerCase(Locale.ROOT))
+                .totals(result.getTotal() == null ? null : toRollup(result.getTotal()))
+                .buckets(buckets)
+                .build();
+    }
 
-        } catch (IOException e) {
-            throw new TransactionServiceException("Error reading transaction data", e);
+    /**
+     * The {@code limit} matching transactions with the largest amounts, largest first, optionally of one
+     * {@code type}. Memory use depends on {@code limit} only, not on the number of matches.
+     */
+    public LargestTransactionsResponse getLargestTransactions(String accountId, LocalDateTime fromDate, LocalDateTime toDate,
+                                                              String type, int limit) {
+        validateInput(accountId, fromDate, toDate, null);
+        if (limit < 1 || limit > largestMaxLimit) {
+            throw new TransactionServiceException("limit must be between 1 and " + largestMaxLimit);
         }
+        Transaction.TransactionType transactionType = StringUtils.hasText(type) ? transactionType(type) : null;
+        List<TimeOrderedRun> runs = transactionStore.runs(TransactionFilter.of(accountId, fromDate, toDate));
+        return LargestTransactionsResponse.builder()
+                .accountId(StringUtils.hasText(accountId) ? accountId : null)
+                .type(transactionType)
+                .limit(limit)
+                .transactions(LargestAmounts.select(runs, transactionType, limit, transactionStore.fetcher()))
+                .build();
+    }
 
-        String nextToken = hasMore ? nextIncomesPosition + PAGE_TOKEN_DELIMITER + nextOutcomesPosition : null;
+    /**
+     * The repeated transaction IDs the store found.
+     */
+    public DuplicateTransactionsResponse getDuplicates() {
+        TransactionDuplicates.Report report = transactionStore.duplicates();
+        List<DuplicateTransaction> duplicates = new ArrayList<>(report.getDuplicates().size());
+        for (TransactionDuplicates.Duplicate duplicate : report.getDuplicates()) {
+            duplicates.add(DuplicateTransaction.builder()
+                    .transactionId(String.valueOf(duplicate.getTransactionId()))
+                    .file(duplicate.getFilePath())
+                    .type(duplicate.getType())
+                    .build());
+        }
+        return DuplicateTransactionsResponse.builder()
+                .count(report.getCount())
+                .duplicates(duplicates)
+                .build();
+    }
 
-        return TransactionPageResponse.builder()
-                .transactions(transactions)
-                .hasMore(hasMore)
-                .nextPageToken(nextToken)
+    /**
+     * The records of all sources that failed validation and are left out of every response.
+     */
+    public QuarantineResponse getQuarantine() {
+        long count = 0;
+        List<QuarantinedRecord> records = new ArrayList<>();
+        for (CsvQuarantine quarantine : transactionStore.quarantine()) {
+            count += quarantine.getCount();
+            for (CsvQuarantine.Entry entry : quarantine.getEntries()) {
+                records.add(QuarantinedRecord.builder()
+                        .file(quarantine.getFilePath())
+                        .lineNumber(entry.getLineNumber() == CsvQuarantine.UNKNOWN_LINE ? null : entry.getLineNumber())
+                        .offset(entry.getOffset())
+                        .field(entry.getField())
+                        .reason(entry.getReason())
+                        .build());
+            }
+        }
+        return QuarantineResponse.builder()
+                .count(count)
+                .records(records)
                 .build();
     }
+
+    private static Transaction.TransactionType transactionType(String type) {
+        try {
+            return Transaction.TransactionType.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new TransactionServiceException("Unsupported transaction type: " + type);
+        }
+    }
+
+    private static TransactionRollup toRollup(TransactionRollups.Aggregate aggregate) {
+        return TransactionRollup.builder()
+                .periodStart(hourStart(aggregate.getStartHour()))
+                .periodEnd(hourStart(aggregate.getEndHour()))
+                .totalIncome(aggregate.getIncomeTotal())
+                .totalOutcome(aggregate.getOutcomeTotal())
+                .net(aggregate.getIncomeTotal().subtract(aggregate.getOutcomeTotal()))
+                .incomeCount(aggregate.getIncomeCount())
+                .outcomeCount(aggregate.getOutcomeCount())
+                .count((long) aggregate.getIncomeCount() + aggregate.getOutcomeCount())
+                .minAmount(aggregate.getMinAmount())
+                .maxAmount(aggregate.getMaxAmount())
+                .build();
+    }
+
+    private static LocalDateTime hourStart(long hour) {
+        return LocalDateTime.ofEpochSecond(hour * TransactionRollups.SECONDS_PER_HOUR, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Where each run continues after the token's key. Records appended since the token was made are
+     * found like the others; a source loaded again from scratch makes the token invalid.
+     */
+    private int[] startPositions(List<TimeOrderedRun> runs, String pageToken) {
+        int[] positions = new int[runs.size()];
+        if (!StringUtils.hasText(pageToken)) {
+            return positions;
+        }
+        PageToken token = PageToken.decode(pageToken, sourceCount(runs));
+        for (int i = 0; i < positions.length; i++) {
+            TimeOrderedRun run = runs.get(i);
+            if (token.getGeneration(run.source()) != run.generation()) {
+                throw new TransactionServiceException("Page token is no longer valid: transaction data was reloaded");
+            }
+            positions[i] = TimeOrderedMerge.positionAfter(run, token.getEpochSecond(), token.getSource(), token.getSequence());
+        }
+        return positions;
+    }
+
+    private static String nextPageToken(List<TimeOrderedRun> runs, TimeOrderedMerge.Page page) {
+        List<Long> generations = new ArrayList<>(Collections.nCopies(sourceCount(runs), 0L));
+        for (TimeOrderedRun run : runs) {
+            generations.set(run.source(), run.generation());
+        }
+        TimeOrderedRun last = runs.get(page.getLastRun());
+        int position = page.getLastPosition();
+        return new PageToken(last.epochSecond(position), last.source(), last.sequence(position), generations).encode();
+    }
+
+    // runs are listed in source order and every source has at least one
+    private static int sourceCount(List<TimeOrderedRun> runs) {
+        return runs.isEmpty() ? 0 : runs.get(runs.size() - 1).source() + 1;
+    }
+
     private void validateInput(String accountId, LocalDateTime fromDate, LocalDateTime toDate, String pageToken) {
         if (fromDate != null && toDate != null && fromDate.isAfter(toDate)) {
             throw new TransactionServiceException("fromDate cannot be after toDate");
         }
         
-        if (StringUtils.hasText(accountId) && !accountId.matches("\\d+")) {
+        // the same parse the stored IDs went through, so an ID too long to be stored is rejected too
+        if (StringUtils.hasText(accountId) && CSVUtil.parseId(accountId) == CSVUtil.INVALID_ID) {
             throw new TransactionServiceException("Invalid account ID format");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.util.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from account ID to the rows of that account, ordered by timestamp. All posting lists
+ * share one {@code int[]}; the list of the account in slot {@code s} is {@code rows[starts[s]..starts[s + 1])}.
+ */
+public class AccountIndex {
+
+    private final LongIntHashMap slots;
+    private final long[] accounts;
+    private final int[] starts;
+    private final int[] rows;
+
+    private AccountIndex(LongIntHashMap slots, long[] accounts, int[] starts, int[] rows) {
+        this.slots = slots;
+        this.accounts = accounts;
+        this.starts = starts;
+        this.rows = rows;
+    }
+
+    /**
+     * Rebuilds an index from the arrays of another one, as saved in a {@link TransactionSnapshot}.
+     */
+    static AccountIndex of(long[] accounts, int[] starts, int[] rows) {
+        LongIntHashMap slots = new LongIntHashMap(accounts.length);
+        for (int slot = 0; slot < accounts.length; slot++) {
+            slots.put(accounts[slot], slot);
+        }
+        return new AccountIndex(slots, accounts, starts, rows);
+    }
+
+    /**
+     * Indexes the given rows of the table, which must be in timestamp order.
+     */
+    public static AccountIndex build(TransactionTable table, int[] rowsByTime) {
+        LongIntHashMap slots = new LongIntHashMap(1024);
+        long[] accountsBySlot = new long[1024];
+        int[] counts = new int[1024];
+        for (int row : rowsByTime) {
+            long accountId = table.accountId(row);
+            int slot = slots.get(accountId);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = slots.size();
+                slots.put(accountId, slot);
+                if (slot == counts.length) {
+                    accountsBySlot = Arrays.copyOf(accountsBySlot, slot * 2);
+                    counts = Arrays.copyOf(counts, slot * 2);
+                }
+                accountsBySlot[slot] = accountId;
+            }
+            counts[slot]++;
+        }
+
+        int accounts = slots.size();
+        int[] starts = new int[accounts + 1];
+        for (int slot = 0; slot < accounts; slot++) {
+            starts[slot + 1] = starts[slot] + counts[slot];
+        }
+
+        // filling the lists in time order leaves each of them sorted by timestamp
+        int[] next = Arrays.copyOf(starts, accounts);
+        int[] rows = new int[rowsByTime.length];
+        for (int row : rowsByTime) {
+            rows[next[slots.get(table.accountId(row))]++] = row;
+        }
+        return new AccountIndex(slots, Arrays.copyOf(accountsBySlot, accounts), starts, rows);
+    }
+
+    /**
+     * One index over the rows of this index and of {@code added}, which indexes rows appended to the
+     * table after these. Each account's newer rows are merged into its posting list behind older rows with
+     * the same timestamp; both indexes are left unchanged.
+     */
+    AccountIndex merge(TransactionTable table, AccountIndex added) {
+        long[] mergedAccounts = Arrays.copyOf(accounts, accounts.length + added.accounts.length);
+        int accountCount = accounts.length;
+        for (long accountId : added.accounts) {
+            if (slots.get(accountId) == LongIntHashMap.MISSING) {
+                mergedAccounts[accountCount++] = accountId;
+            }
+        }
+        mergedAccounts = Arrays.copyOf(mergedAccounts, accountCount);
+
+        int[] mergedStarts = new int[accountCount + 1];
+        int[] mergedRows = new int[rows.length + added.rows.length];
+        int next = 0;
+        for (int slot = 0; slot < accountCount; slot++) {
+            int left = slot < accounts.length ? starts[slot] : 0;
+            int leftEnd = slot < accounts.length ? starts[slot + 1] : 0;
+            int addedSlot = added.slots.get(mergedAccounts[slot]);
+            int right = addedSlot == LongIntHashMap.MISSING ? 0 : added.starts[addedSlot];
+            int rightEnd = addedSlot == LongIntHashMap.MISSING ? 0 : added.starts[addedSlot + 1];
+            while (left < leftEnd || right < rightEnd) {
+                if (right >= rightEnd || (left < leftEnd
+                        && table.epochSecond(rows[left]) <= table.epochSecond(added.rows[right]))) {
+                    mergedRows[next++] = rows[left++];
+                } else {
+                    mergedRows[next++] = added.rows[right++];
+                }
+            }
+            mergedStarts[slot + 1] = next;
+        }
+        return of(mergedAccounts, mergedStarts, mergedRows);
+    }
+
+    /**
+     * The account's posting list as a run; empty for an account that has no rows.
+     */
+    TimeOrderedRun run(TransactionTable table, long accountId, TransactionFilter filter, int source, long version, long generation) {
+        int slot = slots.get(accountId);
+        if (slot == LongIntHashMap.MISSING) {
+            return new TableRun(table, rows, 0, 0, filter, source, version, generation);
+        }
+        return new TableRun(table, rows, starts[slot], starts[slot + 1], filter, source, version, generation);
+    }
+
+    public int accountCount() {
+        return slots.size();
+    }
+
+    /** Account ID of each slot. */
+    long[] accounts() {
+        return accounts;
+    }
+
+    int[] starts() {
+        return starts;
+    }
+
+    int[] rows() {
+        return rows;
+    }
+
+    public long memoryFootprintBytes() {
+        return slots.memoryFootprintBytes() + (long) accounts.length * Long.BYTES
+                + (long) (starts.length + rows.length) * Integer.BYTES;
+    }
+}
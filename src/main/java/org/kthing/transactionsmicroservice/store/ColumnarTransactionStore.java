@@ -0,0 +1,469 @@
+package org.kthing.transactionsmicroservice.store;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CsvFileCursor;
+import org.kthing.transactionsmicroservice.util.CsvFileVersion;
+import org.kthing.transactionsmicroservice.util.CsvFileWatcher;
+import org.kthing.transactionsmicroservice.util.CsvQuarantine;
+import org.kthing.transactionsmicroservice.util.IndexSort;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.kthing.transactionsmicroservice.util.ParallelCsvReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * In-memory engine enabled with {@code transaction.storage.mode=memory}. The CSV files of all
+ * {@link TransactionSource}s are loaded once into a {@link TransactionTable} together with a time-ordered
+ * permutation of each file's rows and a per-file {@link AccountIndex}. Queries are served as {@link TimeOrderedRun}s over those structures,
+ * and only the rows of the returned page are turned into {@link Transaction} objects. With
+ * {@code transaction.snapshot.file} set, the loaded columns are also saved as a {@link TransactionSnapshot}
+ * and read back from it on the next start. The {@link TransactionRollups} are built along with the
+ * first snapshot; after records were appended, the first rollup query rolls up only the new rows.
+ *
+ * <p>Records appended to a CSV file are ingested by {@link #refresh()}, which a {@link CsvFileWatcher}
+ * calls at least every {@code transaction.ingest.poll-interval-ms}: only the bytes after the last
+ * consumed record are parsed and appended to the table, their rows are indexed as a new
+ * {@link TableSegment}, and the result is published as a new snapshot for the next query. A file that was truncated or rewritten
+ * is loaded again from scratch. Records that fail validation, whether loaded or appended, are left out of
+ * the table and kept in the snapshot's {@link CsvQuarantine}s instead.
+ *
+ * <p>Repeated transaction IDs are looked for in every load and append and handled according to
+ * {@code transaction.duplicates.policy}: with {@code keep-first} the repeats are not kept in the table at
+ * all; with {@code reject} a load fails, and an append is not ingested. Records appended later never
+ * displace one already loaded.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transaction.storage.mode", havingValue = "memory")
+public class ColumnarTransactionStore implements TransactionStore {
+
+    @Value("${transaction.incomes.file:incomes.csv}")
+    private String incomesFilePath;
+
+    @Value("${transaction.outcomes.file:outcomes.csv}")
+    private String outcomesFilePath;
+
+    @Value("${transaction.sources:}")
+    private String sourceList;
+
+    @Value("${transaction.snapshot.file:}")
+    private String snapshotFilePath;
+
+    @Value("${transaction.ingest.poll-interval-ms:1000}")
+    private long pollIntervalMillis;
+
+    @Value("${transaction.duplicates.policy:report}")
+    private String duplicatePolicy = "report";
+
+    @Value("${transaction.duplicates.max-reported:1000}")
+    private int maxReportedDuplicates = 1000;
+
+    private List<TransactionSource> sources;
+    private DuplicatePolicy policy;
+    /** The IDs of {@link #table}; replaced along with it on a full load. */
+    private volatile TransactionDuplicates duplicates;
+    /** What queries read; replaced as a whole after every load or append. */
+    private volatile TransactionSnapshot state;
+    /** Appended to by {@link #refresh()} only; {@link #state} holds a view of it. */
+    private TransactionTable table;
+    private TransactionSnapshot savedState;
+    private CsvFileVersion[] rejectedVersions;
+    private CsvFileWatcher watcher;
+
+    @PostConstruct
+    public void load() {
+        long started = System.nanoTime();
+        sources = TransactionSource.parse(sourceList, incomesFilePath, outcomesFilePath);
+        policy = DuplicatePolicy.of(duplicatePolicy);
+        TransactionSnapshot snapshot = readSnapshot();
+        String source = "snapshot";
+        if (snapshot == null) {
+            snapshot = loadCsvFiles();
+            source = "CSV files";
+        } else {
+            savedState = snapshot;
+        }
+        publish(snapshot);
+        refresh();
+        if (state != snapshot) {
+            source += " and the records appended since";
+        }
+        saveSnapshot();
+
+        TransactionSnapshot loaded = state;
+        long rollupBytes = loaded.rollups().memoryFootprintBytes();
+        long bytes = loaded.getTable().memoryFootprintBytes();
+        long indexBytes = 0;
+        for (TableSegment segment : loaded.getSegments()) {
+            indexBytes += segment.memoryFootprintBytes();
+        }
+        int rows = loaded.getTable().size();
+        log.info("Loaded {} transactions from the {} into the columnar store in {} ms: {} KiB, {} MiB per million rows; indexes: {} KiB; rollups: {} KiB",
+                rows, source, (System.nanoTime() - started) / 1_000_000, bytes / 1024,
+                rows == 0 ? 0 : String.format("%.1f", bytes * 1_000_000.0 / rows / (1024 * 1024)),
+                indexBytes / 1024, rollupBytes / 1024);
+
+        if (pollIntervalMillis > 0) {
+            watcher = new CsvFileWatcher(sources.stream().map(file -> Paths.get(file.getFilePath())).toList(),
+                    pollIntervalMillis, this::refresh).start();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        synchronized (this) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * The account's posting lists for account queries, the files' time-ordered permutations otherwise:
+     * one run per file and segment, by file and then in segment order.
+     */
+    @Override
+    public List<TimeOrderedRun> runs(TransactionFilter filter) {
+        TransactionSnapshot current = state;
+        TransactionTable view = current.getTable();
+        List<TableSegment> segments = current.getSegments();
+        List<TimeOrderedRun> runs = new ArrayList<>(current.sourceCount() * segments.size());
+        for (int source = 0; source < current.sourceCount(); source++) {
+            long version = current.getVersions()[source].hash();
+            for (TableSegment segment : segments) {
+                if (filter.isFilterAccount()) {
+                    runs.add(segment.getIndexes()[source].run(view, filter.getAccountId(), filter, source, version,
+                            current.getGeneration()));
+                } else {
+                    int[] rowsByTime = segment.getRowsByTime()[source];
+                    runs.add(new TableRun(view, rowsByTime, 0, rowsByTime.length, filter, source, version,
+                            current.getGeneration()));
+                }
+            }
+        }
+        return runs;
+    }
+
+    @Override
+    public long dataVersion() {
+        return CsvFileVersion.hash(state.getVersions());
+    }
+
+    @Override
+    public TransactionRollups rollups() {
+        return state.rollups();
+    }
+
+    @Override
+    public TransactionDuplicates.Report duplicates() {
+        return duplicates.report();
+    }
+
+    @Override
+    public List<CsvQuarantine> quarantine() {
+        return List.of(state.getQuarantines());
+    }
+
+    /**
+     * Ingests whatever was appended to the CSV files since the last call and publishes it. If any file
+     * can no longer be continued from where it was read, all of them are loaded again. Appended records
+     * that fail to parse are quarantined and the others ingested; if the append fails as a whole, it is
+     * logged and none of the new records are published until the files change. The table is cut back to
+     * its published rows whenever the new state is not published, errors included.
+     */
+    public synchronized void refresh() {
+        TransactionSnapshot current = state;
+        CsvFileVersion[] versions = fileVersions();
+        if (current.matches(sources, versions) || Arrays.equals(versions, rejectedVersions)) {
+            return;
+        }
+
+        int rowsBefore = table.size();
+        boolean published = false;
+        try {
+            TransactionDuplicates.Batch batch = duplicates.batch(16);
+            int[][] rowsByTime = new int[versions.length][];
+            AccountIndex[] indexes = new AccountIndex[versions.length];
+            CsvFileCursor[] cursors = current.getCursors().clone();
+            CsvQuarantine[] quarantines = current.getQuarantines().clone();
+            for (int source = 0; source < versions.length; source++) {
+                rowsByTime[source] = new int[0];
+                if (versions[source].equals(current.getVersions()[source])) {
+                    continue;
+                }
+                TransactionSource changed = sources.get(source);
+                int from = table.size();
+                CsvQuarantine appended = new CsvQuarantine(changed.getFilePath());
+                cursors[source] = appendRecords(changed.getFilePath(), cursors[source], changed.getType(), appended);
+                if (cursors[source] == null) {
+                    reload(changed.getFilePath());
+                    published = true;
+                    return;
+                }
+                if (appended.getCount() > 0) {
+                    log.warn("{} records appended to {} failed validation and are left out", appended.getCount(),
+                            changed.getFilePath());
+                    quarantines[source] = quarantines[source].plus(appended);
+                }
+                int[] added = IndexSort.sortedIndexes(table.epochSecondsColumn(), from, table.size());
+                rowsByTime[source] = addIds(batch, changed, from, added);
+            }
+
+            TransactionTable view = table.view();
+            TransactionSnapshot next;
+            if (table.size() == rowsBefore) {
+                next = new TransactionSnapshot(view, current.getSegments(), sources, versions, cursors, quarantines,
+                        current.getGeneration());
+            } else {
+                for (int source = 0; source < versions.length; source++) {
+                    indexes[source] = AccountIndex.build(view, rowsByTime[source]);
+                }
+                next = current.withAppended(view, new TableSegment(rowsBefore, table.size(), rowsByTime, indexes),
+                        versions, cursors, quarantines);
+            }
+            batch.commit();
+            state = next;
+            published = true;
+            if (batch.count() > 0) {
+                log.warn("{} appended transactions repeat a transaction ID", batch.count());
+            }
+            if (table.size() > rowsBefore) {
+                log.info("Ingested {} appended transactions, {} in total", table.size() - rowsBefore, table.size());
+            }
+        } catch (RuntimeException e) {
+            rejectedVersions = versions;
+            log.warn("Could not ingest the records appended to the CSV files, serving the previous {} transactions",
+                    rowsBefore, e);
+        } finally {
+            // rows appended to a table that was not published would show up in the next view of it
+            if (!published) {
+                table.truncate(rowsBefore);
+            }
+        }
+    }
+
+    /**
+     * Appends the records after {@code cursor} to the table and returns the new cursor, or {@code null}
+     * if the file has to be loaded again as a whole.
+     */
+    private CsvFileCursor appendRecords(String filePath, CsvFileCursor cursor, Transaction.TransactionType type,
+                                        CsvQuarantine quarantine) {
+        if (cursor == null) {
+            return null;
+        }
+        return PagedCsvReader.scanAppendedTransactionRecords(filePath, cursor, record -> TableLoader.append(table, record, type),
+                quarantine);
+    }
+
+    /**
+     * Adds the IDs of the table's rows from {@code from} on, given in time order, to the batch and
+     * applies the duplicate policy to the repeated ones.
+     *
+     * @return the rows in time order, without the repeats if they were dropped
+     * @throws TransactionServiceException at the first repeat if they are rejected
+     */
+    private int[] addIds(TransactionDuplicates.Batch batch, TransactionSource source, int from, int[] rowsByTime) {
+        long[] repeats = null;
+        for (int row : rowsByTime) {
+            if (!batch.add(table.transactionId(row), source)) {
+                if (policy == DuplicatePolicy.REJECT) {
+                    throw new TransactionServiceException("Transaction ID " + table.transactionId(row)
+                            + " appended to " + source.getFilePath() + " was already loaded");
+                }
+                if (policy == DuplicatePolicy.KEEP_FIRST) {
+                    repeats = repeats == null ? new long[TransactionTable.wordsFor(table.size())] : repeats;
+                    repeats[row >>> 6] |= 1L << row;
+                }
+            }
+        }
+        if (repeats == null) {
+            return rowsByTime;
+        }
+        table.removeRows(from, repeats);
+        return IndexSort.sortedIndexes(table.epochSecondsColumn(), from, table.size());
+    }
+
+    private void reload(String changedFilePath) {
+        log.info("{} was truncated or rewritten, loading all CSV files again", changedFilePath);
+        publish(loadCsvFiles());
+    }
+
+    private void publish(TransactionSnapshot snapshot) {
+        table = snapshot.getTable().view();
+        state = snapshot;
+    }
+
+    /**
+     * Loads all files from scratch. Each file is parsed in byte ranges on the fork-join pool, and the
+     * files are parsed at the same time; the ranges' rows are then copied into one table in source and
+     * file order.
+     */
+    private TransactionSnapshot loadCsvFiles() {
+        long started = System.nanoTime();
+        CsvFileVersion[] versions = fileVersions();
+        List<ForkJoinTask<ParallelCsvReader.Scan<TableLoader>>> tasks = new ArrayList<>(sources.size());
+        for (TransactionSource source : sources) {
+            tasks.add(ForkJoinTask.adapt(() -> TableLoader.scan(source.getFilePath(), source.getType())).fork());
+        }
+        List<ParallelCsvReader.Scan<TableLoader>> scans = new ArrayList<>(sources.size());
+        List<List<TableLoader>> loaders = new ArrayList<>(sources.size());
+        for (ForkJoinTask<ParallelCsvReader.Scan<TableLoader>> task : tasks) {
+            ParallelCsvReader.Scan<TableLoader> scan = task.join();
+            scans.add(scan);
+            loaders.add(scan.getVisitors());
+        }
+
+        TransactionTable loaded = TableLoader.concat(loaders);
+        int rows = loaded.size();
+        long parsedNanos = System.nanoTime() - started;
+        log.info("Parsed {} CSV records from {} files in {} ms: {} records/s using {} of {} cores",
+                rows, sources.size(), parsedNanos / 1_000_000, parsedNanos == 0 ? 0 : (long) (rows * 1e9 / parsedNanos),
+                ParallelCsvReader.parallelism(), Runtime.getRuntime().availableProcessors());
+
+        int[] sourceEnds = new int[sources.size()];
+        int[][] rowsByTime = new int[sources.size()][];
+        for (int source = 0, sourceStart = 0; source < sources.size(); source++) {
+            sourceEnds[source] = sourceStart + TableLoader.rows(loaders.get(source));
+            rowsByTime[source] = IndexSort.sortedIndexes(loaded.epochSecondsColumn(), sourceStart, sourceEnds[source]);
+            sourceStart = sourceEnds[source];
+        }
+        TransactionDuplicates found = findDuplicates(loaded, rowsByTime, sourceEnds);
+
+        AccountIndex[] indexes = new AccountIndex[sources.size()];
+        CsvFileCursor[] cursors = new CsvFileCursor[sources.size()];
+        CsvQuarantine[] quarantines = new CsvQuarantine[sources.size()];
+        for (int source = 0; source < sources.size(); source++) {
+            indexes[source] = AccountIndex.build(loaded, rowsByTime[source]);
+            cursors[source] = scans.get(source).getCursor();
+            quarantines[source] = scans.get(source).getQuarantine();
+            if (quarantines[source].getCount() > 0) {
+                log.warn("{} records of {} failed validation and are left out", quarantines[source].getCount(),
+                        quarantines[source].getFilePath());
+            }
+        }
+        duplicates = found;
+        return new TransactionSnapshot(loaded.view(), List.of(new TableSegment(0, loaded.size(), rowsByTime, indexes)),
+                sources, versions, cursors, quarantines, TransactionSnapshot.generationOf(versions));
+    }
+
+    /**
+     * Adds the IDs of a freshly loaded table to a new {@link TransactionDuplicates} and applies the
+     * duplicate policy: repeats are removed from the table, with {@code rowsByTime} and {@code sourceEnds}
+     * updated to match, or make the load fail.
+     */
+    private TransactionDuplicates findDuplicates(TransactionTable loaded, int[][] rowsByTime, int[] sourceEnds) {
+        boolean keepFirst = policy == DuplicatePolicy.KEEP_FIRST;
+        long[] repeats = keepFirst ? new long[TransactionTable.wordsFor(loaded.size())] : null;
+        int[] removed = new int[sourceEnds.length];
+        TransactionDuplicates found = collectIds(loaded, rowsByTime, repeats, removed);
+        if (found.count() == 0) {
+            return found;
+        }
+        if (policy == DuplicatePolicy.REJECT) {
+            throw new TransactionServiceException(found.count() + " transactions repeat a transaction ID");
+        }
+        log.warn("{} transactions repeat a transaction ID{}", found.count(), keepFirst ? ", only the first of each is kept" : "");
+        if (keepFirst) {
+            loaded.removeRows(0, repeats);
+            for (int source = 0, sourceStart = 0, removedBefore = 0; source < sourceEnds.length; source++) {
+                removedBefore += removed[source];
+                sourceEnds[source] -= removedBefore;
+                rowsByTime[source] = IndexSort.sortedIndexes(loaded.epochSecondsColumn(), sourceStart, sourceEnds[source]);
+                sourceStart = sourceEnds[source];
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds the IDs of every source's rows in time order and publishes the duplicates; if {@code repeats}
+     * is given, the repeated rows are also marked in it and counted per source in {@code removed}.
+     */
+    private TransactionDuplicates collectIds(TransactionTable loaded, int[][] rowsByTime, long[] repeats, int[] removed) {
+        TransactionDuplicates found = new TransactionDuplicates(loaded.size(), maxReportedDuplicates);
+        for (int source = 0; source < rowsByTime.length; source++) {
+            for (int row : rowsByTime[source]) {
+                if (!found.add(loaded.transactionId(row), sources.get(source)) && repeats != null) {
+                    repeats[row >>> 6] |= 1L << row;
+                    removed[source]++;
+                }
+            }
+        }
+        found.publish();
+        return found;
+    }
+
+    private CsvFileVersion[] fileVersions() {
+        CsvFileVersion[] versions = new CsvFileVersion[sources.size()];
+        for (int source = 0; source < versions.length; source++) {
+            versions[source] = PagedCsvReader.fileVersion(sources.get(source).getFilePath());
+        }
+        return versions;
+    }
+
+    /**
+     * The configured snapshot, or {@code null} if there is none. An unreadable snapshot is only logged,
+     * since it is rebuilt from the CSV files. It may be older than the CSV files; {@link #refresh()}
+     * then brings it up to date.
+     */
+    private TransactionSnapshot readSnapshot() {
+        if (snapshotFilePath == null || snapshotFilePath.isBlank() || !Files.isRegularFile(Paths.get(snapshotFilePath))) {
+            return null;
+        }
+        try {
+            TransactionSnapshot snapshot = TransactionSnapshot.read(Paths.get(snapshotFilePath));
+            if (snapshot == null) {
+                log.info("Snapshot {} has another format, rebuilding it from the CSV files", snapshotFilePath);
+            } else if (!snapshot.isFor(sources)) {
+                log.info("Snapshot {} was saved for other CSV files, rebuilding it from the CSV files: {} instead of {}",
+                        snapshotFilePath, snapshot.getSources(), sources);
+                return null;
+            } else {
+                // a snapshot is read back as a single segment
+                TransactionDuplicates found = collectIds(snapshot.getTable(), snapshot.getSegments().get(0).getRowsByTime(),
+                        null, null);
+                if (found.count() > 0 && policy != DuplicatePolicy.REPORT) {
+                    // saved under another policy; the CSV files are loaded again to apply this one
+                    log.info("Snapshot {} has {} repeated transaction IDs, rebuilding it from the CSV files",
+                            snapshotFilePath, found.count());
+                    return null;
+                }
+                duplicates = found;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            log.warn("Could not read snapshot {}, rebuilding it from the CSV files", snapshotFilePath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the current state unless it is the one last saved or read.
+     */
+    private void saveSnapshot() {
+        TransactionSnapshot current = state;
+        if (snapshotFilePath == null || snapshotFilePath.isBlank() || current == savedState) {
+            return;
+        }
+        try {
+            current.write(Paths.get(snapshotFilePath));
+            savedState = current;
+        } catch (IOException e) {
+            log.warn("Could not write snapshot {}", snapshotFilePath, e);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CSVUtil;
+import org.kthing.transactionsmicroservice.util.CsvLine;
+import org.kthing.transactionsmicroservice.util.CsvTimeIndex;
+import org.kthing.transactionsmicroservice.util.LongHashSet;
+import org.kthing.transactionsmicroservice.util.LongIntHashMap;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.kthing.transactionsmicroservice.util.ParallelCsvReader;
+import org.kthing.transactionsmicroservice.util.TransactionRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run over one {@link CsvTimeIndex.Segment} of a CSV file's index. The date range is applied by binary
+ * search over the segment and the account by comparing its {@code long} column; records are read from
+ * the file only when a page is materialized. Amounts are not indexed, so {@link #largest} scans the
+ * segment's byte range of the file. Records whose
+ * offset is among the excluded ones, the repeated transaction IDs under {@link DuplicatePolicy#KEEP_FIRST},
+ * are passed over everywhere.
+ */
+class CsvRun implements TimeOrderedRun {
+
+    private final int source;
+    private final String filePath;
+    private final Transaction.TransactionType type;
+    private final CsvTimeIndex index;
+    private final CsvTimeIndex.Segment segment;
+    private final TransactionFilter filter;
+    private final SourceFetcher fetcher;
+    /** {@code null} if no record is excluded. */
+    private final LongHashSet excludedOffsets;
+    private final int firstMatch;
+    private final int lastMatchExclusive;
+
+    CsvRun(int source, String filePath, Transaction.TransactionType type, CsvTimeIndex index, CsvTimeIndex.Segment segment,
+           TransactionFilter filter, SourceFetcher fetcher, LongHashSet excludedOffsets) {
+        this.source = source;
+        this.filePath = filePath;
+        this.type = type;
+        this.index = index;
+        this.segment = segment;
+        this.filter = filter;
+        this.fetcher = fetcher;
+        this.excludedOffsets = excludedOffsets;
+        this.firstMatch = filter.getFromEpochSecond() == Long.MIN_VALUE ? 0
+                : segment.firstPositionAfter(filter.getFromEpochSecond() - 1);
+        this.lastMatchExclusive = Math.max(firstMatch, segment.firstPositionAfter(filter.getToEpochSecond()));
+    }
+
+    @Override
+    public int source() {
+        return source;
+    }
+
+    @Override
+    public long version() {
+        return index.getVersion().hash();
+    }
+
+    @Override
+    public long generation() {
+        return index.getGeneration();
+    }
+
+    @Override
+    public int size() {
+        return segment.size();
+    }
+
+    @Override
+    public int nextMatch(int position) {
+        for (int candidate = Math.max(position, firstMatch); candidate < lastMatchExclusive; candidate++) {
+            if (filter.matchesAccount(segment.accountId(candidate)) && !isExcluded(candidate)) {
+                return candidate;
+            }
+        }
+        return segment.size();
+    }
+
+    private boolean isExcluded(int position) {
+        return excludedOffsets != null && excludedOffsets.contains(segment.offset(position));
+    }
+
+    @Override
+    public long epochSecond(int position) {
+        return segment.epochSecond(position);
+    }
+
+    @Override
+    public long sequence(int position) {
+        return segment.offset(position);
+    }
+
+    @Override
+    public List<Transaction> materialize(int[] positions, int count) {
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = segment.offset(positions[i]);
+        }
+        return fetcher.read(() -> PagedCsvReader.readTransactionsAt(filePath, type, offsets, count));
+    }
+
+    /**
+     * Scans the segment's part of the file in parallel byte ranges, each with a heap of its own, and
+     * references the selected records by byte offset.
+     */
+    @Override
+    public LargestAmounts largest(Transaction.TransactionType type, int limit) {
+        LargestAmounts largest = new LargestAmounts(limit);
+        if (type != null && type != this.type) {
+            return largest;
+        }
+        List<LargestCollector> collectors = fetcher.read(() -> ParallelCsvReader.scanRange(filePath, segment.getFromOffset(),
+                segment.getToOffset(), () -> new LargestCollector(filter, excludedOffsets, limit)));
+        for (LargestCollector collector : collectors) {
+            largest.addAll(collector.largest);
+        }
+        return largest;
+    }
+
+    @Override
+    public List<Transaction> materializeReferences(long[] references, int count) {
+        return fetcher.read(() -> PagedCsvReader.readTransactionsAt(filePath, type, references, count));
+    }
+
+    /**
+     * Runs answering the same as {@code runs}, with the first {@code matches} matches of each from its
+     * start position on found in a single pass over their segment: every position is probed against a
+     * hash map of the runs' accounts and routed to that run's buffer, and the pass ends once all buffers
+     * are full. Further matches, if asked for, are looked up as usual. All runs must filter by account,
+     * no two runs over the same segment by the same one.
+     */
+    static List<TimeOrderedRun> prefetch(List<CsvRun> runs, int[] startPositions, int matches) {
+        TimeOrderedRun[] prefetched = new TimeOrderedRun[runs.size()];
+        // runs resolved before and after a file change may be over different segments
+        Map<CsvTimeIndex.Segment, List<Integer>> runsBySegment = new IdentityHashMap<>();
+        for (int i = 0; i < runs.size(); i++) {
+            runsBySegment.computeIfAbsent(runs.get(i).segment, segment -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<CsvTimeIndex.Segment, List<Integer>> entry : runsBySegment.entrySet()) {
+            CsvTimeIndex.Segment segment = entry.getKey();
+            List<Integer> members = entry.getValue();
+            LongIntHashMap slots = new LongIntHashMap(members.size());
+            int[] from = new int[members.size()];
+            int[] to = new int[members.size()];
+            int[][] buffers = new int[members.size()][matches];
+            int[] counts = new int[members.size()];
+            int scanFrom = Integer.MAX_VALUE;
+            int scanTo = 0;
+            int open = 0;
+            for (int slot = 0; slot < members.size(); slot++) {
+                CsvRun run = runs.get(members.get(slot));
+                slots.put(run.filter.getAccountId(), slot);
+                from[slot] = Math.max(startPositions[members.get(slot)], run.firstMatch);
+                to[slot] = run.lastMatchExclusive;
+                if (from[slot] < to[slot]) {
+                    scanFrom = Math.min(scanFrom, from[slot]);
+                    scanTo = Math.max(scanTo, to[slot]);
+                    open++;
+                }
+            }
+
+            for (int position = scanFrom; position < scanTo && open > 0; position++) {
+                int slot = slots.get(segment.accountId(position));
+                if (slot != LongIntHashMap.MISSING && position >= from[slot] && position < to[slot] && counts[slot] < matches
+                        && !runs.get(members.get(slot)).isExcluded(position)) {
+                    buffers[slot][counts[slot]++] = position;
+                    if (counts[slot] == matches) {
+                        open--;
+                    }
+                }
+            }
+            for (int slot = 0; slot < members.size(); slot++) {
+                prefetched[members.get(slot)] = new PrefetchedRun(runs.get(members.get(slot)), buffers[slot], counts[slot], matches);
+            }
+        }
+        return Arrays.asList(prefetched);
+    }
+
+    /**
+     * A run's matches from its start position on, as far as they were collected; with fewer than were
+     * asked for, they are all there are.
+     */
+    private static final class PrefetchedRun implements TimeOrderedRun {
+        private final CsvRun run;
+        private final int[] matches;
+        private final int count;
+        private final boolean complete;
+
+        private PrefetchedRun(CsvRun run, int[] matches, int count, int capacity) {
+            this.run = run;
+            this.matches = matches;
+            this.count = count;
+            this.complete = count < capacity;
+        }
+
+        @Override
+        public int source() {
+            return run.source();
+        }
+
+        @Override
+        public long version() {
+            return run.version();
+        }
+
+        @Override
+        public long generation() {
+            return run.generation();
+        }
+
+        @Override
+        public int size() {
+            return run.size();
+        }
+
+        @Override
+        public int nextMatch(int position) {
+            int found = Arrays.binarySearch(matches, 0, count, position);
+            int next = found >= 0 ? found : -found - 1;
+            if (next < count) {
+                return matches[next];
+            }
+            return complete ? run.size() : run.nextMatch(position);
+        }
+
+        @Override
+        public long epochSecond(int position) {
+            return run.epochSecond(position);
+        }
+
+        @Override
+        public long sequence(int position) {
+            return run.sequence(position);
+        }
+
+        @Override
+        public List<Transaction> materialize(int[] positions, int count) {
+            return run.materialize(positions, count);
+        }
+
+        @Override
+        public LargestAmounts largest(Transaction.TransactionType type, int limit) {
+            return run.largest(type, limit);
+        }
+
+        @Override
+        public List<Transaction> materializeReferences(long[] references, int count) {
+            return run.materializeReferences(references, count);
+        }
+    }
+
+    private static final class LargestCollector implements PagedCsvReader.RecordVisitor {
+        private final TransactionFilter filter;
+        private final LongHashSet excludedOffsets;
+        private final LargestAmounts largest;
+        private final TransactionRecord record = new TransactionRecord();
+
+        private LargestCollector(TransactionFilter filter, LongHashSet excludedOffsets, int limit) {
+            this.filter = filter;
+            this.excludedOffsets = excludedOffsets;
+            this.largest = new LargestAmounts(limit);
+        }
+
+        @Override
+        public void visit(CsvLine line, long offset) {
+            if (excludedOffsets != null && excludedOffsets.contains(offset)) {
+                return;
+            }
+            CSVUtil.decodeRecord(line, record);
+            if (filter.matchesAccount(record.getAccountId()) && filter.matchesTime(record.getEpochSecond())) {
+                largest.offer(record.getUnscaledAmount(), record.getAmountScale(), record.getEpochSecond(), offset);
+            }
+        }
+    }
+}
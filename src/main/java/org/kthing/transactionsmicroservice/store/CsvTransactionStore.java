@@ -0,0 +1,301 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.util.CsvFileVersion;
+import org.kthing.transactionsmicroservice.util.CsvQuarantine;
+import org.kthing.transactionsmicroservice.util.CsvTimeIndex;
+import org.kthing.transactionsmicroservice.util.CsvTimeIndexCache;
+import org.kthing.transactionsmicroservice.util.LongHashSet;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Default engine, {@code transaction.storage.mode=csv}. The files stay the source of every returned
+ * record; only their time index is kept in memory, built on first use, extended by a segment when
+ * records are appended and rebuilt when a file is rewritten. Each segment of each
+ * {@link TransactionSource}'s index is read as a run of its own, the sources at the same time with
+ * {@code transaction.fetch.concurrent}. The rollups are built from a full scan of every file on the
+ * first rollup query after any of them changed. Records that fail validation are quarantined when the
+ * time index is built and never reach a run, so pages are read without validating them again.
+ *
+ * <p>Repeated transaction IDs are found from the time indexes, which hold every record's ID, again after
+ * any file changed. Under the default {@code transaction.duplicates.policy} this only happens when they
+ * are asked for; with {@code keep-first} the runs and rollups pass over the repeats by their byte offset,
+ * and with {@code reject} queries fail while there are any.
+ */
+@Component
+@ConditionalOnProperty(name = "transaction.storage.mode", havingValue = "csv", matchIfMissing = true)
+public class CsvTransactionStore implements TransactionStore {
+
+    @Value("${transaction.incomes.file:incomes.csv}")
+    private String incomesFilePath;
+
+    @Value("${transaction.outcomes.file:outcomes.csv}")
+    private String outcomesFilePath;
+
+    @Value("${transaction.sources:}")
+    private String sourceList;
+
+    @Value("${transaction.duplicates.policy:report}")
+    private String duplicatePolicy = "report";
+
+    @Value("${transaction.duplicates.max-reported:1000}")
+    private int maxReportedDuplicates = 1000;
+
+    @Autowired(required = false)
+    private SourceFetcher sourceFetcher = SourceFetcher.SEQUENTIAL;
+
+    @Autowired(required = false)
+    private CsvTimeIndexCache indexCache = new CsvTimeIndexCache();
+
+    private volatile List<TransactionSource> sources;
+    private volatile VersionedRollups rollups;
+    private volatile VersionedDuplicates duplicates;
+
+    @Override
+    public List<TimeOrderedRun> runs(TransactionFilter filter) {
+        List<TransactionSource> current = sources();
+        if (DuplicatePolicy.of(duplicatePolicy) != DuplicatePolicy.REPORT) {
+            VersionedDuplicates checked = checkedDuplicates(current);
+            List<TimeOrderedRun> runs = new ArrayList<>(current.size());
+            for (int source = 0; source < current.size(); source++) {
+                runs.addAll(runs(source, current.get(source), checked.indexes.get(source), filter, checked.excludedOffsets[source]));
+            }
+            return runs;
+        }
+        List<Callable<List<TimeOrderedRun>>> reads = new ArrayList<>(current.size());
+        for (int source = 0; source < current.size(); source++) {
+            int sourceIndex = source;
+            reads.add(() -> runs(sourceIndex, current.get(sourceIndex), index(current.get(sourceIndex)), filter, null));
+        }
+        List<TimeOrderedRun> runs = new ArrayList<>(current.size());
+        for (List<TimeOrderedRun> sourceRuns : sourceFetcher.fetchAll(reads)) {
+            runs.addAll(sourceRuns);
+        }
+        return runs;
+    }
+
+    /**
+     * Finds the matches of all queries in one pass over each segment of the files' time indexes instead
+     * of one pass per query. The queries' runs are grouped by source, one scan task per source.
+     */
+    @Override
+    public List<List<TimeOrderedRun>> prefetch(List<List<TimeOrderedRun>> runs, List<int[]> startPositions, int matches) {
+        int sourceCount = 0;
+        for (List<TimeOrderedRun> queryRuns : runs) {
+            for (TimeOrderedRun run : queryRuns) {
+                sourceCount = Math.max(sourceCount, run.source() + 1);
+            }
+        }
+        List<List<CsvRun>> runsBySource = new ArrayList<>(sourceCount);
+        List<int[]> startsBySource = new ArrayList<>(sourceCount);
+        int[] counts = new int[sourceCount];
+        for (List<TimeOrderedRun> queryRuns : runs) {
+            for (TimeOrderedRun run : queryRuns) {
+                counts[run.source()]++;
+            }
+        }
+        for (int source = 0; source < sourceCount; source++) {
+            runsBySource.add(new ArrayList<>(counts[source]));
+            startsBySource.add(new int[counts[source]]);
+        }
+        for (int query = 0; query < runs.size(); query++) {
+            for (int i = 0; i < runs.get(query).size(); i++) {
+                CsvRun run = (CsvRun) runs.get(query).get(i);
+                List<CsvRun> sourceRuns = runsBySource.get(run.source());
+                startsBySource.get(run.source())[sourceRuns.size()] = startPositions.get(query)[i];
+                sourceRuns.add(run);
+            }
+        }
+        List<Callable<List<TimeOrderedRun>>> scans = new ArrayList<>(sourceCount);
+        for (int source = 0; source < sourceCount; source++) {
+            List<CsvRun> sourceRuns = runsBySource.get(source);
+            int[] sourceStarts = startsBySource.get(source);
+            scans.add(() -> CsvRun.prefetch(sourceRuns, sourceStarts, matches));
+        }
+        List<List<TimeOrderedRun>> bySource = sourceFetcher.fetchAll(scans);
+
+        // the runs of each source come back in the order they were collected in
+        int[] taken = new int[sourceCount];
+        List<List<TimeOrderedRun>> prefetched = new ArrayList<>(runs.size());
+        for (List<TimeOrderedRun> queryRuns : runs) {
+            List<TimeOrderedRun> prefetchedRuns = new ArrayList<>(queryRuns.size());
+            for (TimeOrderedRun run : queryRuns) {
+                prefetchedRuns.add(bySource.get(run.source()).get(taken[run.source()]++));
+            }
+            prefetched.add(prefetchedRuns);
+        }
+        return prefetched;
+    }
+
+    @Override
+    public long dataVersion() {
+        return CsvFileVersion.hash(fileVersions(sources()));
+    }
+
+    @Override
+    public TransactionRollups rollups() {
+        List<TransactionSource> current = sources();
+        CsvFileVersion[] versions = fileVersions(current);
+        VersionedRollups cached = rollups;
+        if (cached != null && Arrays.equals(cached.versions, versions)) {
+            return cached.rollups;
+        }
+        synchronized (this) {
+            cached = rollups;
+            if (cached == null || !Arrays.equals(cached.versions, versions)) {
+                LongHashSet[] excludedOffsets = DuplicatePolicy.of(duplicatePolicy) == DuplicatePolicy.REPORT
+                        ? new LongHashSet[current.size()] : checkedDuplicates(current).excludedOffsets;
+                // versions are taken before the scan, so a change during it triggers another build
+                List<List<TableLoader>> scans = new ArrayList<>(current.size());
+                for (int source = 0; source < current.size(); source++) {
+                    TransactionSource scanned = current.get(source);
+                    scans.add(TableLoader.scan(scanned.getFilePath(), scanned.getType(), excludedOffsets[source]).getVisitors());
+                }
+                cached = new VersionedRollups(versions, TransactionRollups.build(TableLoader.concat(scans)));
+                rollups = cached;
+            }
+            return cached.rollups;
+        }
+    }
+
+    @Override
+    public TransactionDuplicates.Report duplicates() {
+        return duplicates(sources()).found.report();
+    }
+
+    @Override
+    public List<CsvQuarantine> quarantine() {
+        List<CsvQuarantine> quarantines = new ArrayList<>();
+        for (TransactionSource source : sources()) {
+            quarantines.add(index(source).getQuarantine());
+        }
+        return quarantines;
+    }
+
+    @Override
+    public SourceFetcher fetcher() {
+        return sourceFetcher;
+    }
+
+    private List<TransactionSource> sources() {
+        List<TransactionSource> resolved = sources;
+        if (resolved == null) {
+            resolved = TransactionSource.parse(sourceList, incomesFilePath, outcomesFilePath);
+            sources = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * One run per segment of the source's index, in file order.
+     */
+    private List<TimeOrderedRun> runs(int sourceIndex, TransactionSource source, CsvTimeIndex index, TransactionFilter filter,
+                                      LongHashSet excludedOffsets) {
+        List<TimeOrderedRun> runs = new ArrayList<>(index.getSegments().size());
+        for (CsvTimeIndex.Segment segment : index.getSegments()) {
+            runs.add(new CsvRun(sourceIndex, source.getFilePath(), source.getType(), index, segment, filter, sourceFetcher,
+                    excludedOffsets));
+        }
+        return runs;
+    }
+
+    private CsvTimeIndex index(TransactionSource source) {
+        return sourceFetcher.read(() -> indexCache.get(Paths.get(source.getFilePath())));
+    }
+
+    /**
+     * The duplicates of the sources' current indexes, failing if there are any and they are rejected.
+     */
+    private VersionedDuplicates checkedDuplicates(List<TransactionSource> current) {
+        VersionedDuplicates checked = duplicates(current);
+        if (DuplicatePolicy.of(duplicatePolicy) == DuplicatePolicy.REJECT && checked.found.count() > 0) {
+            throw new TransactionServiceException("The transaction files repeat " + checked.found.count()
+                    + " transaction IDs, see /api/admin/duplicates");
+        }
+        return checked;
+    }
+
+    /**
+     * Adds the IDs of every source's index in time order, reusing the last result while no index changed.
+     */
+    private VersionedDuplicates duplicates(List<TransactionSource> current) {
+        List<Callable<CsvTimeIndex>> reads = new ArrayList<>(current.size());
+        for (TransactionSource source : current) {
+            reads.add(() -> indexCache.get(Paths.get(source.getFilePath())));
+        }
+        List<CsvTimeIndex> indexes = sourceFetcher.fetchAll(reads);
+        CsvFileVersion[] versions = new CsvFileVersion[indexes.size()];
+        int rows = 0;
+        for (int source = 0; source < versions.length; source++) {
+            versions[source] = indexes.get(source).getVersion();
+            rows += indexes.get(source).size();
+        }
+        VersionedDuplicates cached = duplicates;
+        if (cached != null && Arrays.equals(cached.versions, versions)) {
+            return cached;
+        }
+
+        TransactionDuplicates found = new TransactionDuplicates(rows, maxReportedDuplicates);
+        LongHashSet[] excludedOffsets = new LongHashSet[indexes.size()];
+        for (int source = 0; source < indexes.size(); source++) {
+            TransactionSource indexed = current.get(source);
+            int sourceIndex = source;
+            indexes.get(source).forEachInTimeOrder((segment, position) -> {
+                if (!found.add(segment.transactionId(position), indexed)) {
+                    if (excludedOffsets[sourceIndex] == null) {
+                        excludedOffsets[sourceIndex] = new LongHashSet(16);
+                    }
+                    excludedOffsets[sourceIndex].add(segment.offset(position));
+                }
+            });
+        }
+        found.publish();
+        cached = new VersionedDuplicates(versions, indexes, found, excludedOffsets);
+        duplicates = cached;
+        return cached;
+    }
+
+    private static CsvFileVersion[] fileVersions(List<TransactionSource> sources) {
+        CsvFileVersion[] versions = new CsvFileVersion[sources.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = PagedCsvReader.fileVersion(sources.get(i).getFilePath());
+        }
+        return versions;
+    }
+
+    private static final class VersionedDuplicates {
+        private final CsvFileVersion[] versions;
+        private final List<CsvTimeIndex> indexes;
+        private final TransactionDuplicates found;
+        /** Per source, the offsets of the records repeating an ID, or {@code null} if there are none. */
+        private final LongHashSet[] excludedOffsets;
+
+        private VersionedDuplicates(CsvFileVersion[] versions, List<CsvTimeIndex> indexes, TransactionDuplicates found,
+                                    LongHashSet[] excludedOffsets) {
+            this.versions = versions;
+            this.indexes = indexes;
+            this.found = found;
+            this.excludedOffsets = excludedOffsets;
+        }
+    }
+
+    private static final class VersionedRollups {
+        private final CsvFileVersion[] versions;
+        private final TransactionRollups rollups;
+
+        private VersionedRollups(CsvFileVersion[] versions, TransactionRollups rollups) {
+            this.versions = versions;
+            this.rollups = rollups;
+        }
+    }
+}
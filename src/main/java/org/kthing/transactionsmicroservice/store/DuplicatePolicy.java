@@ -0,0 +1,29 @@
+package org.kthing.transactionsmicroservice.store;
+
+import java.util.Locale;
+
+/**
+ * What the stores do with a transaction ID that occurs more than once across all sources, set with
+ * {@code transaction.duplicates.policy}. Whatever the policy, the repeats are listed by
+ * {@code GET /api/admin/duplicates}.
+ */
+public enum DuplicatePolicy {
+
+    /** Serve every occurrence, as if the IDs were distinct. */
+    REPORT,
+    /** Serve only the first occurrence of each ID and leave the repeats out of pages, rollups and exports. */
+    KEEP_FIRST,
+    /** Refuse data with repeated IDs instead of serving it. */
+    REJECT;
+
+    /**
+     * @throws IllegalArgumentException for anything but {@code report}, {@code keep-first} or {@code reject}
+     */
+    public static DuplicatePolicy of(String name) {
+        try {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown duplicate policy: " + name, e);
+        }
+    }
+}
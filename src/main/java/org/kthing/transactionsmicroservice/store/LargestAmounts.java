@@ -0,0 +1,223 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Bounded selection of the transactions with the largest amounts. Candidates are offered as primitives
+ * (unscaled amount and scale, timestamp, and a reference the run can materialize from) and kept in a
+ * min-heap of at most {@code limit} entries, so memory does not grow with the number of candidates.
+ * Larger amounts rank first; equal amounts are ranked by timestamp, earlier first, then by run and
+ * reference, so the selection is the same however the candidates were split up.
+ */
+public final class LargestAmounts {
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int limit;
+    private final long[] amounts;
+    private final int[] scales;
+    private final long[] epochSeconds;
+    private final int[] runs;
+    private final long[] references;
+    private int size;
+
+    LargestAmounts(int limit) {
+        this.limit = limit;
+        amounts = new long[limit];
+        scales = new int[limit];
+        epochSeconds = new long[limit];
+        runs = new int[limit];
+        references = new long[limit];
+    }
+
+    /**
+     * The {@code limit} matching transactions of the given type, or of both types if {@code null},
+     * with the largest amounts, largest first. Each run is read in a single pass, in parallel as far as
+     * {@code fetcher} allows, and only the selected transactions are materialized.
+     */
+    public static List<Transaction> select(List<TimeOrderedRun> runs, Transaction.TransactionType type, int limit,
+                                           SourceFetcher fetcher) {
+        List<Callable<LargestAmounts>> tasks = new ArrayList<>(runs.size());
+        for (TimeOrderedRun run : runs) {
+            tasks.add(() -> run.largest(type, limit));
+        }
+        List<LargestAmounts> perRun = fetcher.fetchAll(tasks);
+        LargestAmounts largest = new LargestAmounts(limit);
+        for (int run = 0; run < perRun.size(); run++) {
+            largest.addAll(perRun.get(run), run);
+        }
+
+        // materialized run by run, then put back in rank order
+        int count = largest.sortDescending();
+        Transaction[] selected = new Transaction[count];
+        for (int run = 0; run < runs.size(); run++) {
+            long[] runReferences = new long[count];
+            int[] ranks = new int[count];
+            int runCount = 0;
+            for (int rank = 0; rank < count; rank++) {
+                if (largest.runs[rank] == run) {
+                    runReferences[runCount] = largest.references[rank];
+                    ranks[runCount++] = rank;
+                }
+            }
+            if (runCount > 0) {
+                List<Transaction> transactions = runs.get(run).materializeReferences(runReferences, runCount);
+                for (int i = 0; i < runCount; i++) {
+                    selected[ranks[i]] = transactions.get(i);
+                }
+            }
+        }
+        return Arrays.asList(selected);
+    }
+
+    /**
+     * Keeps the candidate if it ranks among the {@code limit} largest offered so far.
+     */
+    void offer(long unscaledAmount, int scale, long epochSecond, long reference) {
+        offer(unscaledAmount, scale, epochSecond, 0, reference);
+    }
+
+    /**
+     * Offers every entry of {@code other}, attributed to {@code run}.
+     */
+    void addAll(LargestAmounts other, int run) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.amounts[i], other.scales[i], other.epochSeconds[i], run, other.references[i]);
+        }
+    }
+
+    /** Offers every entry of {@code other}, keeping their runs. */
+    void addAll(LargestAmounts other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.amounts[i], other.scales[i], other.epochSeconds[i], other.runs[i], other.references[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void offer(long amount, int scale, long epochSecond, int run, long reference) {
+        if (limit == 0) {
+            return;
+        }
+        if (size < limit) {
+            set(size, amount, scale, epochSecond, run, reference);
+            siftUp(size++);
+        } else if (compare(amount, scale, epochSecond, run, reference, 0) > 0) {
+            set(0, amount, scale, epochSecond, run, reference);
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Sorts the entries largest first by heap sort, after which nothing more can be offered.
+     *
+     * @return the number of entries
+     */
+    private int sortDescending() {
+        int count = size;
+        // moving the smallest remaining entry behind the heap each time leaves the largest in slot 0
+        for (int end = count - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        size = 0;
+        return count;
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (compare(slot, parent) >= 0) {
+                return;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot, int end) {
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && compare(child + 1, child) < 0) {
+                child++;
+            }
+            if (compare(child, slot) >= 0) {
+                return;
+            }
+            swap(slot, child);
+            slot = child;
+        }
+    }
+
+    private int compare(int left, int right) {
+        return compare(amounts[left], scales[left], epochSeconds[left], runs[left], references[left], right);
+    }
+
+    /** Positive if the candidate ranks above the entry in {@code slot}. */
+    private int compare(long amount, int scale, long epochSecond, int run, long reference, int slot) {
+        int byAmount = compareAmounts(amount, scale, amounts[slot], scales[slot]);
+        if (byAmount != 0) {
+            return byAmount;
+        }
+        if (epochSecond != epochSeconds[slot]) {
+            return epochSecond < epochSeconds[slot] ? 1 : -1;
+        }
+        if (run != runs[slot]) {
+            return run < runs[slot] ? 1 : -1;
+        }
+        return Long.compare(references[slot], reference);
+    }
+
+    static int compareAmounts(long leftUnscaled, int leftScale, long rightUnscaled, int rightScale) {
+        if (leftScale == rightScale) {
+            return Long.compare(leftUnscaled, rightUnscaled);
+        }
+        int difference = Math.abs(leftScale - rightScale);
+        if (difference < POWERS_OF_TEN.length) {
+            try {
+                return leftScale < rightScale
+                        ? Long.compare(Math.multiplyExact(leftUnscaled, POWERS_OF_TEN[difference]), rightUnscaled)
+                        : Long.compare(leftUnscaled, Math.multiplyExact(rightUnscaled, POWERS_OF_TEN[difference]));
+            } catch (ArithmeticException e) {
+                // the rescaled side is beyond the range of a long
+            }
+        }
+        return BigDecimal.valueOf(leftUnscaled, leftScale).compareTo(BigDecimal.valueOf(rightUnscaled, rightScale));
+    }
+
+    private void set(int slot, long amount, int scale, long epochSecond, int run, long reference) {
+        amounts[slot] = amount;
+        scales[slot] = scale;
+        epochSeconds[slot] = epochSecond;
+        runs[slot] = run;
+        references[slot] = reference;
+    }
+
+    private void swap(int left, int right) {
+        long amount = amounts[left];
+        int scale = scales[left];
+        long epochSecond = epochSeconds[left];
+        int run = runs[left];
+        long reference = references[left];
+        set(left, amounts[right], scales[right], epochSeconds[right], runs[right], references[right]);
+        set(right, amount, scale, epochSecond, run, reference);
+    }
+}
@@ -0,0 +1,65 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Bucket sizes of rollup queries, as UTC hour ranges counted from the epoch.
+ */
+public enum RollupBucket {
+
+    HOUR {
+        @Override
+        long start(long hour) {
+            return hour;
+        }
+
+        @Override
+        long end(long start) {
+            return start + 1;
+        }
+    },
+
+    DAY {
+        @Override
+        long start(long hour) {
+            return Math.floorDiv(hour, HOURS_PER_DAY) * HOURS_PER_DAY;
+        }
+
+        @Override
+        long end(long start) {
+            return start + HOURS_PER_DAY;
+        }
+    },
+
+    /** Calendar months, so buckets have 672 to 744 hours. */
+    MONTH {
+        @Override
+        long start(long hour) {
+            return LocalDate.ofEpochDay(Math.floorDiv(hour, HOURS_PER_DAY)).withDayOfMonth(1).toEpochDay() * HOURS_PER_DAY;
+        }
+
+        @Override
+        long end(long start) {
+            return LocalDate.ofEpochDay(Math.floorDiv(start, HOURS_PER_DAY)).plusMonths(1).toEpochDay() * HOURS_PER_DAY;
+        }
+    };
+
+    private static final long HOURS_PER_DAY = 24;
+
+    /** First hour of the bucket containing {@code hour}. */
+    abstract long start(long hour);
+
+    /** First hour after the bucket starting at {@code start}. */
+    abstract long end(long start);
+
+    public static RollupBucket of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new TransactionServiceException("Unsupported rollup bucket: " + name);
+        }
+    }
+}
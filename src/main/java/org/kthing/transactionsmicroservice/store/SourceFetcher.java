@@ -0,0 +1,126 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the per-source work of a request, such as reading the file of each {@link TransactionSource}. With
+ * {@code transaction.fetch.concurrent=true} the sources are fetched at the same time on the application
+ * task executor, which runs on virtual threads when {@code spring.threads.virtual.enabled} is set on
+ * Java 21; the first source is fetched on the request thread itself. If one source fails, the others are
+ * cancelled and the failure is rethrown.
+ *
+ * <p>File reads done through {@link #read} are limited to {@code transaction.io.max-concurrent-reads}
+ * at a time across all requests, so a burst of requests waits for a permit instead of opening a file
+ * handle each.
+ */
+@Component
+public class SourceFetcher {
+
+    /** Fetches sources one after the other on the calling thread, without a read limit. */
+    public static final SourceFetcher SEQUENTIAL = new SourceFetcher(null, 0);
+
+    private final Executor executor;
+    private final Semaphore readPermits;
+
+    @Autowired
+    public SourceFetcher(@Value("${transaction.fetch.concurrent:false}") boolean concurrent,
+                         @Value("${transaction.io.max-concurrent-reads:64}") int maxConcurrentReads,
+                         @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor executor) {
+        this(concurrent ? executor : null, maxConcurrentReads);
+    }
+
+    /**
+     * @param executor where all sources but the first are fetched, or {@code null} to fetch them in turn
+     * @param maxConcurrentReads read limit, or 0 for none
+     */
+    public SourceFetcher(Executor executor, int maxConcurrentReads) {
+        this.executor = executor;
+        this.readPermits = maxConcurrentReads > 0 ? new Semaphore(maxConcurrentReads, true) : null;
+    }
+
+    /**
+     * The results of all tasks, in task order.
+     */
+    public <T> List<T> fetchAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (executor == null || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        List<FutureTask<T>> forked = new ArrayList<>(tasks.size() - 1);
+        try {
+            for (Callable<T> task : tasks.subList(1, tasks.size())) {
+                FutureTask<T> future = new FutureTask<>(task);
+                forked.add(future);
+                executor.execute(future);
+            }
+            results.add(call(tasks.get(0)));
+            for (FutureTask<T> future : forked) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionServiceException("Interrupted while reading transaction data", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            // a no-op for the tasks that completed
+            forked.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Runs a file read once a read permit is free.
+     */
+    public <T> T read(Callable<T> read) {
+        if (readPermits == null) {
+            return call(read);
+        }
+        try {
+            readPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionServiceException("Interrupted while waiting to read transaction data", e);
+        }
+        try {
+            return call(read);
+        } finally {
+            readPermits.release();
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        return new TransactionServiceException("Error reading transaction data", failure);
+    }
+}
@@ -0,0 +1,84 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CSVUtil;
+import org.kthing.transactionsmicroservice.util.CsvLine;
+import org.kthing.transactionsmicroservice.util.LongHashSet;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.kthing.transactionsmicroservice.util.ParallelCsvReader;
+import org.kthing.transactionsmicroservice.util.TransactionRecord;
+
+import java.util.List;
+
+/**
+ * Collects the records of one byte range of a CSV file into a table of its own.
+ */
+final class TableLoader implements PagedCsvReader.RecordVisitor {
+
+    private final TransactionTable table = new TransactionTable();
+    private final TransactionRecord record = new TransactionRecord();
+    private final Transaction.TransactionType type;
+    private final LongHashSet excludedOffsets;
+
+    private TableLoader(Transaction.TransactionType type, LongHashSet excludedOffsets) {
+        this.type = type;
+        this.excludedOffsets = excludedOffsets;
+    }
+
+    /**
+     * Parses the whole file in byte ranges on the fork-join pool, one loader per range.
+     */
+    static ParallelCsvReader.Scan<TableLoader> scan(String filePath, Transaction.TransactionType type) {
+        return scan(filePath, type, null);
+    }
+
+    /**
+     * Like {@link #scan(String, Transaction.TransactionType)}, leaving out the records at the given offsets.
+     */
+    static ParallelCsvReader.Scan<TableLoader> scan(String filePath, Transaction.TransactionType type, LongHashSet excludedOffsets) {
+        return ParallelCsvReader.scanRecords(filePath, () -> new TableLoader(type, excludedOffsets));
+    }
+
+    static int rows(List<TableLoader> loaders) {
+        int rows = 0;
+        for (TableLoader loader : loaders) {
+            rows += loader.table.size();
+        }
+        return rows;
+    }
+
+    /**
+     * The rows of each source's loaders, source after source, in loader order.
+     */
+    static TransactionTable concat(List<List<TableLoader>> sources) {
+        int rows = 0;
+        for (List<TableLoader> loaders : sources) {
+            rows += rows(loaders);
+        }
+        TransactionTable loaded = new TransactionTable(rows);
+        for (List<TableLoader> loaders : sources) {
+            loaders.forEach(loader -> loaded.appendAll(loader.table));
+        }
+        return loaded;
+    }
+
+    static void append(TransactionTable table, TransactionRecord record, Transaction.TransactionType type) {
+        table.append(
+                record.getTransactionId(),
+                record.getCustomerId(),
+                record.getAccountId(),
+                record.getEpochSecond(),
+                record.getUnscaledAmount(),
+                record.getAmountScale(),
+                type);
+    }
+
+    @Override
+    public void visit(CsvLine line, long offset) {
+        if (excludedOffsets != null && excludedOffsets.contains(offset)) {
+            return;
+        }
+        CSVUtil.decodeRecord(line, record);
+        append(table, record, type);
+    }
+}
@@ -0,0 +1,122 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run over a time-ordered slice {@code rows[from..to)} of row indexes into a {@link TransactionTable},
+ * either a whole file's sorted permutation or one account's posting list. The date range is applied by
+ * binary search, so every position between the two bounds matches.
+ */
+class TableRun implements TimeOrderedRun {
+
+    private final TransactionTable table;
+    private final int[] rows;
+    private final int from;
+    private final int size;
+    private final int source;
+    private final long version;
+    private final long generation;
+    private final int firstMatch;
+    private final int lastMatchExclusive;
+
+    TableRun(TransactionTable table, int[] rows, int from, int to, TransactionFilter filter, int source, long version,
+             long generation) {
+        this.table = table;
+        this.rows = rows;
+        this.from = from;
+        this.size = to - from;
+        this.source = source;
+        this.version = version;
+        this.generation = generation;
+        this.firstMatch = filter.getFromEpochSecond() == Long.MIN_VALUE ? 0 : firstPositionAfter(filter.getFromEpochSecond() - 1);
+        this.lastMatchExclusive = Math.max(firstMatch, firstPositionAfter(filter.getToEpochSecond()));
+    }
+
+    @Override
+    public int source() {
+        return source;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public long generation() {
+        return generation;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int nextMatch(int position) {
+        int candidate = Math.max(position, firstMatch);
+        return candidate < lastMatchExclusive ? candidate : size;
+    }
+
+    @Override
+    public long epochSecond(int position) {
+        return table.epochSecond(rows[from + position]);
+    }
+
+    @Override
+    public long sequence(int position) {
+        return rows[from + position];
+    }
+
+    @Override
+    public List<Transaction> materialize(int[] positions, int count) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(table.materialize(rows[from + positions[i]]));
+        }
+        return transactions;
+    }
+
+    @Override
+    public LargestAmounts largest(Transaction.TransactionType type, int limit) {
+        LargestAmounts largest = new LargestAmounts(limit);
+        byte[] amountScales = table.amountScalesColumn();
+        for (int position = firstMatch; position < lastMatchExclusive; position++) {
+            int row = rows[from + position];
+            if (type == null || table.type(row) == type) {
+                largest.offer(table.unscaledAmount(row), amountScales[row], table.epochSecond(row), row);
+            }
+        }
+        return largest;
+    }
+
+    @Override
+    public List<Transaction> materializeReferences(long[] references, int count) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(table.materialize((int) references[i]));
+        }
+        return transactions;
+    }
+
+    // first position whose timestamp is greater than epochSecond
+    private int firstPositionAfter(long epochSecond) {
+        if (epochSecond == Long.MAX_VALUE) {
+            return size;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochSecond(middle) <= epochSecond) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
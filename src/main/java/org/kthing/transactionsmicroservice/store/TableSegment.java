@@ -0,0 +1,71 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.kthing.transactionsmicroservice.util.IndexSort;
+
+/**
+ * The rows {@code fromRow..toRow)} of a {@link TransactionTable}, as loaded at once or appended by one
+ * refresh: for each {@link TransactionSource}, the time-ordered permutation of its rows in the range and
+ * their {@link AccountIndex}. The {@link TransactionRollups} of the range are built on first use.
+ */
+@Getter
+class TableSegment {
+
+    private final int fromRow;
+    private final int toRow;
+    /** Per source, in source order. */
+    private final int[][] rowsByTime;
+    private final AccountIndex[] indexes;
+    @Getter(AccessLevel.NONE)
+    private volatile TransactionRollups rollups;
+
+    TableSegment(int fromRow, int toRow, int[][] rowsByTime, AccountIndex[] indexes) {
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+        this.rowsByTime = rowsByTime;
+        this.indexes = indexes;
+    }
+
+    int size() {
+        return toRow - fromRow;
+    }
+
+    /**
+     * The rollups of this segment's rows of the table, built on first use.
+     */
+    TransactionRollups rollups(TransactionTable table) {
+        TransactionRollups built = rollups;
+        if (built == null) {
+            synchronized (this) {
+                built = rollups;
+                if (built == null) {
+                    built = TransactionRollups.build(table, fromRow, toRow);
+                    rollups = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    /**
+     * One segment over the rows of this one and of {@code newer}, which must directly follow them.
+     */
+    TableSegment merge(TransactionTable table, TableSegment newer) {
+        int[][] mergedRowsByTime = new int[rowsByTime.length][];
+        AccountIndex[] mergedIndexes = new AccountIndex[indexes.length];
+        for (int source = 0; source < rowsByTime.length; source++) {
+            mergedRowsByTime[source] = IndexSort.merge(table.epochSecondsColumn(), rowsByTime[source], newer.rowsByTime[source]);
+            mergedIndexes[source] = indexes[source].merge(table, newer.indexes[source]);
+        }
+        return new TableSegment(fromRow, newer.toRow, mergedRowsByTime, mergedIndexes);
+    }
+
+    long memoryFootprintBytes() {
+        long bytes = 0;
+        for (int source = 0; source < rowsByTime.length; source++) {
+            bytes += indexes[source].memoryFootprintBytes() + (long) rowsByTime[source].length * Integer.BYTES;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,178 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.Value;
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Streaming k-way merge of {@link TimeOrderedRun}s. A binary heap holds the next matching position of
+ * every run, so a page costs O(pageSize log k) position lookups. Ties on the timestamp are broken by run
+ * index, which makes the order total: consecutive pages neither repeat nor skip a transaction. Runs are
+ * listed in source order, so the order is by timestamp, source and {@link TimeOrderedRun#sequence}.
+ */
+public final class TimeOrderedMerge {
+
+    private TimeOrderedMerge() {
+
+    }
+
+    public static Page merge(List<TimeOrderedRun> runs, int[] startPositions, int pageSize) {
+        return merge(runs, startPositions, pageSize, SourceFetcher.SEQUENTIAL);
+    }
+
+    /**
+     * Merges like {@link #merge(List, int[], int)}, materializing the page's rows of each run through
+     * {@code fetcher}.
+     */
+    public static Page merge(List<TimeOrderedRun> runs, int[] startPositions, int pageSize, SourceFetcher fetcher) {
+        int runCount = runs.size();
+        int[] heads = new int[runCount];
+        int[] heap = new int[runCount];
+        int heapSize = 0;
+        for (int run = 0; run < runCount; run++) {
+            heads[run] = runs.get(run).nextMatch(startPositions[run]);
+            if (heads[run] < runs.get(run).size()) {
+                heap[heapSize] = run;
+                siftUp(runs, heads, heap, heapSize++);
+            }
+        }
+
+        int[] pickedRuns = new int[pageSize];
+        int[] pickedPositions = new int[pageSize];
+        int count = 0;
+        while (count < pageSize && heapSize > 0) {
+            int run = heap[0];
+            pickedRuns[count] = run;
+            pickedPositions[count] = heads[run];
+            count++;
+
+            heads[run] = runs.get(run).nextMatch(heads[run] + 1);
+            if (heads[run] >= runs.get(run).size()) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(runs, heads, heap, heapSize);
+        }
+
+        long materializeStarted = System.nanoTime();
+        List<Transaction> transactions = materialize(runs, pickedRuns, pickedPositions, count, fetcher);
+        return new Page(transactions, heads, heapSize > 0, System.nanoTime() - materializeStarted,
+                count == 0 ? -1 : pickedRuns[count - 1], count == 0 ? -1 : pickedPositions[count - 1]);
+    }
+
+    /**
+     * First position of {@code run} that the merge orders after the transaction with the given timestamp,
+     * source index and sequence, whether or not that transaction is still in the run: a page resumed
+     * from there continues right after it. Runs are ordered by source index among equal timestamps.
+     */
+    public static int positionAfter(TimeOrderedRun run, long epochSecond, int source, long sequence) {
+        int low = 0;
+        int high = run.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long time = run.epochSecond(middle);
+            boolean before = time < epochSecond || (time == epochSecond
+                    && (run.source() < source || (run.source() == source && run.sequence(middle) <= sequence)));
+            if (before) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // positions taken from each run are ascending, so every run materializes its share in one call
+    private static List<Transaction> materialize(List<TimeOrderedRun> runs, int[] pickedRuns, int[] pickedPositions, int count,
+                                                 SourceFetcher fetcher) {
+        int runCount = runs.size();
+        int[][] positionsByRun = new int[runCount][];
+        int[] countsByRun = new int[runCount];
+        for (int i = 0; i < count; i++) {
+            countsByRun[pickedRuns[i]]++;
+        }
+        for (int run = 0; run < runCount; run++) {
+            positionsByRun[run] = new int[countsByRun[run]];
+            countsByRun[run] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int run = pickedRuns[i];
+            positionsByRun[run][countsByRun[run]++] = pickedPositions[i];
+        }
+
+        List<Callable<List<Transaction>>> reads = new ArrayList<>(runCount);
+        for (int run = 0; run < runCount; run++) {
+            TimeOrderedRun source = runs.get(run);
+            int[] positions = positionsByRun[run];
+            int taken = countsByRun[run];
+            reads.add(taken == 0 ? List::of : () -> source.materialize(positions, taken));
+        }
+        List<List<Transaction>> transactionsByRun = fetcher.fetchAll(reads);
+
+        List<Transaction> transactions = new ArrayList<>(count);
+        int[] taken = new int[runCount];
+        for (int i = 0; i < count; i++) {
+            int run = pickedRuns[i];
+            transactions.add(transactionsByRun.get(run).get(taken[run]++));
+        }
+        return transactions;
+    }
+
+    private static boolean precedes(List<TimeOrderedRun> runs, int[] heads, int left, int right) {
+        long leftTime = runs.get(left).epochSecond(heads[left]);
+        long rightTime = runs.get(right).epochSecond(heads[right]);
+        return leftTime < rightTime || (leftTime == rightTime && left < right);
+    }
+
+    private static void siftUp(List<TimeOrderedRun> runs, int[] heads, int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!precedes(runs, heads, heap[index], heap[parent])) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(List<TimeOrderedRun> runs, int[] heads, int[] heap, int heapSize) {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && precedes(runs, heads, heap[left], heap[smallest])) {
+                smallest = left;
+            }
+            if (right < heapSize && precedes(runs, heads, heap[right], heap[smallest])) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(heap, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    @Value
+    public static class Page {
+        List<Transaction> transactions;
+        /** Position in each run where the next page starts. */
+        int[] nextPositions;
+        boolean hasMore;
+        /** Time spent reading the page's rows from their runs. */
+        long materializeNanos;
+        /** Run and position of the page's last transaction, -1 for an empty page. */
+        int lastRun;
+        int lastPosition;
+    }
+}
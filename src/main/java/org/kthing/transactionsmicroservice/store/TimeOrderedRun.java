@@ -0,0 +1,62 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.util.List;
+
+/**
+ * The transactions of one source that match a query, ordered by timestamp and, among equal timestamps,
+ * by {@link #sequence}. Positions run from 0 to {@link #size()} and only mean something within the run;
+ * page tokens hold the timestamp, source and sequence of a transaction instead, which stay valid while
+ * records are appended.
+ */
+public interface TimeOrderedRun {
+
+    /**
+     * Index of the run's {@link TransactionSource} in the configured order.
+     */
+    int source();
+
+    /**
+     * Version of the data the run was resolved from.
+     */
+    long version();
+
+    /**
+     * Identifies the load of the source that {@link #sequence}s refer to. It stays the same while records
+     * are appended and changes when the source is loaded again from scratch.
+     */
+    long generation();
+
+    int size();
+
+    /**
+     * Smallest matching position at or after {@code position}, or {@link #size()} if there is none.
+     */
+    int nextMatch(int position);
+
+    long epochSecond(int position);
+
+    /**
+     * Orders the source's transactions that share a timestamp, earlier ingested ones first: the record's
+     * byte offset in its file or its row in the table. Appending records leaves the others' unchanged.
+     */
+    long sequence(int position);
+
+    /**
+     * Builds the transactions at the first {@code count} of the given ascending positions.
+     */
+    List<Transaction> materialize(int[] positions, int count);
+
+    /**
+     * The {@code limit} matching transactions of the given type, or of any type if {@code null}, with
+     * the largest amounts, found in one pass over the run.
+     */
+    LargestAmounts largest(Transaction.TransactionType type, int limit);
+
+    /**
+     * Builds the transactions at the first {@code count} of the given references, as offered by
+     * {@link #largest}, in that order.
+     */
+    List<Transaction> materializeReferences(long[] references, int count);
+}
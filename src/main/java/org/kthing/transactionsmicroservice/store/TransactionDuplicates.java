@@ -0,0 +1,130 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.Value;
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The transaction IDs seen across all sources, and the occurrences that repeated one. An ID's first
+ * occurrence is the one added first, which the stores make the first in source order and, within a
+ * source, in time order; every later one is a duplicate. The IDs are held in a {@link LongHashSet} sized
+ * from the row count, 11 to 16 bytes per ID. The first {@code maxReported} duplicates are kept for
+ * {@link #report()}, further ones only counted.
+ *
+ * <p>IDs are added from one thread at a time; {@link #report()} returns what was last published and may
+ * be called from any thread.
+ */
+public class TransactionDuplicates {
+
+    private final LongHashSet ids;
+    private final int maxReported;
+    private final List<Duplicate> reported = new ArrayList<>();
+    private long count;
+    private volatile Report report = new Report(0, List.of());
+
+    public TransactionDuplicates(int expectedIds, int maxReported) {
+        this.ids = new LongHashSet(expectedIds);
+        this.maxReported = maxReported;
+    }
+
+    @Value
+    public static class Duplicate {
+        long transactionId;
+        /** The file of the repeated occurrence. */
+        String filePath;
+        Transaction.TransactionType type;
+    }
+
+    @Value
+    public static class Report {
+        /** Occurrences after the first, of all IDs. */
+        long count;
+        List<Duplicate> duplicates;
+    }
+
+    /**
+     * Adds an occurrence of the ID in {@code source}.
+     *
+     * @return {@code true} if it is the first, {@code false} if it was counted as a duplicate
+     */
+    boolean add(long transactionId, TransactionSource source) {
+        if (ids.add(transactionId)) {
+            return true;
+        }
+        count++;
+        if (reported.size() < maxReported) {
+            reported.add(new Duplicate(transactionId, source.getFilePath(), source.getType()));
+        }
+        return false;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Makes the duplicates added so far visible to {@link #report()}.
+     */
+    void publish() {
+        report = new Report(count, List.copyOf(reported));
+    }
+
+    public Report report() {
+        return report;
+    }
+
+    /**
+     * IDs added tentatively, such as those of an append that may still be rejected: checked against the
+     * IDs added so far and against each other, but added for good only by {@link Batch#commit()}.
+     */
+    Batch batch(int expectedIds) {
+        return new Batch(expectedIds);
+    }
+
+    final class Batch {
+        private final LongHashSet batchIds;
+        private long[] added;
+        private int size;
+        private final List<Duplicate> found = new ArrayList<>();
+        private long batchCount;
+
+        private Batch(int expectedIds) {
+            batchIds = new LongHashSet(expectedIds);
+            added = new long[Math.max(expectedIds, 16)];
+        }
+
+        /** Like {@link TransactionDuplicates#add}, without changing the IDs added for good. */
+        boolean add(long transactionId, TransactionSource source) {
+            if (!ids.contains(transactionId) && batchIds.add(transactionId)) {
+                if (size == added.length) {
+                    added = Arrays.copyOf(added, size + (size >> 1));
+                }
+                added[size++] = transactionId;
+                return true;
+            }
+            batchCount++;
+            if (reported.size() + found.size() < maxReported) {
+                found.add(new Duplicate(transactionId, source.getFilePath(), source.getType()));
+            }
+            return false;
+        }
+
+        long count() {
+            return batchCount;
+        }
+
+        /** Adds the batch's IDs and duplicates for good and publishes them. */
+        void commit() {
+            for (int i = 0; i < size; i++) {
+                ids.add(added[i]);
+            }
+            count += batchCount;
+            reported.addAll(found);
+            publish();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.kthing.transactionsmicroservice.util.CSVUtil;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Query filters resolved to primitives once per request: the account as a {@code long} and the date
+ * range as inclusive UTC epoch-second bounds. Stored timestamps have whole seconds, so filtering works
+ * at second precision.
+ */
+@Getter
+@EqualsAndHashCode
+public final class TransactionFilter {
+
+    private final boolean filterAccount;
+    private final long accountId;
+    private final long fromEpochSecond;
+    private final long toEpochSecond;
+
+    private TransactionFilter(boolean filterAccount, long accountId, long fromEpochSecond, long toEpochSecond) {
+        this.filterAccount = filterAccount;
+        this.accountId = accountId;
+        this.fromEpochSecond = fromEpochSecond;
+        this.toEpochSecond = toEpochSecond;
+    }
+
+    public static TransactionFilter of(String accountId, LocalDateTime fromDate, LocalDateTime toDate) {
+        long from = fromDate == null ? Long.MIN_VALUE : ceilEpochSecond(fromDate);
+        long to = toDate == null ? Long.MAX_VALUE : toDate.toEpochSecond(ZoneOffset.UTC);
+        if (!StringUtils.hasText(accountId)) {
+            return new TransactionFilter(false, 0, from, to);
+        }
+        long parsedAccountId = CSVUtil.parseId(accountId);
+        if (parsedAccountId == CSVUtil.INVALID_ID) {
+            throw new IllegalArgumentException("Invalid account ID format: " + accountId);
+        }
+        return new TransactionFilter(true, parsedAccountId, from, to);
+    }
+
+    public boolean matchesAccount(long recordAccountId) {
+        return !filterAccount || recordAccountId == accountId;
+    }
+
+    public boolean matchesTime(long epochSecond) {
+        return epochSecond >= fromEpochSecond && epochSecond <= toEpochSecond;
+    }
+
+    // a bound with a fraction of a second excludes the whole second it falls in
+    private static long ceilEpochSecond(LocalDateTime dateTime) {
+        long epochSecond = dateTime.toEpochSecond(ZoneOffset.UTC);
+        return dateTime.getNano() > 0 ? epochSecond + 1 : epochSecond;
+    }
+}
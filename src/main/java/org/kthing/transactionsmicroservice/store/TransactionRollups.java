@@ -0,0 +1,523 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.Value;
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.IndexSort;
+import org.kthing.transactionsmicroservice.util.LongIntHashMap;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-hour totals of a {@link TransactionTable}, for all accounts together and for each account. Within
+ * a series every amount is converted to the largest scale found among its rows and summed as an unscaled
+ * {@code long}, so the totals are exact without any {@code BigDecimal} arithmetic. A series whose amounts
+ * or totals do not fit a {@code long} at its scale is kept in {@code BigDecimal}s instead.
+ *
+ * <p>Each series is a run of non-empty hour buckets in time order; all series share one set of arrays,
+ * series {@code s} being buckets {@code starts[s]..starts[s + 1])}, with series 0 covering all accounts.
+ * Sums and counts are stored as running totals over the buckets of their series, so those of any bucket
+ * range are the difference of two entries: a query costs two binary searches per returned bucket,
+ * however many transactions the buckets hold. Minimum and maximum are kept per hour and combined over
+ * the hours of each returned bucket.
+ *
+ * <p>Rollups of different rows can be put together with {@link #plus} without copying: each part is
+ * queried on its own and the buckets of the same period are added up. That way rows appended to the
+ * table are rolled up without rolling up the others again.
+ */
+public class TransactionRollups {
+
+    public static final long SECONDS_PER_HOUR = 3600;
+
+    // the largest power of ten a long can hold
+    private static final int MAX_SCALE = 18;
+    private static final int ALL_ACCOUNTS = 0;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final List<Part> parts;
+
+    private TransactionRollups(List<Part> parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Totals of the hours in one bucket, or in a whole query range. Amounts are at the largest scale
+     * among the rows of the queried series.
+     */
+    @Value
+    public static class Aggregate {
+        /** First hour of the bucket, in hours since the epoch. */
+        long startHour;
+        /** First hour after the bucket. */
+        long endHour;
+        BigDecimal incomeTotal;
+        BigDecimal outcomeTotal;
+        int incomeCount;
+        int outcomeCount;
+        BigDecimal minAmount;
+        BigDecimal maxAmount;
+    }
+
+    @Value
+    public static class Result {
+        /** The non-empty buckets in time order. */
+        List<Aggregate> buckets;
+        /** All of the buckets together, {@code null} if there are none. */
+        Aggregate total;
+    }
+
+    /**
+     * Rolls up every row of the table.
+     */
+    public static TransactionRollups build(TransactionTable table) {
+        return build(table, 0, table.size());
+    }
+
+    /**
+     * Rolls up rows {@code from} (inclusive) to {@code to} (exclusive) of the table.
+     */
+    public static TransactionRollups build(TransactionTable table, int from, int to) {
+        int rows = to - from;
+        int[] rowsByTime = IndexSort.sortedIndexes(table.epochSecondsColumn(), from, to);
+        // stable, so each account's rows stay in time order
+        int[] rowsByAccount = rowsByTime.clone();
+        IndexSort.sort(table.accountIdsColumn(), rowsByAccount);
+
+        Builder builder = new Builder(table, rows);
+        builder.addSeries(rowsByTime, 0, rows);
+        LongIntHashMap slots = new LongIntHashMap(1024);
+        int first = 0;
+        while (first < rows) {
+            long accountId = table.accountId(rowsByAccount[first]);
+            int last = first + 1;
+            while (last < rows && table.accountId(rowsByAccount[last]) == accountId) {
+                last++;
+            }
+            slots.put(accountId, slots.size() + 1);
+            builder.addSeries(rowsByAccount, first, last);
+            first = last;
+        }
+        return new TransactionRollups(List.of(builder.build(slots)));
+    }
+
+    /**
+     * The rollups of the rows of these and of {@code other} together.
+     */
+    public TransactionRollups plus(TransactionRollups other) {
+        List<Part> all = new ArrayList<>(parts.size() + other.parts.size());
+        all.addAll(parts);
+        all.addAll(other.parts);
+        return new TransactionRollups(all);
+    }
+
+    /**
+     * The transactions matching the filter, in buckets of the given size. The time bounds are widened
+     * to whole hours: {@code fromEpochSecond} to the start of its hour, {@code toEpochSecond} to the end
+     * of its hour.
+     */
+    public Result query(TransactionFilter filter, RollupBucket bucket) {
+        if (parts.size() == 1) {
+            return parts.get(0).query(filter, bucket);
+        }
+        List<Aggregate> buckets = List.of();
+        Aggregate total = null;
+        int scale = -1;
+        for (Part part : parts) {
+            scale = Math.max(scale, part.scale(filter));
+            Result result = part.query(filter, bucket);
+            buckets = mergeBuckets(buckets, result.getBuckets());
+            total = combine(total, result.getTotal());
+        }
+        // a part whose rows of the series are all outside the range still counts for the scale, as it would
+        // in the rollups of all rows at once
+        List<Aggregate> rescaled = new ArrayList<>(buckets.size());
+        for (Aggregate aggregate : buckets) {
+            rescaled.add(rescale(aggregate, scale));
+        }
+        return new Result(rescaled, total == null ? null : rescale(total, scale));
+    }
+
+    public long memoryFootprintBytes() {
+        long bytes = 0;
+        for (Part part : parts) {
+            bytes += part.memoryFootprintBytes();
+        }
+        return bytes;
+    }
+
+    // both lists are in time order; the buckets of the same period are added up
+    private static List<Aggregate> mergeBuckets(List<Aggregate> merged, List<Aggregate> added) {
+        List<Aggregate> result = new ArrayList<>(merged.size() + added.size());
+        int left = 0;
+        int right = 0;
+        while (left < merged.size() || right < added.size()) {
+            if (right == added.size()
+                    || (left < merged.size() && merged.get(left).getStartHour() < added.get(right).getStartHour())) {
+                result.add(merged.get(left++));
+            } else if (left == merged.size() || added.get(right).getStartHour() < merged.get(left).getStartHour()) {
+                result.add(added.get(right++));
+            } else {
+                result.add(combine(merged.get(left++), added.get(right++)));
+            }
+        }
+        return result;
+    }
+
+    // adds added to aggregate, either of which may be null
+    private static Aggregate combine(Aggregate aggregate, Aggregate added) {
+        if (aggregate == null || added == null) {
+            return aggregate == null ? added : aggregate;
+        }
+        return new Aggregate(Math.min(aggregate.getStartHour(), added.getStartHour()),
+                Math.max(aggregate.getEndHour(), added.getEndHour()),
+                aggregate.getIncomeTotal().add(added.getIncomeTotal()),
+                aggregate.getOutcomeTotal().add(added.getOutcomeTotal()),
+                aggregate.getIncomeCount() + added.getIncomeCount(),
+                aggregate.getOutcomeCount() + added.getOutcomeCount(),
+                aggregate.getMinAmount().min(added.getMinAmount()),
+                aggregate.getMaxAmount().max(added.getMaxAmount()));
+    }
+
+    private static Aggregate rescale(Aggregate aggregate, int scale) {
+        return new Aggregate(aggregate.getStartHour(), aggregate.getEndHour(),
+                aggregate.getIncomeTotal().setScale(scale), aggregate.getOutcomeTotal().setScale(scale),
+                aggregate.getIncomeCount(), aggregate.getOutcomeCount(),
+                aggregate.getMinAmount().setScale(scale), aggregate.getMaxAmount().setScale(scale));
+    }
+
+    /** The rollups of the rows of one {@link #build}. */
+    private static final class Part {
+        private final LongIntHashMap slots;
+        private final int[] starts;
+        private final byte[] scales;
+        private final long[] hours;
+        private final long[] minAmounts;
+        private final long[] maxAmounts;
+        // entry i sums the buckets of its series up to and including bucket i
+        private final long[] incomeTotals;
+        private final long[] outcomeTotals;
+        private final int[] incomeCounts;
+        private final int[] outcomeCounts;
+        // per series, null unless the series is kept in BigDecimals; its amounts in the arrays above are then unused
+        private final WideSeries[] wideSeries;
+
+        private Part(LongIntHashMap slots, int[] starts, byte[] scales, long[] hours, long[] minAmounts,
+                     long[] maxAmounts, long[] incomeTotals, long[] outcomeTotals, int[] incomeCounts,
+                     int[] outcomeCounts, WideSeries[] wideSeries) {
+            this.slots = slots;
+            this.starts = starts;
+            this.scales = scales;
+            this.hours = hours;
+            this.minAmounts = minAmounts;
+            this.maxAmounts = maxAmounts;
+            this.incomeTotals = incomeTotals;
+            this.outcomeTotals = outcomeTotals;
+            this.incomeCounts = incomeCounts;
+            this.outcomeCounts = outcomeCounts;
+            this.wideSeries = wideSeries;
+        }
+
+        /** Scale of the filter's series, -1 if this part has no rows of it. */
+        private int scale(TransactionFilter filter) {
+            int series = series(filter);
+            return series == LongIntHashMap.MISSING ? -1 : scales[series];
+        }
+
+        private int series(TransactionFilter filter) {
+            return filter.isFilterAccount() ? slots.get(filter.getAccountId()) : ALL_ACCOUNTS;
+        }
+
+        private Result query(TransactionFilter filter, RollupBucket bucket) {
+            int series = series(filter);
+            if (series == LongIntHashMap.MISSING) {
+                return new Result(List.of(), null);
+            }
+            long fromHour = Math.floorDiv(filter.getFromEpochSecond(), SECONDS_PER_HOUR);
+            long toHour = Math.floorDiv(filter.getToEpochSecond(), SECONDS_PER_HOUR) + 1;
+            int end = lowerBound(starts[series], starts[series + 1], toHour);
+            int first = lowerBound(starts[series], end, fromHour);
+
+            List<Aggregate> buckets = new ArrayList<>();
+            int from = first;
+            while (from < end) {
+                long startHour = bucket.start(hours[from]);
+                long endHour = bucket.end(startHour);
+                int to = lowerBound(from, end, endHour);
+                buckets.add(aggregate(series, from, to, startHour, endHour, minAmount(series, from, to),
+                        maxAmount(series, from, to)));
+                from = to;
+            }
+            if (buckets.isEmpty()) {
+                return new Result(buckets, null);
+            }
+
+            BigDecimal min = buckets.get(0).getMinAmount();
+            BigDecimal max = buckets.get(0).getMaxAmount();
+            for (Aggregate aggregate : buckets) {
+                min = min.min(aggregate.getMinAmount());
+                max = max.max(aggregate.getMaxAmount());
+            }
+            Aggregate total = aggregate(series, first, end, Math.max(fromHour, buckets.get(0).getStartHour()),
+                    Math.min(toHour, buckets.get(buckets.size() - 1).getEndHour()), min, max);
+            return new Result(buckets, total);
+        }
+
+        private long memoryFootprintBytes() {
+            long bytes = slots.memoryFootprintBytes() + (long) starts.length * Integer.BYTES + scales.length
+                    + (long) hours.length * 5 * Long.BYTES + (long) incomeCounts.length * 2 * Integer.BYTES;
+            for (WideSeries wide : wideSeries) {
+                if (wide != null) {
+                    bytes += wide.memoryFootprintBytes();
+                }
+            }
+            return bytes;
+        }
+
+        // buckets from..to) of the series
+        private Aggregate aggregate(int series, int from, int to, long startHour, long endHour, BigDecimal min,
+                                    BigDecimal max) {
+            int before = from - 1;
+            boolean first = from == starts[series];
+            int incomeCount = incomeCounts[to - 1] - (first ? 0 : incomeCounts[before]);
+            int outcomeCount = outcomeCounts[to - 1] - (first ? 0 : outcomeCounts[before]);
+            WideSeries wide = wideSeries[series];
+            if (wide != null) {
+                int offset = starts[series];
+                BigDecimal income = wide.incomeTotals[to - 1 - offset];
+                BigDecimal outcome = wide.outcomeTotals[to - 1 - offset];
+                if (!first) {
+                    income = income.subtract(wide.incomeTotals[before - offset]);
+                    outcome = outcome.subtract(wide.outcomeTotals[before - offset]);
+                }
+                return new Aggregate(startHour, endHour, income, outcome, incomeCount, outcomeCount, min, max);
+            }
+            int scale = scales[series];
+            return new Aggregate(startHour, endHour,
+                    BigDecimal.valueOf(incomeTotals[to - 1] - (first ? 0 : incomeTotals[before]), scale),
+                    BigDecimal.valueOf(outcomeTotals[to - 1] - (first ? 0 : outcomeTotals[before]), scale),
+                    incomeCount, outcomeCount, min, max);
+        }
+
+        private BigDecimal minAmount(int series, int from, int to) {
+            WideSeries wide = wideSeries[series];
+            if (wide != null) {
+                BigDecimal min = wide.minAmounts[from - starts[series]];
+                for (int i = from + 1; i < to; i++) {
+                    min = min.min(wide.minAmounts[i - starts[series]]);
+                }
+                return min;
+            }
+            long min = Long.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, minAmounts[i]);
+            }
+            return BigDecimal.valueOf(min, scales[series]);
+        }
+
+        private BigDecimal maxAmount(int series, int from, int to) {
+            WideSeries wide = wideSeries[series];
+            if (wide != null) {
+                BigDecimal max = wide.maxAmounts[from - starts[series]];
+                for (int i = from + 1; i < to; i++) {
+                    max = max.max(wide.maxAmounts[i - starts[series]]);
+                }
+                return max;
+            }
+            long max = Long.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, maxAmounts[i]);
+            }
+            return BigDecimal.valueOf(max, scales[series]);
+        }
+
+        /** First bucket in {@code [from, to)} whose hour is not before {@code hour}. */
+        private int lowerBound(int from, int to, long hour) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (hours[middle] < hour) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Amounts of the buckets of a series whose amounts or totals do not fit a {@code long} at its scale,
+     * indexed from the series' first bucket.
+     */
+    private static final class WideSeries {
+        // about the size of a BigDecimal with its reference
+        private static final int BYTES_PER_AMOUNT = 40;
+
+        private final BigDecimal[] minAmounts;
+        private final BigDecimal[] maxAmounts;
+        private final BigDecimal[] incomeTotals;
+        private final BigDecimal[] outcomeTotals;
+
+        private WideSeries(BigDecimal[] minAmounts, BigDecimal[] maxAmounts, BigDecimal[] incomeTotals,
+                           BigDecimal[] outcomeTotals) {
+            this.minAmounts = minAmounts;
+            this.maxAmounts = maxAmounts;
+            this.incomeTotals = incomeTotals;
+            this.outcomeTotals = outcomeTotals;
+        }
+
+        private long memoryFootprintBytes() {
+            return (long) minAmounts.length * 4 * BYTES_PER_AMOUNT;
+        }
+    }
+
+    private static final class Builder {
+        private final TransactionTable table;
+        private final byte[] amountScales;
+        private int[] starts = new int[1025];
+        private byte[] scales = new byte[1024];
+        private WideSeries[] wideSeries = new WideSeries[1024];
+        private int series;
+        private int size;
+        private long[] hours;
+        private long[] minAmounts;
+        private long[] maxAmounts;
+        private long[] incomeTotals;
+        private long[] outcomeTotals;
+        private int[] incomeCounts;
+        private int[] outcomeCounts;
+
+        private Builder(TransactionTable table, int rows) {
+            this.table = table;
+            this.amountScales = table.amountScalesColumn();
+            int capacity = Math.max(rows, 16);
+            hours = new long[capacity];
+            minAmounts = new long[capacity];
+            maxAmounts = new long[capacity];
+            incomeTotals = new long[capacity];
+            outcomeTotals = new long[capacity];
+            incomeCounts = new int[capacity];
+            outcomeCounts = new int[capacity];
+        }
+
+        /** Adds a series for the given rows, which must be in time order. */
+        void addSeries(int[] rows, int from, int to) {
+            if (series + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                scales = Arrays.copyOf(scales, scales.length * 2);
+                wideSeries = Arrays.copyOf(wideSeries, wideSeries.length * 2);
+            }
+            int scale = 0;
+            for (int i = from; i < to; i++) {
+                scale = Math.max(scale, amountScales[rows[i]]);
+            }
+            int seriesStart = size;
+            if (scale > MAX_SCALE || !addAmounts(rows, from, to, scale)) {
+                size = seriesStart;
+                wideSeries[series] = addWideAmounts(rows, from, to, scale);
+            }
+            scales[series] = (byte) scale;
+            starts[++series] = size;
+        }
+
+        Part build(LongIntHashMap slots) {
+            return new Part(slots, Arrays.copyOf(starts, series + 1), Arrays.copyOf(scales, series),
+                    Arrays.copyOf(hours, size), Arrays.copyOf(minAmounts, size), Arrays.copyOf(maxAmounts, size),
+                    Arrays.copyOf(incomeTotals, size), Arrays.copyOf(outcomeTotals, size),
+                    Arrays.copyOf(incomeCounts, size), Arrays.copyOf(outcomeCounts, size),
+                    Arrays.copyOf(wideSeries, series));
+        }
+
+        // false if an amount or a total does not fit a long at the scale
+        private boolean addAmounts(int[] rows, int from, int to, int scale) {
+            int seriesStart = size;
+            try {
+                for (int i = from; i < to; i++) {
+                    int row = rows[i];
+                    long hour = Math.floorDiv(table.epochSecond(row), SECONDS_PER_HOUR);
+                    if (size == seriesStart || hours[size - 1] != hour) {
+                        openBucket(hour, size == seriesStart);
+                    }
+                    int bucket = size - 1;
+                    long amount = Math.multiplyExact(table.unscaledAmount(row), POWERS_OF_TEN[scale - amountScales[row]]);
+                    minAmounts[bucket] = Math.min(minAmounts[bucket], amount);
+                    maxAmounts[bucket] = Math.max(maxAmounts[bucket], amount);
+                    if (table.type(row) == Transaction.TransactionType.OUTCOME) {
+                        outcomeTotals[bucket] = Math.addExact(outcomeTotals[bucket], amount);
+                        outcomeCounts[bucket]++;
+                    } else {
+                        incomeTotals[bucket] = Math.addExact(incomeTotals[bucket], amount);
+                        incomeCounts[bucket]++;
+                    }
+                }
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+
+        private WideSeries addWideAmounts(int[] rows, int from, int to, int scale) {
+            int seriesStart = size;
+            BigDecimal[] mins = new BigDecimal[to - from];
+            BigDecimal[] maxes = new BigDecimal[to - from];
+            BigDecimal[] incomes = new BigDecimal[to - from];
+            BigDecimal[] outcomes = new BigDecimal[to - from];
+            for (int i = from; i < to; i++) {
+                int row = rows[i];
+                long hour = Math.floorDiv(table.epochSecond(row), SECONDS_PER_HOUR);
+                if (size == seriesStart || hours[size - 1] != hour) {
+                    openBucket(hour, size == seriesStart);
+                    int bucket = size - 1 - seriesStart;
+                    incomes[bucket] = bucket == 0 ? BigDecimal.ZERO.setScale(scale) : incomes[bucket - 1];
+                    outcomes[bucket] = bucket == 0 ? BigDecimal.ZERO.setScale(scale) : outcomes[bucket - 1];
+                }
+                int bucket = size - 1 - seriesStart;
+                BigDecimal amount = BigDecimal.valueOf(table.unscaledAmount(row), amountScales[row]).setScale(scale);
+                mins[bucket] = mins[bucket] == null ? amount : mins[bucket].min(amount);
+                maxes[bucket] = maxes[bucket] == null ? amount : maxes[bucket].max(amount);
+                if (table.type(row) == Transaction.TransactionType.OUTCOME) {
+                    outcomes[bucket] = outcomes[bucket].add(amount);
+                    outcomeCounts[size - 1]++;
+                } else {
+                    incomes[bucket] = incomes[bucket].add(amount);
+                    incomeCounts[size - 1]++;
+                }
+            }
+            int buckets = size - seriesStart;
+            return new WideSeries(Arrays.copyOf(mins, buckets), Arrays.copyOf(maxes, buckets),
+                    Arrays.copyOf(incomes, buckets), Arrays.copyOf(outcomes, buckets));
+        }
+
+        // the running totals of a series start from zero, those of its other buckets from the previous one
+        private void openBucket(long hour, boolean firstOfSeries) {
+            if (size == hours.length) {
+                int capacity = size + (size >> 1);
+                hours = Arrays.copyOf(hours, capacity);
+                minAmounts = Arrays.copyOf(minAmounts, capacity);
+                maxAmounts = Arrays.copyOf(maxAmounts, capacity);
+                incomeTotals = Arrays.copyOf(incomeTotals, capacity);
+                outcomeTotals = Arrays.copyOf(outcomeTotals, capacity);
+                incomeCounts = Arrays.copyOf(incomeCounts, capacity);
+                outcomeCounts = Arrays.copyOf(outcomeCounts, capacity);
+            }
+            hours[size] = hour;
+            minAmounts[size] = Long.MAX_VALUE;
+            maxAmounts[size] = Long.MIN_VALUE;
+            incomeTotals[size] = firstOfSeries ? 0 : incomeTotals[size - 1];
+            outcomeTotals[size] = firstOfSeries ? 0 : outcomeTotals[size - 1];
+            incomeCounts[size] = firstOfSeries ? 0 : incomeCounts[size - 1];
+            outcomeCounts[size] = firstOfSeries ? 0 : outcomeCounts[size - 1];
+            size++;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CsvFileCursor;
+import org.kthing.transactionsmicroservice.util.CsvFileVersion;
+import org.kthing.transactionsmicroservice.util.CsvQuarantine;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consistent image of the columnar store: a view of the {@link TransactionTable}, its rows in
+ * {@link TableSegment}s, and for each {@link TransactionSource} its type and absolute path, the version
+ * and read position its file was loaded up to and the records of the file left out as invalid. The store publishes a new instance
+ * after every load or append.
+ *
+ * <p>A load makes one segment; each append adds a segment for the appended rows and leaves the others
+ * as they are. A segment is merged into the one before it once it is at least as large, so there are
+ * O(log n) segments and every row is merged O(log n) times over all appends.
+ *
+ * <p>It can also be saved as fixed-width little-endian arrays after a header with the format version,
+ * the array lengths and the file states, with all segments merged into one. Reading it back copies each
+ * mapped array straight into a heap array, so nothing is parsed or sorted.
+ *
+ * <pre>
+ * long magic, int formatVersion, int rows, int sources, int 0, long generation
+ * per source: string type, string filePath, int rows, int accounts, long lastModifiedMillis, long size, string fileKey,
+ *     long cursorOffset (-1 if none), long cursorChecksum, long cursorLineTerminated
+ * long[rows] transactionIds, customerIds, accountIds, epochSeconds, unscaledAmounts
+ * long[(rows + 63) / 64] outcome row bits
+ * per source: int[source rows] rows by time, long[accounts] accounts, int[accounts + 1] starts, int[source rows] posting lists
+ * byte[rows] amountScales
+ * per source: string filePath, long quarantined, int listed, per listed record: long line, long offset, string field, string reason
+ * </pre>
+ * Strings are an int byte count, -1 for {@code null}, followed by the UTF-8 bytes.
+ */
+@Getter
+class TransactionSnapshot {
+
+    static final long MAGIC = 0x31504e534e585454L; // "TTXNSNP1" read as little-endian bytes
+    static final int FORMAT_VERSION = 7;
+
+    private static final int HEADER_BYTES = 2 * Long.BYTES + 4 * Integer.BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final TransactionTable table;
+    /** In row order, covering all rows of the table. */
+    private final List<TableSegment> segments;
+    /** With absolute paths, in the configured order. */
+    private final List<TransactionSource> sources;
+    private final CsvFileVersion[] versions;
+    /** Where appended records start; {@code null} for a file that can only be loaded again as a whole. */
+    private final CsvFileCursor[] cursors;
+    private final CsvQuarantine[] quarantines;
+    /**
+     * Identifies the load the row numbers come from: appends keep it, loading the files again from
+     * scratch renumbers the rows and changes it.
+     */
+    private final long generation;
+    @Getter(AccessLevel.NONE)
+    private volatile TransactionRollups rollups;
+
+    TransactionSnapshot(TransactionTable table, List<TableSegment> segments, List<TransactionSource> sources,
+                        CsvFileVersion[] versions, CsvFileCursor[] cursors, CsvQuarantine[] quarantines, long generation) {
+        this.table = table;
+        this.segments = Collections.unmodifiableList(segments);
+        this.sources = sources.stream().map(TransactionSnapshot::resolve).toList();
+        this.versions = versions;
+        this.cursors = cursors;
+        this.quarantines = quarantines;
+        this.generation = generation;
+    }
+
+    /**
+     * Generation of a load from files of the given versions. Loading the same files again numbers their
+     * rows the same way and gets the same generation.
+     */
+    static long generationOf(CsvFileVersion[] versions) {
+        return CsvFileVersion.hash(versions);
+    }
+
+    /**
+     * A snapshot of {@code table}, which extends this one's table with the rows of {@code appended}, for
+     * files now at the given versions and positions. The rows loaded before keep their segments and
+     * generation.
+     */
+    TransactionSnapshot withAppended(TransactionTable table, TableSegment appended, CsvFileVersion[] versions,
+                                     CsvFileCursor[] cursors, CsvQuarantine[] quarantines) {
+        List<TableSegment> merged = new ArrayList<>(segments.size() + 1);
+        merged.addAll(segments);
+        TableSegment newest = appended;
+        while (!merged.isEmpty() && merged.get(merged.size() - 1).size() <= newest.size()) {
+            newest = merged.remove(merged.size() - 1).merge(table, newest);
+        }
+        merged.add(newest);
+        return new TransactionSnapshot(table, merged, sources, versions, cursors, quarantines, generation);
+    }
+
+    int sourceCount() {
+        return versions.length;
+    }
+
+    /** Whether this snapshot holds the given sources, of the same type, file and order. */
+    boolean isFor(List<TransactionSource> sources) {
+        if (sources.size() != this.sources.size()) {
+            return false;
+        }
+        for (int source = 0; source < sources.size(); source++) {
+            if (!resolve(sources.get(source)).equals(this.sources.get(source))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether this snapshot holds the given sources with their files at the given versions. */
+    boolean matches(List<TransactionSource> sources, CsvFileVersion[] versions) {
+        return isFor(sources) && Arrays.equals(this.versions, versions);
+    }
+
+    private static TransactionSource resolve(TransactionSource source) {
+        return new TransactionSource(source.getType(), Paths.get(source.getFilePath()).toAbsolutePath().normalize().toString());
+    }
+
+    /**
+     * The rollups of this snapshot's rows, put together on first use from those of its segments, which
+     * are each built once and shared with the snapshots after this one.
+     */
+    TransactionRollups rollups() {
+        TransactionRollups built = rollups;
+        if (built == null) {
+            synchronized (this) {
+                built = rollups;
+                if (built == null) {
+                    built = segments.get(0).rollups(table);
+                    for (int i = 1; i < segments.size(); i++) {
+                        built = built.plus(segments.get(i).rollups(table));
+                    }
+                    rollups = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to {@code path} and moves it into place, so readers
+     * never see a partly written snapshot.
+     */
+    void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int rows = table.size();
+        TableSegment all = segments.get(0);
+        for (int i = 1; i < segments.size(); i++) {
+            all = all.merge(table, segments.get(i));
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnWriter writer = new ColumnWriter(channel);
+            writer.buffer.putLong(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putInt(rows)
+                    .putInt(sourceCount())
+                    .putInt(0)
+                    .putLong(generation);
+            for (int source = 0; source < sourceCount(); source++) {
+                writer.sourceState(sources.get(source), all.getRowsByTime()[source].length,
+                        all.getIndexes()[source].accountCount(), versions[source], cursors[source]);
+            }
+            writer.longs(table.transactionIdsColumn(), rows);
+            writer.longs(table.customerIdsColumn(), rows);
+            writer.longs(table.accountIdsColumn(), rows);
+            writer.longs(table.epochSecondsColumn(), rows);
+            writer.longs(table.unscaledAmountsColumn(), rows);
+            writer.longs(table.outcomeWordsColumn(), TransactionTable.wordsFor(rows));
+            for (int source = 0; source < sourceCount(); source++) {
+                writeSource(writer, all.getRowsByTime()[source], all.getIndexes()[source]);
+            }
+            writer.bytes(table.amountScalesColumn(), rows);
+            for (CsvQuarantine quarantine : quarantines) {
+                writer.quarantine(quarantine);
+            }
+            writer.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write}, or returns {@code null} if the file has another format
+     * version. A truncated or otherwise malformed file fails with an {@link IOException}.
+     */
+    static TransactionSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot header is truncated: " + path);
+            }
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not a transaction snapshot: " + path);
+            }
+            if (header.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int rows = header.getInt();
+            int sources = header.getInt();
+            header.getInt();
+            long generation = header.getLong();
+            if (rows < 0 || sources < 0) {
+                throw new IOException("Snapshot header is truncated: " + path);
+            }
+
+            ByteBuffer sourceHeaders = map(channel, HEADER_BYTES, channel.size() - HEADER_BYTES);
+            List<TransactionSource> sourceList = new ArrayList<>(sources);
+            int[] sourceRows = new int[sources];
+            int[] accounts = new int[sources];
+            CsvFileVersion[] versions = new CsvFileVersion[sources];
+            CsvFileCursor[] cursors = new CsvFileCursor[sources];
+            long totalRows = 0;
+            long totalAccounts = 0;
+            try {
+                for (int source = 0; source < sources; source++) {
+                    String type = readString(sourceHeaders);
+                    String filePath = readString(sourceHeaders);
+                    if (type == null || filePath == null) {
+                        throw new IOException("Snapshot header is malformed: " + path);
+                    }
+                    sourceList.add(new TransactionSource(Transaction.TransactionType.valueOf(type), filePath));
+                    sourceRows[source] = sourceHeaders.getInt();
+                    accounts[source] = sourceHeaders.getInt();
+                    versions[source] = new CsvFileVersion(sourceHeaders.getLong(), sourceHeaders.getLong(), readString(sourceHeaders));
+                    cursors[source] = readCursor(sourceHeaders);
+                    if (sourceRows[source] < 0 || accounts[source] < 0) {
+                        throw new IOException("Snapshot size does not match its header: " + path);
+                    }
+                    totalRows += sourceRows[source];
+                    totalAccounts += accounts[source];
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Snapshot header is truncated: " + path, e);
+            }
+            long headerBytes = HEADER_BYTES + sourceHeaders.position();
+            long columnsEnd = headerBytes
+                    + (5L * rows + TransactionTable.wordsFor(rows) + totalAccounts) * Long.BYTES
+                    + (2L * rows + totalAccounts + sources) * Integer.BYTES
+                    + rows;
+            if (totalRows != rows || channel.size() < columnsEnd) {
+                throw new IOException("Snapshot size does not match its header: " + path);
+            }
+
+            ColumnReader reader = new ColumnReader(channel, headerBytes);
+            long[] transactionIds = reader.longs(rows);
+            long[] customerIds = reader.longs(rows);
+            long[] accountIds = reader.longs(rows);
+            long[] epochSeconds = reader.longs(rows);
+            long[] unscaledAmounts = reader.longs(rows);
+            long[] outcomeWords = reader.longs(TransactionTable.wordsFor(rows));
+            int[][] rowsByTime = new int[sources][];
+            AccountIndex[] indexes = new AccountIndex[sources];
+            for (int source = 0; source < sources; source++) {
+                rowsByTime[source] = reader.ints(sourceRows[source]);
+                indexes[source] = readIndex(reader, accounts[source], sourceRows[source]);
+            }
+            byte[] amountScales = reader.bytes(rows);
+            CsvQuarantine[] quarantines = readQuarantines(map(channel, columnsEnd, channel.size() - columnsEnd), sources, path);
+
+            TransactionTable table = new TransactionTable(transactionIds, customerIds, accountIds, epochSeconds,
+                    unscaledAmounts, amountScales, outcomeWords, rows);
+            return new TransactionSnapshot(table, List.of(new TableSegment(0, rows, rowsByTime, indexes)), sourceList,
+                    versions, cursors, quarantines, generation);
+        }
+    }
+
+    private static CsvFileCursor readCursor(ByteBuffer header) {
+        long offset = header.getLong();
+        long checksum = header.getLong();
+        boolean lineTerminated = header.getLong() == 1;
+        return offset < 0 ? null : new CsvFileCursor(offset, lineTerminated, checksum);
+    }
+
+    private static CsvQuarantine[] readQuarantines(ByteBuffer section, int sources, Path path) throws IOException {
+        CsvQuarantine[] quarantines = new CsvQuarantine[sources];
+        try {
+            for (int source = 0; source < sources; source++) {
+                String filePath = readString(section);
+                long count = section.getLong();
+                int listed = section.getInt();
+                if (listed < 0 || listed > count) {
+                    throw new IOException("Snapshot quarantine is malformed: " + path);
+                }
+                List<CsvQuarantine.Entry> entries = new ArrayList<>(Math.min(listed, CsvQuarantine.MAX_LISTED));
+                for (int i = 0; i < listed; i++) {
+                    entries.add(new CsvQuarantine.Entry(section.getLong(), section.getLong(), readString(section), readString(section)));
+                }
+                quarantines[source] = CsvQuarantine.of(filePath, count, entries);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Snapshot quarantine is truncated: " + path, e);
+        }
+        if (section.hasRemaining()) {
+            throw new IOException("Snapshot size does not match its header: " + path);
+        }
+        return quarantines;
+    }
+
+    private static String readString(ByteBuffer section) {
+        int length = section.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        section.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeSource(ColumnWriter writer, int[] rowsByTime, AccountIndex index) throws IOException {
+        writer.ints(rowsByTime);
+        writer.longs(index.accounts(), index.accountCount());
+        writer.ints(index.starts());
+        writer.ints(index.rows());
+    }
+
+    private static AccountIndex readIndex(ColumnReader reader, int accounts, int rows) throws IOException {
+        return AccountIndex.of(reader.longs(accounts), reader.ints(accounts + 1), reader.ints(rows));
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Reads consecutive arrays, mapping the region of each one. */
+    private static final class ColumnReader {
+        private final FileChannel channel;
+        private long position;
+
+        private ColumnReader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        private long[] longs(int count) throws IOException {
+            long[] values = new long[count];
+            map(channel, position, (long) count * Long.BYTES).asLongBuffer().get(values);
+            position += (long) count * Long.BYTES;
+            return values;
+        }
+
+        private int[] ints(int count) throws IOException {
+            int[] values = new int[count];
+            map(channel, position, (long) count * Integer.BYTES).asIntBuffer().get(values);
+            position += (long) count * Integer.BYTES;
+            return values;
+        }
+
+        private byte[] bytes(int count) throws IOException {
+            byte[] values = new byte[count];
+            map(channel, position, count).get(values);
+            position += count;
+            return values;
+        }
+    }
+
+    /** Writes consecutive arrays through one direct buffer. */
+    private static final class ColumnWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        private ColumnWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void longs(long[] values, int count) throws IOException {
+            for (int written = 0; written < count; ) {
+                if (buffer.remaining() < Long.BYTES) {
+                    flush();
+                }
+                int batch = Math.min(count - written, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, written, batch);
+                buffer.position(buffer.position() + batch * Long.BYTES);
+                written += batch;
+            }
+        }
+
+        private void ints(int[] values) throws IOException {
+            for (int written = 0; written < values.length; ) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    flush();
+                }
+                int batch = Math.min(values.length - written, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, written, batch);
+                buffer.position(buffer.position() + batch * Integer.BYTES);
+                written += batch;
+            }
+        }
+
+        private void bytes(byte[] values, int count) throws IOException {
+            for (int written = 0; written < count; ) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int batch = Math.min(count - written, buffer.remaining());
+                buffer.put(values, written, batch);
+                written += batch;
+            }
+        }
+
+        private void sourceState(TransactionSource source, int rows, int accounts, CsvFileVersion version,
+                                 CsvFileCursor cursor) throws IOException {
+            string(source.getType().name());
+            string(source.getFilePath());
+            reserve(2 * Integer.BYTES + 2 * Long.BYTES);
+            buffer.putInt(rows)
+                    .putInt(accounts)
+                    .putLong(version.getLastModifiedMillis())
+                    .putLong(version.getSize());
+            string(version.getFileKey());
+            reserve(3 * Long.BYTES);
+            buffer.putLong(cursor == null ? -1 : cursor.getOffset())
+                    .putLong(cursor == null ? 0 : cursor.getTailChecksum())
+                    .putLong(cursor != null && cursor.isLineTerminated() ? 1 : 0);
+        }
+
+        private void quarantine(CsvQuarantine quarantine) throws IOException {
+            string(quarantine.getFilePath());
+            List<CsvQuarantine.Entry> entries = quarantine.getEntries();
+            reserve(Long.BYTES + Integer.BYTES);
+            buffer.putLong(quarantine.getCount()).putInt(entries.size());
+            for (CsvQuarantine.Entry entry : entries) {
+                reserve(2 * Long.BYTES);
+                buffer.putLong(entry.getLineNumber()).putLong(entry.getOffset());
+                string(entry.getField());
+                string(entry.getReason());
+            }
+        }
+
+        private void string(String value) throws IOException {
+            reserve(Integer.BYTES);
+            if (value == null) {
+                buffer.putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length);
+            bytes(bytes, bytes.length);
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
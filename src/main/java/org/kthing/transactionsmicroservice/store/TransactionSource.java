@@ -0,0 +1,49 @@
+package org.kthing.transactionsmicroservice.store;
+
+import lombok.Value;
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A CSV file holding transactions of one type. The sources are listed in {@code transaction.sources}
+ * as comma-separated {@code TYPE:path} entries, for example
+ * {@code INCOME:incomes-2025-01.csv,INCOME:incomes-2025-02.csv,OUTCOME:outcomes.csv}; if it is empty,
+ * they are {@code transaction.incomes.file} followed by {@code transaction.outcomes.file}. Every source
+ * is a run of its own, in the configured order, so page tokens hold one cursor per source.
+ */
+@Value
+public class TransactionSource {
+
+    Transaction.TransactionType type;
+    String filePath;
+
+    /**
+     * @throws IllegalArgumentException if an entry has no type or path, or an unknown type
+     */
+    public static List<TransactionSource> parse(String sources, String incomesFilePath, String outcomesFilePath) {
+        if (sources == null || sources.isBlank()) {
+            return List.of(new TransactionSource(Transaction.TransactionType.INCOME, incomesFilePath),
+                    new TransactionSource(Transaction.TransactionType.OUTCOME, outcomesFilePath));
+        }
+        List<TransactionSource> parsed = new ArrayList<>();
+        for (String entry : sources.split(",")) {
+            // only the first colon separates, so paths may contain colons
+            int separator = entry.indexOf(':');
+            String path = separator < 0 ? "" : entry.substring(separator + 1).trim();
+            if (path.isEmpty()) {
+                throw new IllegalArgumentException("Transaction source must be TYPE:path: " + entry.trim());
+            }
+            try {
+                Transaction.TransactionType type = Transaction.TransactionType.valueOf(
+                        entry.substring(0, separator).trim().toUpperCase(Locale.ROOT));
+                parsed.add(new TransactionSource(type, path));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown transaction type in source: " + entry.trim(), e);
+            }
+        }
+        return List.copyOf(parsed);
+    }
+}
@@ -0,0 +1,58 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.util.CsvQuarantine;
+
+import java.util.List;
+
+/**
+ * Storage engine behind {@code TransactionService}, selected with {@code transaction.storage.mode}.
+ */
+public interface TransactionStore {
+
+    /**
+     * The transactions matching the filter as one time-ordered run per {@link TransactionSource},
+     * in the configured order.
+     */
+    List<TimeOrderedRun> runs(TransactionFilter filter);
+
+    /**
+     * Runs answering the same as the given ones, which are the runs of several account queries, made
+     * ready to serve a page from each query's start positions: {@code matches} matches per run are
+     * enough. Lets a store that would look up each query's matches separately find them all in one pass;
+     * by default the runs are returned as they are.
+     *
+     * @param runs           the runs of each query, as returned by {@link #runs}
+     * @param startPositions the start position in each run of each query
+     */
+    default List<List<TimeOrderedRun>> prefetch(List<List<TimeOrderedRun>> runs, List<int[]> startPositions, int matches) {
+        return runs;
+    }
+
+    /**
+     * A number that changes whenever any transaction data changes.
+     */
+    long dataVersion();
+
+    /**
+     * Per-hour totals of all transactions, kept up to date with the data the runs are read from.
+     */
+    TransactionRollups rollups();
+
+    /**
+     * The transaction IDs repeated across all sources, as of the data the runs are read from.
+     */
+    TransactionDuplicates.Report duplicates();
+
+    /**
+     * Per {@link TransactionSource}, in the configured order, the records left out of the data the runs
+     * are read from because they failed validation.
+     */
+    List<CsvQuarantine> quarantine();
+
+    /**
+     * How the runs' pages are to be materialized; stores that read files share theirs.
+     */
+    default SourceFetcher fetcher() {
+        return SourceFetcher.SEQUENTIAL;
+    }
+}
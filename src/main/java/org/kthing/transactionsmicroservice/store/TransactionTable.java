@@ -0,0 +1,232 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.util.CSVUtil;
+
+import java.util.Arrays;
+
+/**
+ * Transactions stored column by column in primitive arrays. IDs are kept as {@code long}, timestamps as
+ * UTC epoch seconds and amounts as an unscaled {@code long} plus its decimal scale, so that scanning
+ * the table allocates nothing; sub-second precision of source timestamps is not kept. The type of each
+ * row is a bit in {@link #outcomeWords}.
+ *
+ * <p>Rows are only ever appended. A {@link #view()} shares the columns but keeps the size it was taken
+ * at, so one thread can keep appending while others read a published view: rows written after the view
+ * lie beyond its size, and a column that has to grow is copied rather than changed in place.
+ */
+public class TransactionTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] transactionIds;
+    private long[] customerIds;
+    private long[] accountIds;
+    private long[] epochSeconds;
+    private long[] unscaledAmounts;
+    private byte[] amountScales;
+    private long[] outcomeWords;
+    private int size;
+
+    public TransactionTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TransactionTable(int capacity) {
+        int initial = Math.max(capacity, 1);
+        transactionIds = new long[initial];
+        customerIds = new long[initial];
+        accountIds = new long[initial];
+        epochSeconds = new long[initial];
+        unscaledAmounts = new long[initial];
+        amountScales = new byte[initial];
+        outcomeWords = new long[wordsFor(initial)];
+    }
+
+    /**
+     * Wraps existing columns, e.g. read back from a {@link TransactionSnapshot}; the arrays are used as
+     * they are and must hold at least {@code size} rows.
+     */
+    TransactionTable(long[] transactionIds, long[] customerIds, long[] accountIds, long[] epochSeconds,
+                     long[] unscaledAmounts, byte[] amountScales, long[] outcomeWords, int size) {
+        this.transactionIds = transactionIds;
+        this.customerIds = customerIds;
+        this.accountIds = accountIds;
+        this.epochSeconds = epochSeconds;
+        this.unscaledAmounts = unscaledAmounts;
+        this.amountScales = amountScales;
+        this.outcomeWords = outcomeWords;
+        this.size = size;
+    }
+
+    /**
+     * The rows appended so far, unaffected by later appends.
+     */
+    TransactionTable view() {
+        return new TransactionTable(transactionIds, customerIds, accountIds, epochSeconds, unscaledAmounts,
+                amountScales, outcomeWords, size);
+    }
+
+    /**
+     * Drops the rows from {@code newSize} on, e.g. those of an append that failed half way. The dropped
+     * rows must not be part of any view.
+     */
+    void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IllegalArgumentException("Cannot truncate " + size + " rows to " + newSize);
+        }
+        for (int row = newSize; row < size; row++) {
+            outcomeWords[row >>> 6] &= ~(1L << row);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Drops the rows from {@code from} on whose bit is set in {@code removed}, indexed by row, moving the
+     * rows after them up in order. The rows from {@code from} on must not be part of any view.
+     */
+    void removeRows(int from, long[] removed) {
+        int target = from;
+        for (int row = from; row < size; row++) {
+            if ((removed[row >>> 6] & 1L << row) != 0) {
+                continue;
+            }
+            if (target != row) {
+                transactionIds[target] = transactionIds[row];
+                customerIds[target] = customerIds[row];
+                accountIds[target] = accountIds[row];
+                epochSeconds[target] = epochSeconds[row];
+                unscaledAmounts[target] = unscaledAmounts[row];
+                amountScales[target] = amountScales[row];
+                if (type(row) == Transaction.TransactionType.OUTCOME) {
+                    outcomeWords[target >>> 6] |= 1L << target;
+                } else {
+                    outcomeWords[target >>> 6] &= ~(1L << target);
+                }
+            }
+            target++;
+        }
+        truncate(target);
+    }
+
+    public int append(long transactionId, long customerId, long accountId, long epochSecond, long unscaledAmount, int amountScale, Transaction.TransactionType type) {
+        if (size == transactionIds.length) {
+            grow(size + 1);
+        }
+        int row = size;
+        transactionIds[row] = transactionId;
+        customerIds[row] = customerId;
+        accountIds[row] = accountId;
+        epochSeconds[row] = epochSecond;
+        unscaledAmounts[row] = unscaledAmount;
+        amountScales[row] = (byte) amountScale;
+        if (type == Transaction.TransactionType.OUTCOME) {
+            outcomeWords[row >>> 6] |= 1L << row;
+        }
+        size++;
+        return row;
+    }
+
+    /**
+     * Appends all rows of {@code other}, in order.
+     */
+    public void appendAll(TransactionTable other) {
+        if (size + other.size > transactionIds.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.transactionIds, 0, transactionIds, size, other.size);
+        System.arraycopy(other.customerIds, 0, customerIds, size, other.size);
+        System.arraycopy(other.accountIds, 0, accountIds, size, other.size);
+        System.arraycopy(other.epochSeconds, 0, epochSeconds, size, other.size);
+        System.arraycopy(other.unscaledAmounts, 0, unscaledAmounts, size, other.size);
+        System.arraycopy(other.amountScales, 0, amountScales, size, other.size);
+        for (int row = 0; row < other.size; row++) {
+            if (other.type(row) == Transaction.TransactionType.OUTCOME) {
+                int target = size + row;
+                outcomeWords[target >>> 6] |= 1L << target;
+            }
+        }
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long transactionId(int row) {
+        return transactionIds[row];
+    }
+
+    public long accountId(int row) {
+        return accountIds[row];
+    }
+
+    public long epochSecond(int row) {
+        return epochSeconds[row];
+    }
+
+    long[] transactionIdsColumn() {
+        return transactionIds;
+    }
+
+    long[] customerIdsColumn() {
+        return customerIds;
+    }
+
+    long[] accountIdsColumn() {
+        return accountIds;
+    }
+
+    long[] epochSecondsColumn() {
+        return epochSeconds;
+    }
+
+    long[] unscaledAmountsColumn() {
+        return unscaledAmounts;
+    }
+
+    byte[] amountScalesColumn() {
+        return amountScales;
+    }
+
+    /** Bit {@code row % 64} of word {@code row / 64} is set for outcome rows. */
+    long[] outcomeWordsColumn() {
+        return outcomeWords;
+    }
+
+    public long unscaledAmount(int row) {
+        return unscaledAmounts[row];
+    }
+
+    public Transaction.TransactionType type(int row) {
+        return (outcomeWords[row >>> 6] & (1L << row)) != 0 ? Transaction.TransactionType.OUTCOME : Transaction.TransactionType.INCOME;
+    }
+
+    public Transaction materialize(int row) {
+        return CSVUtil.toTransaction(transactionIds[row], customerIds[row], accountIds[row],
+                unscaledAmounts[row], amountScales[row], epochSeconds[row], type(row));
+    }
+
+    /**
+     * Heap retained by the columns, counting allocated capacity rather than just the used rows.
+     */
+    public long memoryFootprintBytes() {
+        long capacity = transactionIds.length;
+        return capacity * (5L * Long.BYTES + Byte.BYTES) + (long) outcomeWords.length * Long.BYTES;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(transactionIds.length + (transactionIds.length >> 1) + 1, minCapacity);
+        transactionIds = Arrays.copyOf(transactionIds, capacity);
+        customerIds = Arrays.copyOf(customerIds, capacity);
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        unscaledAmounts = Arrays.copyOf(unscaledAmounts, capacity);
+        amountScales = Arrays.copyOf(amountScales, capacity);
+        outcomeWords = Arrays.copyOf(outcomeWords, wordsFor(capacity));
+    }
+
+    static int wordsFor(int rows) {
+        return (rows + Long.SIZE - 1) >>> 6;
+    }
+}
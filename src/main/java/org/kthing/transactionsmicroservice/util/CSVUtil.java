@@ -1,83 +1,262 @@
 package org.kthing.transactionsmicroservice.util;
 
-import org.apache.commons.csv.CSVRecord;
-import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.exception.CsvFieldException;
 import org.kthing.transactionsmicroservice.model.Transaction;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 public class CSVUtil {
     
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    public static final long INVALID_ID = -1;
+    public static final int MAX_ID_DIGITS = 18;
+    public static final long INVALID_EPOCH_SECOND = Long.MIN_VALUE;
+
+    private static final int DATE_TIME_LENGTH = "yyyy-MM-ddTHH:mm:ss".length();
     
     private CSVUtil() {
 
     }
     
-    public static Transaction parseTransactionRecord(CSVRecord record, Transaction.TransactionType type) {
-        try {
-            String transactionId = validateRequiredField(record, "TRANSACTION_ID");
-            String customerId = validateRequiredField(record, "CUSTOMER_ID");
-            String accountId = validateRequiredField(record, "ACCOUNT_ID");
-            String amountStr = validateRequiredField(record, "AMOUNT");
-            String dateTimeStr = validateRequiredField(record, "DATE_TIME");
-
-            validateIdFormat(transactionId, "transaction ID");
-            validateIdFormat(customerId, "customer ID");
-            validateIdFormat(accountId, "account ID");
-
-            BigDecimal amount = parseAmount(amountStr);
-            LocalDateTime dateTime = parseDateTime(dateTimeStr);
-
-            return Transaction.builder()
-                    .transactionId(transactionId)
-                    .customerId(customerId)
-                    .accountId(accountId)
-                    .amount(amount)
-                    .dateTime(dateTime)
-                    .type(type)
-                    .build();
-        } catch (Exception e) {
-            if (e instanceof TransactionServiceException) {
-                throw (TransactionServiceException) e;
+    /**
+     * Decodes and validates {@code line} into {@code record} in one pass over its bytes: IDs to
+     * {@code long}, the amount to an unscaled {@code long} plus scale and the timestamp to epoch seconds.
+     * Nothing is allocated unless the line is invalid or the amount needs {@link BigDecimal} to be read.
+     *
+     * @throws CsvFieldException naming the first field that is missing or invalid
+     */
+    public static void decodeRecord(CsvLine line, TransactionRecord record) {
+        record.transactionId = decodeId(line, CsvLine.TRANSACTION_ID, "transaction ID");
+        record.customerId = decodeId(line, CsvLine.CUSTOMER_ID, "customer ID");
+        record.accountId = decodeId(line, CsvLine.ACCOUNT_ID, "account ID");
+
+        requireField(line, CsvLine.AMOUNT);
+        decodeAmount(line, record);
+        if (record.unscaledAmount == 0) {
+            throw invalidField(CsvLine.AMOUNT, "Amount must be positive: " + line.field(CsvLine.AMOUNT));
+        }
+
+        requireField(line, CsvLine.DATE_TIME);
+        record.epochSecond = line.epochSecond(CsvLine.DATE_TIME);
+        if (record.epochSecond == INVALID_EPOCH_SECOND) {
+            throw invalidField(CsvLine.DATE_TIME, "Invalid date time format: " + line.field(CsvLine.DATE_TIME));
+        }
+    }
+
+    /**
+     * Decodes a line that {@link #decodeRecord} accepted before, such as one at an offset a scan of the
+     * file reported, without checking it again.
+     */
+    public static void decodeValidatedRecord(CsvLine line, TransactionRecord record) {
+        record.transactionId = line.digits(CsvLine.TRANSACTION_ID);
+        record.customerId = line.digits(CsvLine.CUSTOMER_ID);
+        record.accountId = line.digits(CsvLine.ACCOUNT_ID);
+        decodeAmount(line, record);
+        record.epochSecond = line.epochSecond(CsvLine.DATE_TIME);
+    }
+
+    public static Transaction toTransaction(long transactionId, long customerId, long accountId, long unscaledAmount,
+                                            int amountScale, long epochSecond, Transaction.TransactionType type) {
+        return toTransaction(Long.toString(transactionId), Long.toString(customerId), Long.toString(accountId),
+                unscaledAmount, amountScale, epochSecond, type);
+    }
+
+    public static Transaction toTransaction(String transactionId, String customerId, String accountId, long unscaledAmount,
+                                            int amountScale, long epochSecond, Transaction.TransactionType type) {
+        return Transaction.builder()
+                .transactionId(transactionId)
+                .customerId(customerId)
+                .accountId(accountId)
+                .amount(BigDecimal.valueOf(unscaledAmount, amountScale))
+                .dateTime(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC))
+                .type(type)
+                .build();
+    }
+
+    /**
+     * Parses a digits-only ID into a {@code long}, or returns {@link #INVALID_ID} when it is not one or
+     * has more than {@link #MAX_ID_DIGITS} digits.
+     */
+    public static long parseId(String id) {
+        int length = id.length();
+        if (length == 0 || length > MAX_ID_DIGITS) {
+            return INVALID_ID;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID_ID;
             }
-            throw new TransactionServiceException("Error parsing CSV record", e);
+            value = value * 10 + (c - '0');
         }
+        return value;
     }
-    private static void validateIdFormat(String id, String fieldName) {
-        if (!id.matches("\\d+")) {
-            throw new TransactionServiceException("Invalid " + fieldName + " format: " + id);
+
+    /**
+     * {@link #parseId(String)} over the ASCII bytes {@code buffer[start..end)}.
+     */
+    public static long parseId(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length <= 0 || length > MAX_ID_DIGITS) {
+            return INVALID_ID;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID_ID;
+            }
+            value = value * 10 + digit;
         }
+        return value;
     }
-    
-    private static BigDecimal parseAmount(String amountStr) {
+
+    /**
+     * Parses an ISO local date-time into UTC epoch seconds, or returns {@link #INVALID_EPOCH_SECOND}.
+     */
+    public static long parseEpochSecond(String dateTime) {
         try {
-            BigDecimal amount = new BigDecimal(amountStr);
-            if (amount.compareTo(BigDecimal.ZERO) <= 0) {
-                throw new TransactionServiceException("Amount must be positive: " + amountStr);
+            return LocalDateTime.parse(dateTime, DATE_TIME_FORMATTER).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return INVALID_EPOCH_SECOND;
+        }
+    }
+
+    /**
+     * Decodes a {@code yyyy-MM-ddTHH:mm:ss} timestamp from the ASCII bytes {@code buffer[start..end)} into
+     * UTC epoch seconds. Returns {@link #INVALID_EPOCH_SECOND} for anything else, including other ISO
+     * layouts such as fractional seconds, which callers hand to {@link #parseEpochSecond(String)}.
+     */
+    public static long parseEpochSecond(ByteBuffer buffer, int start, int end) {
+        if (end - start != DATE_TIME_LENGTH
+                || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || buffer.get(start + 10) != 'T'
+                || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':') {
+            return INVALID_EPOCH_SECOND;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hour = digits(buffer, start + 11, 2);
+        int minute = digits(buffer, start + 14, 2);
+        int second = digits(buffer, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID_EPOCH_SECOND;
+        }
+        return epochDay(year, month, day) * 86_400 + hour * 3_600 + minute * 60 + second;
+    }
+
+    // -1 unless all count bytes are digits
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
             }
-            return amount;
-        } catch (NumberFormatException e) {
-            throw new TransactionServiceException("Invalid amount format: " + amountStr);
+            value = value * 10 + digit;
         }
+        return value;
     }
-    
-    private static LocalDateTime parseDateTime(String dateTimeStr) {
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar, for years 0 to 9999
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    private static long decodeId(CsvLine line, int field, String fieldName) {
+        requireField(line, field);
+        long id = line.digits(field);
+        if (id == INVALID_ID) {
+            throw invalidField(field, "Invalid " + fieldName + " format: " + line.field(field));
+        }
+        return id;
+    }
+
+    private static void decodeAmount(CsvLine line, TransactionRecord record) {
+        if (!decodeDecimal(line.buffer(), line.start(CsvLine.AMOUNT), line.end(CsvLine.AMOUNT), record)) {
+            BigDecimal amount = parseAmount(line.field(CsvLine.AMOUNT));
+            record.unscaledAmount = amount.unscaledValue().longValue();
+            record.amountScale = amount.scale();
+        }
+    }
+
+    /**
+     * Reads {@code digits[.digits]} of at most {@link #MAX_ID_DIGITS} digits into the record's amount.
+     * Returns {@code false} for anything else, leaving the amount to {@link BigDecimal}.
+     */
+    private static boolean decodeDecimal(ByteBuffer buffer, int start, int end, TransactionRecord record) {
+        long unscaled = 0;
+        int digitCount = 0;
+        int scale = -1;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && ++digitCount <= MAX_ID_DIGITS) {
+                unscaled = unscaled * 10 + (b - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return false;
+            }
+        }
+        if (digitCount == 0) {
+            return false;
+        }
+        record.unscaledAmount = unscaled;
+        record.amountScale = Math.max(scale, 0);
+        return true;
+    }
+
+    // exponents, signs and long mantissas; the result has to fit an unscaled long with a byte-sized scale
+    private static BigDecimal parseAmount(String amountStr) {
+        BigDecimal amount;
         try {
-            return LocalDateTime.parse(dateTimeStr, DATE_TIME_FORMATTER);
-        } catch (DateTimeParseException e) {
-            throw new TransactionServiceException("Invalid date time format: " + dateTimeStr);
+            amount = new BigDecimal(amountStr);
+        } catch (NumberFormatException e) {
+            throw invalidField(CsvLine.AMOUNT, "Invalid amount format: " + amountStr);
+        }
+        if (amount.signum() <= 0) {
+            throw invalidField(CsvLine.AMOUNT, "Amount must be positive: " + amountStr);
+        }
+        if (amount.scale() < 0) {
+            amount = amount.setScale(0);
         }
+        if (amount.scale() > Byte.MAX_VALUE || amount.unscaledValue().bitLength() >= Long.SIZE) {
+            throw invalidField(CsvLine.AMOUNT, "Amount is out of range: " + amountStr);
+        }
+        return amount;
     }
 
-    private static String validateRequiredField(CSVRecord record, String fieldName) {
-        String value = record.get(fieldName);
-        if (value == null || value.trim().isEmpty()) {
-            throw new TransactionServiceException("Required field is missing or empty: " + fieldName);
+    private static void requireField(CsvLine line, int field) {
+        if (line.isEmpty(field)) {
+            throw invalidField(field, "Required field is missing or empty: " + CsvLine.FIELD_NAMES[field]);
         }
-        return value.trim();
     }
-}
\ No newline at end of file
+
+    private static CsvFieldException invalidField(int field, String message) {
+        return new CsvFieldException(CsvLine.FIELD_NAMES[field], message);
+    }
+}
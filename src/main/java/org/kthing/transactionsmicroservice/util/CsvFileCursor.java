@@ -0,0 +1,53 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * How far a CSV file has been read: the byte offset after the last consumed record, whether that record
+ * ended with a line break, and a checksum of the bytes just before the offset. A later read continues
+ * from the offset only if the file still holds the same bytes there, i.e. it has only been appended to.
+ */
+@Value
+public class CsvFileCursor {
+
+    static final int CHECKSUM_WINDOW = 4096;
+
+    long offset;
+    boolean lineTerminated;
+    long tailChecksum;
+
+    static CsvFileCursor at(FileChannel channel, long offset) throws IOException {
+        ByteBuffer window = readWindow(channel, offset);
+        boolean lineTerminated = offset == 0 || (window.limit() > 0 && window.get(window.limit() - 1) == '\n');
+        return new CsvFileCursor(offset, lineTerminated, checksum(window));
+    }
+
+    /**
+     * Whether the file still holds the consumed bytes, as far as the checksum window can tell.
+     */
+    boolean matches(FileChannel channel) throws IOException {
+        return channel.size() >= offset && checksum(readWindow(channel, offset)) == tailChecksum;
+    }
+
+    private static ByteBuffer readWindow(FileChannel channel, long offset) throws IOException {
+        int length = (int) Math.min(offset, CHECKSUM_WINDOW);
+        ByteBuffer window = ByteBuffer.allocate(length);
+        while (window.hasRemaining()) {
+            if (channel.read(window, offset - length + window.position()) < 0) {
+                break;
+            }
+        }
+        return window.flip();
+    }
+
+    private static long checksum(ByteBuffer window) {
+        CRC32 crc = new CRC32();
+        crc.update(window.duplicate());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,59 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Value;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Version of a CSV file's contents: its modification time, size and file key (the inode where the file
+ * system has one), compared as a whole. Positions handed out for one version must not be used against
+ * another. {@link #hash()} condenses it into a {@code long} for page tokens and entity tags.
+ */
+@Value
+public class CsvFileVersion {
+
+    long lastModifiedMillis;
+    long size;
+    /** {@code null} if the file system does not identify files. */
+    String fileKey;
+
+    public static CsvFileVersion of(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return new CsvFileVersion(attributes.lastModifiedTime().toMillis(), attributes.size(),
+                fileKey == null ? null : fileKey.toString());
+    }
+
+    /**
+     * A 64-bit hash of all three parts; unlike a linear combination of them, versions that differ only
+     * slightly do not collide.
+     */
+    public long hash() {
+        long fileKeyHash = 0;
+        if (fileKey != null) {
+            for (int i = 0; i < fileKey.length(); i++) {
+                fileKeyHash = 31 * fileKeyHash + fileKey.charAt(i);
+            }
+        }
+        return mix(mix(mix(lastModifiedMillis) ^ size) ^ fileKeyHash);
+    }
+
+    /** Hash of the versions of several files, in the given order. */
+    public static long hash(CsvFileVersion[] versions) {
+        long hash = 0;
+        for (CsvFileVersion version : versions) {
+            hash = mix(31 * hash + version.hash());
+        }
+        return hash;
+    }
+
+    // finalizer of MurmurHash3
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,108 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls back whenever watched CSV files may have grown. A daemon thread waits on a {@link WatchService}
+ * for changes in the files' directories, but never longer than the poll interval, so the callback also
+ * runs on file systems that deliver no events. The callback is expected to stat the files and return
+ * quickly when nothing changed; its exceptions are logged and do not stop the watcher.
+ */
+@Slf4j
+public class CsvFileWatcher implements AutoCloseable {
+
+    private final List<Path> files;
+    private final long pollIntervalMillis;
+    private final Runnable onChange;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile WatchService watchService;
+
+    public CsvFileWatcher(List<Path> files, long pollIntervalMillis, Runnable onChange) {
+        this.files = files.stream().map(file -> file.toAbsolutePath().normalize()).toList();
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.onChange = onChange;
+        this.thread = new Thread(this::run, "csv-file-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public CsvFileWatcher start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path directory : files.stream().map(Path::getParent).distinct().toList()) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            log.info("Cannot watch {} for changes, polling every {} ms instead", files, pollIntervalMillis);
+            closeWatchService();
+        }
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        closeWatchService();
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                awaitChange();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                onChange.run();
+            } catch (RuntimeException e) {
+                log.warn("Could not ingest changes of {}", files, e);
+            }
+        }
+    }
+
+    private void awaitChange() throws InterruptedException {
+        WatchService service = watchService;
+        if (service == null) {
+            Thread.sleep(pollIntervalMillis);
+            return;
+        }
+        try {
+            WatchKey key = service.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+            // the callback checks every file anyway, so the events themselves are not needed
+            while (key != null) {
+                key.pollEvents();
+                key.reset();
+                key = service.poll();
+            }
+        } catch (ClosedWatchServiceException e) {
+            Thread.sleep(pollIntervalMillis);
+        }
+    }
+
+    private void closeWatchService() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Could not close the watch service", e);
+        }
+        watchService = null;
+    }
+}
@@ -0,0 +1,122 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.apache.commons.csv.CSVRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Reusable view of one record in the fixed column order
+ * {@code TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME}. Only field boundaries into a byte
+ * buffer are kept, so fields are decoded without creating strings. A line that went through commons-csv
+ * is copied into a buffer of its own as ISO-8859-1 bytes.
+ */
+public final class CsvLine {
+
+    public static final int TRANSACTION_ID = 0;
+    public static final int CUSTOMER_ID = 1;
+    public static final int ACCOUNT_ID = 2;
+    public static final int AMOUNT = 3;
+    public static final int DATE_TIME = 4;
+
+    static final String[] FIELD_NAMES = {"TRANSACTION_ID", "CUSTOMER_ID", "ACCOUNT_ID", "AMOUNT", "DATE_TIME"};
+
+    private static final int FIELD_COUNT = FIELD_NAMES.length;
+
+    private ByteBuffer buffer;
+    private final int[] starts = new int[FIELD_COUNT];
+    private final int[] ends = new int[FIELD_COUNT];
+    private ByteBuffer parsedFields = ByteBuffer.allocate(128);
+
+    /**
+     * Splits {@code buffer[start..end)} on commas, trimming each field like commons-csv does. Returns
+     * {@code false} for a line this tokenizer does not handle, i.e. one with quotes or a field count
+     * other than five; such a line has to be parsed by commons-csv instead.
+     */
+    public boolean tokenize(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        int field = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            byte b = i < end ? buffer.get(i) : (byte) ',';
+            if (b == '"') {
+                return false;
+            }
+            if (b == ',') {
+                if (field == FIELD_COUNT) {
+                    return false;
+                }
+                int fieldEnd = i;
+                int trimmedStart = fieldStart;
+                while (trimmedStart < fieldEnd && (buffer.get(trimmedStart) & 0xff) <= ' ') {
+                    trimmedStart++;
+                }
+                while (fieldEnd > trimmedStart && (buffer.get(fieldEnd - 1) & 0xff) <= ' ') {
+                    fieldEnd--;
+                }
+                starts[field] = trimmedStart;
+                ends[field] = fieldEnd;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        return field == FIELD_COUNT;
+    }
+
+    public void set(CSVRecord record) {
+        parsedFields.clear();
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            byte[] bytes = record.get(FIELD_NAMES[field]).getBytes(StandardCharsets.ISO_8859_1);
+            if (parsedFields.remaining() < bytes.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(parsedFields.capacity() * 2, parsedFields.position() + bytes.length));
+                parsedFields.flip();
+                parsedFields = larger.put(parsedFields);
+            }
+            starts[field] = parsedFields.position();
+            parsedFields.put(bytes);
+            ends[field] = parsedFields.position();
+        }
+        buffer = parsedFields;
+    }
+
+    public String field(int field) {
+        byte[] bytes = new byte[ends[field] - starts[field]];
+        buffer.get(starts[field], bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    public boolean isEmpty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * The field as a non-negative {@code long}, or {@link CSVUtil#INVALID_ID} if it is not a digits-only
+     * value of at most {@link CSVUtil#MAX_ID_DIGITS} digits.
+     */
+    public long digits(int field) {
+        return CSVUtil.parseId(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * The field as UTC epoch seconds, or {@link CSVUtil#INVALID_EPOCH_SECOND}. A field in the fixed
+     * {@code yyyy-MM-ddTHH:mm:ss} layout is decoded from its bytes; any other ISO local date-time falls
+     * back to {@link LocalDateTime#parse}, dropping fractional seconds.
+     */
+    public long epochSecond(int field) {
+        long epochSecond = CSVUtil.parseEpochSecond(buffer, starts[field], ends[field]);
+        return epochSecond != CSVUtil.INVALID_EPOCH_SECOND ? epochSecond : CSVUtil.parseEpochSecond(field(field));
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    int start(int field) {
+        return starts[field];
+    }
+
+    int end(int field) {
+        return ends[field];
+    }
+}
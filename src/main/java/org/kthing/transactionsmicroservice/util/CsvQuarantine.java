@@ -0,0 +1,95 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Getter;
+import lombok.Value;
+import org.kthing.transactionsmicroservice.exception.CsvFieldException;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records of one CSV file that failed to parse or validate and were left out of a scan, in file order.
+ * Scans check every record once and skip the bad ones, so whatever was built from them holds valid
+ * records only and can be read later without being validated again. The first {@link #MAX_LISTED} are
+ * kept with the reason; all of them are counted.
+ *
+ * <p>Filled by one scan at a time and not changed once the scan is done.
+ */
+public final class CsvQuarantine {
+
+    public static final long UNKNOWN_LINE = -1;
+    public static final int MAX_LISTED = 1000;
+
+    @Getter
+    private final String filePath;
+    private final List<Entry> entries = new ArrayList<>();
+    @Getter
+    private long count;
+
+    public CsvQuarantine(String filePath) {
+        this.filePath = filePath;
+    }
+
+    @Value
+    public static class Entry {
+        /** 1-based line number counting the header, or {@link #UNKNOWN_LINE} for a record appended since the file was first scanned. */
+        long lineNumber;
+        /** Where the record starts in the file. */
+        long offset;
+        /** Header name of the invalid field, or {@code null} if the line could not be split into fields. */
+        String field;
+        String reason;
+    }
+
+    /**
+     * A quarantine read back from elsewhere, e.g. a snapshot.
+     */
+    public static CsvQuarantine of(String filePath, long count, List<Entry> entries) {
+        CsvQuarantine quarantine = new CsvQuarantine(filePath);
+        quarantine.entries.addAll(entries);
+        quarantine.count = count;
+        return quarantine;
+    }
+
+    /**
+     * The entries of both, with {@code appended} after this one's.
+     */
+    public CsvQuarantine plus(CsvQuarantine appended) {
+        if (appended.count == 0) {
+            return this;
+        }
+        CsvQuarantine merged = new CsvQuarantine(filePath);
+        merged.addAll(this, 0);
+        merged.addAll(appended, 0);
+        return merged;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    void add(long lineNumber, long offset, TransactionServiceException error) {
+        count++;
+        if (entries.size() < MAX_LISTED) {
+            String field = error instanceof CsvFieldException invalid ? invalid.getField() : null;
+            entries.add(new Entry(lineNumber, offset, field, error.getMessage()));
+        }
+    }
+
+    /**
+     * Adds the entries of a scan whose line numbers were counted from 0, as if they had been counted from
+     * {@code firstLine}.
+     */
+    void addAll(CsvQuarantine other, long firstLine) {
+        count += other.count;
+        for (Entry entry : other.entries) {
+            if (entries.size() == MAX_LISTED) {
+                break;
+            }
+            entries.add(entry.lineNumber == UNKNOWN_LINE || firstLine == 0 ? entry
+                    : new Entry(firstLine + entry.lineNumber, entry.offset, entry.field, entry.reason));
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time-ordered permutation of a CSV file's records: for each record, in order of its timestamp, the
+ * epoch second, the account ID, the transaction ID and the byte offset the record starts at. Lets the
+ * file be paged in time order while the records themselves are read from disk only for the rows of a
+ * page. Records that fail validation are left out and kept in the index's {@link CsvQuarantine}, so
+ * every position is a valid record.
+ *
+ * <p>The index is a list of {@link Segment}s, each covering a byte range of the file. Records appended
+ * later are indexed as a new segment without reading the rest of the file again; a segment is merged
+ * into the one before it once it is at least as large, so there are O(log n) segments and every record
+ * is merged O(log n) times over all appends.
+ */
+public class CsvTimeIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Getter
+    private final CsvFileVersion version;
+    /** Hash of the file's version when it was last indexed from scratch; appended records keep it. */
+    @Getter
+    private final long generation;
+    /** In file order. */
+    @Getter
+    private final List<Segment> segments;
+    private final CsvFileCursor cursor;
+    @Getter
+    private final CsvQuarantine quarantine;
+
+    private CsvTimeIndex(CsvFileVersion version, long generation, List<Segment> segments, CsvFileCursor cursor, CsvQuarantine quarantine) {
+        this.version = version;
+        this.generation = generation;
+        this.segments = Collections.unmodifiableList(segments);
+        this.cursor = cursor;
+        this.quarantine = quarantine;
+    }
+
+    public static CsvTimeIndex build(String filePath, CsvFileVersion version) {
+        ParallelCsvReader.Scan<Builder> scan = ParallelCsvReader.scanRecords(filePath, () -> new Builder(INITIAL_CAPACITY));
+        // a file read through commons-csv is never continued, so its only segment covers all of it
+        long end = scan.getCursor() == null ? Long.MAX_VALUE : scan.getCursor().getOffset();
+        Segment segment = Builder.concat(scan.getVisitors()).build(0, end);
+        return new CsvTimeIndex(version, version.hash(), List.of(segment), scan.getCursor(), scan.getQuarantine());
+    }
+
+    /**
+     * A new index with the records appended to the file since this one was built, or {@code null} if
+     * the file was truncated or rewritten in the meantime and has to be indexed again from scratch.
+     * The segments of this index are shared, not copied.
+     */
+    public CsvTimeIndex withAppendedRecords(String filePath, CsvFileVersion newVersion) {
+        if (cursor == null) {
+            return null;
+        }
+        Builder builder = new Builder(16);
+        CsvQuarantine appendedQuarantine = new CsvQuarantine(filePath);
+        CsvFileCursor next = PagedCsvReader.scanAppended(filePath, cursor, builder, appendedQuarantine);
+        if (next == null) {
+            return null;
+        }
+        CsvQuarantine merged = quarantine.plus(appendedQuarantine);
+        if (builder.size == 0) {
+            return new CsvTimeIndex(newVersion, generation, segments, next, merged);
+        }
+
+        List<Segment> appended = new ArrayList<>(segments.size() + 1);
+        appended.addAll(segments);
+        Segment newest = builder.build(cursor.getOffset(), next.getOffset());
+        while (!appended.isEmpty() && appended.get(appended.size() - 1).size() <= newest.size()) {
+            newest = appended.remove(appended.size() - 1).merge(newest);
+        }
+        appended.add(newest);
+        return new CsvTimeIndex(newVersion, generation, appended, next, merged);
+    }
+
+    /** Records in all segments. */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Visits the records of all segments in time order, the older record first among equal timestamps:
+     * the order a single segment over the whole file would have, however the segments were merged.
+     */
+    public void forEachInTimeOrder(PositionVisitor visitor) {
+        int[] heads = new int[segments.size()];
+        int[] heap = new int[segments.size()];
+        int heapSize = 0;
+        for (int segment = 0; segment < segments.size(); segment++) {
+            if (segments.get(segment).size() > 0) {
+                heap[heapSize++] = segment;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heads, heap, heapSize, i);
+        }
+        while (heapSize > 0) {
+            int segment = heap[0];
+            visitor.visit(segments.get(segment), heads[segment]++);
+            if (heads[segment] == segments.get(segment).size()) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heads, heap, heapSize, 0);
+        }
+    }
+
+    private boolean precedes(int[] heads, int left, int right) {
+        long leftTime = segments.get(left).epochSecond(heads[left]);
+        long rightTime = segments.get(right).epochSecond(heads[right]);
+        return leftTime < rightTime || (leftTime == rightTime && left < right);
+    }
+
+    private void siftDown(int[] heads, int[] heap, int heapSize, int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && precedes(heads, heap[left], heap[smallest])) {
+                smallest = left;
+            }
+            if (right < heapSize && precedes(heads, heap[right], heap[smallest])) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            int tmp = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = tmp;
+            index = smallest;
+        }
+    }
+
+    public interface PositionVisitor {
+        void visit(Segment segment, int position);
+    }
+
+    /**
+     * The records indexed from one byte range of the file, in time order. Among equal timestamps the
+     * record earlier in the file comes first.
+     */
+    public static final class Segment {
+        @Getter
+        private final long fromOffset;
+        /** {@link Long#MAX_VALUE} for a segment that covers the rest of the file. */
+        @Getter
+        private final long toOffset;
+        private final long[] epochSeconds;
+        private final long[] accountIds;
+        private final long[] transactionIds;
+        private final long[] offsets;
+
+        private Segment(long fromOffset, long toOffset, long[] epochSeconds, long[] accountIds, long[] transactionIds,
+                        long[] offsets) {
+            this.fromOffset = fromOffset;
+            this.toOffset = toOffset;
+            this.epochSeconds = epochSeconds;
+            this.accountIds = accountIds;
+            this.transactionIds = transactionIds;
+            this.offsets = offsets;
+        }
+
+        public int size() {
+            return epochSeconds.length;
+        }
+
+        public long epochSecond(int position) {
+            return epochSeconds[position];
+        }
+
+        public long accountId(int position) {
+            return accountIds[position];
+        }
+
+        public long transactionId(int position) {
+            return transactionIds[position];
+        }
+
+        public long offset(int position) {
+            return offsets[position];
+        }
+
+        /**
+         * First position whose timestamp is greater than {@code epochSecond}.
+         */
+        public int firstPositionAfter(long epochSecond) {
+            if (epochSecond == Long.MAX_VALUE) {
+                return epochSeconds.length;
+            }
+            int low = 0;
+            int high = epochSeconds.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (epochSeconds[middle] <= epochSecond) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // both sides are sorted by time; on equal timestamps the older records come first, as in a full build
+        private Segment merge(Segment newer) {
+            int size = size() + newer.size();
+            long[] mergedEpochSeconds = new long[size];
+            long[] mergedAccountIds = new long[size];
+            long[] mergedTransactionIds = new long[size];
+            long[] mergedOffsets = new long[size];
+            int left = 0;
+            int right = 0;
+            for (int position = 0; position < size; position++) {
+                boolean takeLeft = right == newer.size()
+                        || (left < epochSeconds.length && epochSeconds[left] <= newer.epochSeconds[right]);
+                Segment source = takeLeft ? this : newer;
+                int index = takeLeft ? left++ : right++;
+                mergedEpochSeconds[position] = source.epochSeconds[index];
+                mergedAccountIds[position] = source.accountIds[index];
+                mergedTransactionIds[position] = source.transactionIds[index];
+                mergedOffsets[position] = source.offsets[index];
+            }
+            return new Segment(fromOffset, newer.toOffset, mergedEpochSeconds, mergedAccountIds, mergedTransactionIds,
+                    mergedOffsets);
+        }
+    }
+
+    private static final class Builder implements PagedCsvReader.RecordVisitor {
+        private long[] epochSeconds;
+        private long[] accountIds;
+        private long[] transactionIds;
+        private long[] offsets;
+        private final TransactionRecord record = new TransactionRecord();
+        private int size;
+
+        private Builder(int capacity) {
+            epochSeconds = new long[capacity];
+            accountIds = new long[capacity];
+            transactionIds = new long[capacity];
+            offsets = new long[capacity];
+        }
+
+        @Override
+        public void visit(CsvLine line, long offset) {
+            CSVUtil.decodeRecord(line, record);
+            if (size == epochSeconds.length) {
+                int capacity = size + (size >> 1) + 1;
+                epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+                accountIds = Arrays.copyOf(accountIds, capacity);
+                transactionIds = Arrays.copyOf(transactionIds, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+            }
+            epochSeconds[size] = record.getEpochSecond();
+            accountIds[size] = record.getAccountId();
+            transactionIds[size] = record.getTransactionId();
+            offsets[size] = offset;
+            size++;
+        }
+
+        /**
+         * The records of all builders in list order.
+         */
+        private static Builder concat(List<Builder> builders) {
+            if (builders.size() == 1) {
+                return builders.get(0);
+            }
+            Builder all = new Builder(Math.max(builders.stream().mapToInt(builder -> builder.size).sum(), 1));
+            for (Builder builder : builders) {
+                System.arraycopy(builder.epochSeconds, 0, all.epochSeconds, all.size, builder.size);
+                System.arraycopy(builder.accountIds, 0, all.accountIds, all.size, builder.size);
+                System.arraycopy(builder.transactionIds, 0, all.transactionIds, all.size, builder.size);
+                System.arraycopy(builder.offsets, 0, all.offsets, all.size, builder.size);
+                all.size += builder.size;
+            }
+            return all;
+        }
+
+        private Segment build(long fromOffset, long toOffset) {
+            int[] order = IndexSort.sortedIndexes(epochSeconds, 0, size);
+            long[] sortedEpochSeconds = new long[size];
+            long[] sortedAccountIds = new long[size];
+            long[] sortedTransactionIds = new long[size];
+            long[] sortedOffsets = new long[size];
+            for (int position = 0; position < size; position++) {
+                int row = order[position];
+                sortedEpochSeconds[position] = epochSeconds[row];
+                sortedAccountIds[position] = accountIds[row];
+                sortedTransactionIds[position] = transactionIds[row];
+                sortedOffsets[position] = offsets[row];
+            }
+            return new Segment(fromOffset, toOffset, sortedEpochSeconds, sortedAccountIds, sortedTransactionIds, sortedOffsets);
+        }
+    }
+}
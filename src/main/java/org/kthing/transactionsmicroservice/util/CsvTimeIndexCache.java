@@ -0,0 +1,89 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of {@link CsvTimeIndex} keyed by absolute path. When the file's version changes, the entry is
+ * extended with the appended records, or rebuilt if the file was rewritten.
+ *
+ * <p>Each entry is a future of its index. The thread that finds an entry stale puts the future of the
+ * next one in its place and builds it without holding any lock; requests for the same file wait for that
+ * future, or its exception, while requests for other files go on.
+ */
+@Slf4j
+@Component
+public class CsvTimeIndexCache {
+
+    private final Map<Path, CompletableFuture<CsvTimeIndex>> entries = new ConcurrentHashMap<>();
+
+    public CsvTimeIndex get(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        while (true) {
+            CompletableFuture<CsvTimeIndex> entry = entries.get(key);
+            if (entry != null && !entry.isDone()) {
+                CsvTimeIndex built = await(entry);
+                if (built.getVersion().equals(PagedCsvReader.fileVersion(key.toString()))) {
+                    return built;
+                }
+                continue;
+            }
+            CsvTimeIndex current = entry == null || entry.isCompletedExceptionally() ? null : entry.join();
+            if (current != null && current.getVersion().equals(PagedCsvReader.fileVersion(key.toString()))) {
+                return current;
+            }
+            CompletableFuture<CsvTimeIndex> next = new CompletableFuture<>();
+            boolean claimed = entry == null ? entries.putIfAbsent(key, next) == null : entries.replace(key, entry, next);
+            if (claimed) {
+                return build(key, current, next);
+            }
+        }
+    }
+
+    // the version is read after the entry was claimed, so an entry is only ever replaced by one built
+    // from a later look at the file
+    private CsvTimeIndex build(Path file, CsvTimeIndex current, CompletableFuture<CsvTimeIndex> next) {
+        CsvTimeIndex index;
+        try {
+            CsvFileVersion version = PagedCsvReader.fileVersion(file.toString());
+            if (current != null && current.getVersion().equals(version)) {
+                index = current;
+            } else {
+                index = current == null ? null : current.withAppendedRecords(file.toString(), version);
+                if (index == null) {
+                    index = CsvTimeIndex.build(file.toString(), version);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            entries.remove(file, next);
+            next.completeExceptionally(e);
+            throw e;
+        }
+        // an append without bad records keeps the quarantine it had
+        if (index.getQuarantine().getCount() > 0 && (current == null || current.getQuarantine() != index.getQuarantine())) {
+            log.warn("{} records of {} failed validation and are left out", index.getQuarantine().getCount(), file);
+        }
+        next.complete(index);
+        return index;
+    }
+
+    private static CsvTimeIndex await(CompletableFuture<CsvTimeIndex> entry) {
+        try {
+            return entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.kthing.transactionsmicroservice.util;
+
+/**
+ * Sorts indexes into a primitive column by the column's values without boxing. The sort is a stable
+ * merge sort, so indexes with equal keys keep their original order.
+ */
+public final class IndexSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private IndexSort() {
+
+    }
+
+    /**
+     * Indexes {@code from} (inclusive) to {@code to} (exclusive) ordered by {@code keys[index]}.
+     */
+    public static int[] sortedIndexes(long[] keys, int from, int to) {
+        int[] indexes = new int[to - from];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = from + i;
+        }
+        sort(keys, indexes, 0, indexes.length, new int[indexes.length]);
+        return indexes;
+    }
+
+    /**
+     * Reorders {@code indexes} in place by {@code keys[index]}, keeping the current order of equal keys.
+     */
+    public static void sort(long[] keys, int[] indexes) {
+        sort(keys, indexes, 0, indexes.length, new int[indexes.length]);
+    }
+
+    /**
+     * Merges two index arrays that are each ordered by {@code keys[index]}; on equal keys the indexes of
+     * {@code first} come first.
+     */
+    public static int[] merge(long[] keys, int[] first, int[] second) {
+        int[] merged = new int[first.length + second.length];
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (right >= second.length || (left < first.length && keys[first[left]] <= keys[second[right]])) {
+                merged[i] = first[left++];
+            } else {
+                merged[i] = second[right++];
+            }
+        }
+        return merged;
+    }
+
+    private static void sort(long[] keys, int[] indexes, int from, int to, int[] buffer) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, indexes, from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(keys, indexes, from, middle, buffer);
+        sort(keys, indexes, middle, to, buffer);
+        if (keys[indexes[middle - 1]] <= keys[indexes[middle]]) {
+            return;
+        }
+        System.arraycopy(indexes, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keys[buffer[left]] <= keys[buffer[right]])) {
+                indexes[i] = buffer[left++];
+            } else {
+                indexes[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(long[] keys, int[] indexes, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int index = indexes[i];
+            long key = keys[index];
+            int j = i - 1;
+            while (j >= from && keys[indexes[j]] > key) {
+                indexes[j + 1] = indexes[j];
+                j--;
+            }
+            indexes[j + 1] = index;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.kthing.transactionsmicroservice.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of {@code long}s in a single primitive array, with linear probing. The table
+ * is sized for the expected number of elements at a load factor of 0.75 without rounding up to a power
+ * of two, so it takes about 10.7 bytes per element as sized and at most 16 after growing: 50 million
+ * elements take about 530 MB. Nothing is boxed on insert or lookup.
+ */
+public class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    // marks free slots; the element itself is tracked by a flag
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] slots;
+    private int size;
+    private int resizeThreshold;
+    private boolean containsFree;
+
+    public LongHashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return containsFree;
+        }
+        long[] table = slots;
+        for (int slot = slotOf(value, table.length); table[slot] != FREE; slot = next(slot, table.length)) {
+            if (table[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds {@code value} and returns {@code true}, or returns {@code false} if it was already there.
+     */
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = slotOf(value, slots.length);
+        while (slots[slot] != FREE) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            slot = next(slot, slots.length);
+        }
+        slots[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(slots.length + (slots.length >> 1));
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryFootprintBytes() {
+        return (long) slots.length * Long.BYTES;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+        allocate(capacity);
+        for (long value : old) {
+            if (value != FREE) {
+                int slot = slotOf(value, slots.length);
+                while (slots[slot] != FREE) {
+                    slot = next(slot, slots.length);
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        Arrays.fill(slots, FREE);
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR) + 1;
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(4, needed));
+    }
+
+    // maps the hash onto [0, length) with a multiply instead of a modulo
+    private static int slotOf(long value, int length) {
+        return (int) (((LongIntHashMap.mix(value) & 0xffffffffL) * length) >>> 32);
+    }
+
+    private static int next(int slot, int length) {
+        return slot + 1 == length ? 0 : slot + 1;
+    }
+}
@@ -0,0 +1,212 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scans of memory-mapped byte ranges of CSVs with the canonical header and unquoted records.
+ * Lines are tokenized in place by {@link CsvLine}, so no line or field string is created unless a
+ * visitor asks for one. A line the tokenizer does not handle is parsed by commons-csv on its own.
+ */
+final class MappedCsvReader {
+
+    private static final byte[] CANONICAL_HEADER = String.join(",", CsvLine.FIELD_NAMES).getBytes(StandardCharsets.US_ASCII);
+
+    // large files are mapped in windows; a window always restarts at the first line it did not finish
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    // an unterminated last line longer than this is never taken for a complete record
+    private static final int MAX_PENDING_LINE = 64 * 1024;
+
+    private MappedCsvReader() {
+
+    }
+
+    /**
+     * Offset of the first record if the file starts with the canonical header, otherwise {@code -1}, in
+     * which case the file has to be read with commons-csv.
+     */
+    static long dataOffset(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(CANONICAL_HEADER.length + 2);
+        readFully(channel, start, 0);
+        int end = start.position();
+        int headerEnd = end;
+        for (int i = 0; i < end; i++) {
+            if (start.get(i) == '\n') {
+                headerEnd = i;
+                break;
+            }
+        }
+        if (headerEnd == end && end == start.capacity()) {
+            return -1;
+        }
+        int lineEnd = headerEnd > 0 && start.get(headerEnd - 1) == '\r' ? headerEnd - 1 : headerEnd;
+        if (!isCanonicalHeader(start, 0, lineEnd)) {
+            return -1;
+        }
+        return headerEnd < end ? headerEnd + 1 : end;
+    }
+
+    /**
+     * Visits the records in {@code [from, to)} like {@link PagedCsvReader#scanRecords}. {@code from} must
+     * be the start of a line; a last line not ended by a line break is visited as well. A record that
+     * fails to parse or to be visited is added to the quarantine with its line number counted from
+     * {@code firstLine}, the number of the line at {@code from}, unless that is
+     * {@link CsvQuarantine#UNKNOWN_LINE}, and the scan goes on.
+     *
+     * @return the number of lines scanned, blank ones included
+     */
+    static long scan(FileChannel channel, long from, long to, long firstLine, String filePath,
+                     PagedCsvReader.RecordVisitor visitor, CsvQuarantine quarantine) throws IOException {
+        CsvLine line = new CsvLine();
+        long lines = 0;
+        long windowStart = from;
+        while (windowStart < to) {
+            int windowSize = (int) Math.min(WINDOW_SIZE, to - windowStart);
+            boolean lastWindow = windowStart + windowSize == to;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+
+            int lineStart = 0;
+            while (lineStart < windowSize) {
+                int newline = indexOfNewline(buffer, lineStart, windowSize);
+                if (newline < 0 && !lastWindow) {
+                    break;
+                }
+                int lineEnd = newline < 0 ? windowSize : newline;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    long offset = windowStart + lineStart;
+                    try {
+                        if (!line.tokenize(buffer, lineStart, lineEnd)) {
+                            byte[] bytes = new byte[lineEnd - lineStart];
+                            buffer.get(lineStart, bytes);
+                            PagedCsvReader.parseLine(line, new String(bytes, StandardCharsets.ISO_8859_1),
+                                    PagedCsvReader.CANONICAL_FORMAT, offset, filePath);
+                        }
+                        visitor.visit(line, offset);
+                    } catch (TransactionServiceException e) {
+                        quarantine.add(firstLine == CsvQuarantine.UNKNOWN_LINE ? firstLine : firstLine + lines, offset, e);
+                    }
+                }
+                lines++;
+                lineStart = newline < 0 ? windowSize : newline + 1;
+            }
+            if (lineStart == 0) {
+                throw new TransactionServiceException("Line at offset " + windowStart + " is too long in " + filePath);
+            }
+            // the rest of the window is mapped again as the start of the next one
+            PagedCsvReader.countBytesRead(lineStart);
+            windowStart += lineStart;
+        }
+        return lines;
+    }
+
+    /**
+     * Offset just after the first line break at or after {@code offset}, or {@code to} if there is none
+     * before it.
+     */
+    static long afterNextNewline(FileChannel channel, long offset, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (long start = offset; start < to; start += buffer.position()) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - start));
+            readFully(channel, buffer, start);
+            for (int i = 0; i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            if (buffer.position() == 0) {
+                break;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Offset just after the last line break in {@code [from, to)}, or {@code from} if there is none.
+     */
+    static long afterLastNewline(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(to - from, 1)));
+        for (long end = to; end > from; ) {
+            int length = (int) Math.min(buffer.capacity(), end - from);
+            buffer.clear().limit(length);
+            long start = end - length;
+            readFully(channel, buffer, start);
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    static boolean isCanonicalHeader(ByteBuffer buffer, int start, int end) {
+        if (end - start != CANONICAL_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < CANONICAL_HEADER.length; i++) {
+            if (buffer.get(start + i) != CANONICAL_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean startsWithLineBreak(FileChannel channel, long offset) throws IOException {
+        ByteBuffer first = ByteBuffer.allocate(1);
+        readFully(channel, first, offset);
+        return first.position() == 1 && (first.get(0) == '\n' || first.get(0) == '\r');
+    }
+
+    /**
+     * Whether {@code [from, to)} holds exactly one unquoted record that passes {@link CSVUtil#decodeRecord}.
+     */
+    static boolean isValidRecord(FileChannel channel, long from, long to) throws IOException {
+        if (to - from > MAX_PENDING_LINE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        readFully(channel, buffer, from);
+        int end = buffer.position();
+        if (end > 0 && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        CsvLine line = new CsvLine();
+        if (!line.tokenize(buffer, 0, end)) {
+            return false;
+        }
+        try {
+            CSVUtil.decodeRecord(line, new TransactionRecord());
+            return true;
+        } catch (TransactionServiceException e) {
+            return false;
+        }
+    }
+
+    // reads until the buffer is full or the file ends
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return;
+            }
+        }
+    }
+
+    private static int indexOfNewline(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
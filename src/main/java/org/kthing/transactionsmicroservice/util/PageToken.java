@@ -0,0 +1,80 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Value;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opaque page token carrying the key of the last transaction returned, the next page starting with the
+ * first transaction after it: its timestamp, the index of its data source and its sequence within the
+ * source. It also carries the generation of every source, so that a key from data loaded again since is
+ * recognised. Records appended in the meantime leave the token valid.
+ */
+@Value
+public class PageToken {
+
+    private static final String FORMAT_VERSION = "v3";
+    private static final String SECTION_DELIMITER = ";";
+    private static final String FIELD_DELIMITER = ":";
+
+    long epochSecond;
+    int source;
+    long sequence;
+    List<Long> generations;
+
+    public PageToken(long epochSecond, int source, long sequence, List<Long> generations) {
+        this.epochSecond = epochSecond;
+        this.source = source;
+        this.sequence = sequence;
+        this.generations = Collections.unmodifiableList(new ArrayList<>(generations));
+    }
+
+    public long getGeneration(int source) {
+        return generations.get(source);
+    }
+
+    public String encode() {
+        StringBuilder builder = new StringBuilder(FORMAT_VERSION)
+                .append(SECTION_DELIMITER)
+                .append(epochSecond)
+                .append(FIELD_DELIMITER)
+                .append(source)
+                .append(FIELD_DELIMITER)
+                .append(sequence);
+        for (long generation : generations) {
+            builder.append(SECTION_DELIMITER).append(Long.toHexString(generation));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(builder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static PageToken decode(String token, int expectedSources) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            String[] sections = decoded.split(SECTION_DELIMITER);
+            if (sections.length != expectedSources + 2 || !FORMAT_VERSION.equals(sections[0])) {
+                throw new TransactionServiceException("Invalid page token format");
+            }
+            String[] key = sections[1].split(FIELD_DELIMITER);
+            if (key.length != 3) {
+                throw new TransactionServiceException("Invalid page token format");
+            }
+            int source = Integer.parseInt(key[1]);
+            long sequence = Long.parseLong(key[2]);
+            if (source < 0 || source >= expectedSources || sequence < 0) {
+                throw new TransactionServiceException("Invalid page token format");
+            }
+            List<Long> generations = new ArrayList<>(expectedSources);
+            for (int i = 2; i < sections.length; i++) {
+                generations.add(Long.parseUnsignedLong(sections[i], 16));
+            }
+            return new PageToken(Long.parseLong(key[0]), source, sequence, generations);
+        } catch (IllegalArgumentException e) {
+            throw new TransactionServiceException("Invalid page token format");
+        }
+    }
+}
@@ -8,14 +8,21 @@ import org.kthing.transactionsmicroservice.model.Transaction;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeParseException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class PagedCsvReader {
 
@@ -23,85 +30,255 @@ public class PagedCsvReader {
         "TRANSACTION_ID", "CUSTOMER_ID", "ACCOUNT_ID", "AMOUNT", "DATE_TIME"
     };
 
-    public static List<Transaction> readTransactions(String filePath, Transaction.TransactionType type, long startPosition, int maxCount, String accountId, LocalDateTime fromDate, LocalDateTime toDate) throws IOException {
-        if (startPosition < 0) {
-            throw new TransactionServiceException("Start position cannot be negative");
-        }
-        if (maxCount <= 0) {
-            throw new TransactionServiceException("Max count must be positive");
-        }
+    private static final CSVFormat BASE_FORMAT = CSVFormat.DEFAULT
+            .builder()
+            .setIgnoreHeaderCase(true)
+            .setTrim(true)
+            .build();
+
+    private static final CSVFormat HEADER_FORMAT = BASE_FORMAT
+            .builder()
+            .setHeader()
+            .setSkipHeaderRecord(true)
+            .build();
+
+    static final CSVFormat CANONICAL_FORMAT = BASE_FORMAT
+            .builder()
+            .setHeader(CsvLine.FIELD_NAMES)
+            .setSkipHeaderRecord(false)
+            .build();
+
+    private static final int INITIAL_LINE_BUFFER = 256;
 
-        List<Transaction> results = new ArrayList<>();
-        long currentPosition = 0;
-        
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8);
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT
-                     .builder()
-                     .setHeader()
-                     .setSkipHeaderRecord(true)
-                     .setIgnoreHeaderCase(true)
-                     .setTrim(true)
-                     .build())) {
-            validateHeaders(csvParser.getHeaderNames());
-            for (CSVRecord record : csvParser) {
-                if (currentPosition < startPosition) {
-                    currentPosition++;
-                    continue;
+    // the header takes the first line of the file
+    static final long FIRST_RECORD_LINE = 2;
+
+    private static final LongAdder BYTES_READ = new LongAdder();
+
+    /**
+     * Reads the records starting at the first {@code count} of the given byte offsets, in that order.
+     * Each offset must point at the start of a record {@link #scanRecords} visited, which it has already
+     * validated, so the records are only decoded.
+     */
+    public static List<Transaction> readTransactionsAt(String filePath, Transaction.TransactionType type, long[] offsets, int count) {
+        Path path = Paths.get(filePath);
+        List<Transaction> results = new ArrayList<>(count);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = readLine(channel, 0, ByteBuffer.allocate(INITIAL_LINE_BUFFER));
+            boolean canonical = MappedCsvReader.isCanonicalHeader(buffer, 0, buffer.limit());
+            CSVFormat format = CANONICAL_FORMAT;
+            if (!canonical) {
+                List<String> headers = readHeaderNames(path);
+                validateHeaders(headers);
+                format = BASE_FORMAT.builder()
+                        .setHeader(headers.toArray(new String[0]))
+                        .setSkipHeaderRecord(false)
+                        .build();
+            }
+            CsvLine line = new CsvLine();
+            TransactionRecord record = new TransactionRecord();
+            for (int i = 0; i < count; i++) {
+                buffer = readLine(channel, offsets[i], buffer);
+                if (!canonical || !line.tokenize(buffer, 0, buffer.limit())) {
+                    String text = new String(buffer.array(), 0, buffer.limit(), StandardCharsets.ISO_8859_1);
+                    parseLine(line, text, format, offsets[i], filePath);
                 }
-                
-                try {
-                    String recordAccountId = record.get("ACCOUNT_ID");
-                    LocalDateTime recordDateTime = LocalDateTime.parse(record.get("DATE_TIME"));
-                    
-                    if (shouldIncludeRecord(recordAccountId, recordDateTime, accountId, fromDate, toDate)) {
-                        Transaction transaction = CSVUtil.parseTransactionRecord(record, type);
-                        results.add(transaction);
-                        
-                        if (results.size() >= maxCount) {
-                            break;
-                        }
+                CSVUtil.decodeValidatedRecord(line, record);
+                results.add(record.toTransaction(line, type));
+            }
+        } catch (IOException e) {
+            throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
+        }
+        return results;
+    }
+
+    /**
+     * Visits every record of the file in file order together with the byte offset it starts at. Files
+     * with the canonical header are tokenized straight from a memory mapping; any other layout is read
+     * through commons-csv. The visited line is reused between calls. A record that fails to parse, or
+     * that the visitor rejects with a {@link TransactionServiceException}, is added to the quarantine
+     * and skipped.
+     *
+     * @return where {@link #scanAppended} can continue from, or {@code null} for a file read through
+     * commons-csv, which can only be read again as a whole
+     */
+    public static CsvFileCursor scanRecords(String filePath, RecordVisitor visitor, CsvQuarantine quarantine) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long dataOffset = MappedCsvReader.dataOffset(channel);
+            if (dataOffset >= 0) {
+                long end = channel.size();
+                MappedCsvReader.scan(channel, dataOffset, end, FIRST_RECORD_LINE, filePath, visitor, quarantine);
+                return CsvFileCursor.at(channel, end);
+            }
+            BYTES_READ.add(channel.size());
+            try (CSVParser csvParser = new CSVParser(newReader(channel.position(0)), HEADER_FORMAT)) {
+                validateHeaders(csvParser.getHeaderNames());
+                CsvLine line = new CsvLine();
+                for (CSVRecord record : csvParser) {
+                    try {
+                        setLine(line, record);
+                        visitor.visit(line, record.getCharacterPosition());
+                    } catch (TransactionServiceException e) {
+                        quarantine.add(csvParser.getCurrentLineNumber(), record.getCharacterPosition(), e);
                     }
-                } catch (DateTimeParseException e) {
-                    throw new TransactionServiceException("Invalid date format in CSV record: " + record.get("DATE_TIME"));
-                } catch (NumberFormatException e) {
-                    throw new TransactionServiceException("Invalid amount format in CSV record: " + record.get("AMOUNT"));
                 }
-                currentPosition++;
             }
+            return null;
         } catch (IOException e) {
             throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
         }
-        return results;
     }
-    
-    private static void validateHeaders(List<String> headers) {
-        for (String requiredHeader : REQUIRED_HEADERS) {
-            if (!headers.contains(requiredHeader)) {
-                throw new TransactionServiceException("Missing required header in CSV file: " + requiredHeader);
+
+    /**
+     * Visits the records appended to the file since {@code cursor}, quarantining bad ones like
+     * {@link #scanRecords} but without their line numbers. Only complete records are consumed: a trailing
+     * line without a line break is visited only if it already decodes as a valid record, otherwise it is
+     * left for a later call.
+     *
+     * @return the cursor after the visited records, the given one if nothing was appended, or
+     * {@code null} if the file was truncated or rewritten and has to be scanned again from the start
+     */
+    public static CsvFileCursor scanAppended(String filePath, CsvFileCursor cursor, RecordVisitor visitor, CsvQuarantine quarantine) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (!cursor.matches(channel)) {
+                return null;
+            }
+            long from = cursor.getOffset();
+            if (size == from) {
+                return cursor;
+            }
+            // a consumed record without a line break must not have been continued by the appended bytes
+            if (!cursor.isLineTerminated() && !MappedCsvReader.startsWithLineBreak(channel, from)) {
+                return null;
             }
+            long end = MappedCsvReader.afterLastNewline(channel, from, size);
+            if (end < size && MappedCsvReader.isValidRecord(channel, end, size)) {
+                end = size;
+            }
+            MappedCsvReader.scan(channel, from, end, CsvQuarantine.UNKNOWN_LINE, filePath, visitor, quarantine);
+            return end == from ? cursor : CsvFileCursor.at(channel, end);
+        } catch (IOException e) {
+            throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
         }
     }
-    
-    private static boolean shouldIncludeRecord(String recordAccountId, LocalDateTime recordDateTime, String accountId, LocalDateTime fromDate, LocalDateTime toDate) {
-        boolean accountMatches = accountId == null || accountId.isEmpty() || accountId.equals(recordAccountId);
-        boolean dateInRange = (fromDate == null || !recordDateTime.isBefore(fromDate)) && (toDate == null || !recordDateTime.isAfter(toDate));
-        
-        return accountMatches && dateInRange;
+
+    /**
+     * {@link #scanAppended} with every record decoded and validated like a paged read. The visited record
+     * is reused between calls.
+     */
+    public static CsvFileCursor scanAppendedTransactionRecords(String filePath, CsvFileCursor cursor, Consumer<TransactionRecord> consumer,
+                                                               CsvQuarantine quarantine) {
+        return scanAppended(filePath, cursor, decoding(consumer), quarantine);
+    }
+
+    private static RecordVisitor decoding(Consumer<TransactionRecord> consumer) {
+        TransactionRecord record = new TransactionRecord();
+        return (line, offset) -> {
+            CSVUtil.decodeRecord(line, record);
+            consumer.accept(record);
+        };
     }
-    
-    public static boolean hasMoreTransactions(String filePath, long position) throws IOException {
-        Path path = Paths.get(filePath);
-        if (!Files.exists(path)) {
-            return false;
+
+    /**
+     * Bytes read from CSV files by this process so far, by paged reads and full scans alike.
+     */
+    public static long bytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    static void countBytesRead(long bytes) {
+        BYTES_READ.add(bytes);
+    }
+
+    /**
+     * Version of the file contents, read from its attributes.
+     */
+    public static CsvFileVersion fileVersion(String filePath) {
+        try {
+            return CsvFileVersion.of(Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
         }
+    }
+
+    // ISO-8859-1 maps every byte to exactly one char, so commons-csv character positions are byte offsets.
+    // The data files are ASCII, for which this decodes identically to UTF-8.
+    private static Reader newReader(FileChannel channel) {
+        return new BufferedReader(Channels.newReader(channel, StandardCharsets.ISO_8859_1));
+    }
 
-        int lineCount = 0;
-        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-            while (reader.readLine() != null) {
-                lineCount++;
+    /**
+     * Parses a single line with commons-csv into {@code line}, for lines {@link CsvLine#tokenize} rejects.
+     */
+    static void parseLine(CsvLine line, String text, CSVFormat format, long offset, String filePath) throws IOException {
+        try (CSVParser csvParser = CSVParser.parse(text, format)) {
+            Iterator<CSVRecord> records = csvParser.iterator();
+            if (!records.hasNext()) {
+                throw new TransactionServiceException("No record at offset " + offset + " in " + filePath);
             }
+            setLine(line, records.next());
         }
-        
-        return position < (lineCount - 1);
     }
-}
\ No newline at end of file
+
+    private static void setLine(CsvLine line, CSVRecord record) {
+        try {
+            line.set(record);
+        } catch (IllegalArgumentException e) {
+            throw new TransactionServiceException("Error parsing CSV record", e);
+        }
+    }
+
+    private static List<String> readHeaderNames(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1);
+             CSVParser csvParser = new CSVParser(reader, HEADER_FORMAT)) {
+            return csvParser.getHeaderNames();
+        }
+    }
+
+    /**
+     * Reads the line starting at {@code offset} into the buffer, growing it if needed, and returns the
+     * buffer with its limit at the end of the line. Records are assumed not to span lines.
+     */
+    private static ByteBuffer readLine(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int scanned = 0;
+        while (true) {
+            int read = channel.read(buffer, offset + buffer.position());
+            int end = buffer.position();
+            if (read > 0) {
+                BYTES_READ.add(read);
+            }
+            for (int i = scanned; i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    buffer.limit(i > 0 && buffer.get(i - 1) == '\r' ? i - 1 : i);
+                    return buffer;
+                }
+            }
+            if (read < 0) {
+                buffer.limit(end);
+                return buffer;
+            }
+            scanned = end;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    private static void validateHeaders(List<String> headers) {
+        for (String requiredHeader : REQUIRED_HEADERS) {
+            if (!headers.contains(requiredHeader)) {
+                throw new TransactionServiceException("Missing required header in CSV file: " + requiredHeader);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(CsvLine line, long offset);
+    }
+}
@@ -0,0 +1,180 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Value;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Full scans of a CSV file split into byte ranges that are visited concurrently on the common fork-join
+ * pool. Range boundaries are moved to just after a line break, so every line belongs to exactly one
+ * range. Each range gets its own visitor, and the visitors are returned in file order, so concatenating
+ * what they collected gives the records in the same order as {@link PagedCsvReader#scanRecords}.
+ * A file without the canonical header is scanned by a single visitor on the calling thread.
+ */
+public final class ParallelCsvReader {
+
+    // below this many bytes per range, splitting costs more than it saves
+    static final long MIN_RANGE_BYTES = 4L << 20;
+
+    // more ranges than threads, so that one slow range does not leave the other threads idle
+    private static final int RANGES_PER_THREAD = 4;
+
+    private ParallelCsvReader() {
+
+    }
+
+    @Value
+    public static class Scan<V> {
+        /** One visitor per range, in file order. */
+        List<V> visitors;
+        /** As returned by {@link PagedCsvReader#scanRecords}. */
+        CsvFileCursor cursor;
+        /** The records of all ranges that failed to parse or validate. */
+        CsvQuarantine quarantine;
+    }
+
+    /** Threads a scan can keep busy: the calling thread plus the pool's workers, at most one per core. */
+    public static int parallelism() {
+        return Math.min(ForkJoinPool.getCommonPoolParallelism() + 1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Visits every record of the file like {@link PagedCsvReader#scanRecords}, with a new visitor from
+     * {@code newVisitor} for each range. Records that fail to parse or validate are skipped and
+     * quarantined in file order, with their line numbers.
+     */
+    public static <V extends PagedCsvReader.RecordVisitor> Scan<V> scanRecords(String filePath, Supplier<V> newVisitor) {
+        return scanRecords(filePath, newVisitor, MIN_RANGE_BYTES, parallelism());
+    }
+
+    static <V extends PagedCsvReader.RecordVisitor> Scan<V> scanRecords(String filePath, Supplier<V> newVisitor,
+                                                                      long minRangeBytes, int threads) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long dataOffset = MappedCsvReader.dataOffset(channel);
+            CsvQuarantine quarantine = new CsvQuarantine(filePath);
+            if (dataOffset < 0) {
+                V visitor = newVisitor.get();
+                return new Scan<>(List.of(visitor), PagedCsvReader.scanRecords(filePath, visitor, quarantine), quarantine);
+            }
+            long end = channel.size();
+            List<RangeScan<V>> scans = scanRanges(channel, dataOffset, end, filePath, newVisitor, minRangeBytes, threads);
+
+            List<V> visitors = new ArrayList<>(scans.size());
+            long firstLine = PagedCsvReader.FIRST_RECORD_LINE;
+            for (RangeScan<V> scan : scans) {
+                visitors.add(scan.visitor);
+                quarantine.addAll(scan.quarantine, firstLine);
+                firstLine += scan.lines;
+            }
+            return new Scan<>(visitors, CsvFileCursor.at(channel, end), quarantine);
+        } catch (IOException e) {
+            throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
+        }
+    }
+
+    /**
+     * Visits the records in bytes {@code [from, to)} of the file like {@link #scanRecords}, where
+     * {@code from} is the start of a line. The range is narrowed to the records after the header and
+     * before the current end of the file. Records that fail to parse or validate are skipped without
+     * being quarantined again. A file without the canonical header is scanned as a whole.
+     *
+     * @return one visitor per range, in file order
+     */
+    public static <V extends PagedCsvReader.RecordVisitor> List<V> scanRange(String filePath, long from, long to,
+                                                                             Supplier<V> newVisitor) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long dataOffset = MappedCsvReader.dataOffset(channel);
+            if (dataOffset < 0) {
+                V visitor = newVisitor.get();
+                PagedCsvReader.scanRecords(filePath, visitor, new CsvQuarantine(filePath));
+                return List.of(visitor);
+            }
+            long start = Math.max(from, dataOffset);
+            List<RangeScan<V>> scans = scanRanges(channel, start, Math.max(start, Math.min(to, channel.size())), filePath,
+                    newVisitor, MIN_RANGE_BYTES, parallelism());
+            List<V> visitors = new ArrayList<>(scans.size());
+            for (RangeScan<V> scan : scans) {
+                visitors.add(scan.visitor);
+            }
+            return visitors;
+        } catch (IOException e) {
+            throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
+        }
+    }
+
+    private static <V extends PagedCsvReader.RecordVisitor> List<RangeScan<V>> scanRanges(
+            FileChannel channel, long from, long to, String filePath, Supplier<V> newVisitor, long minRangeBytes, int threads)
+            throws IOException {
+        // on a single core splitting only adds work
+        long maxRanges = threads > 1 ? (long) threads * RANGES_PER_THREAD : 1;
+        long ranges = Math.min(Math.max((to - from) / minRangeBytes, 1), maxRanges);
+        long[] bounds = split(channel, from, to, (int) ranges);
+
+        List<RangeScan<V>> scans = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            scans.add(new RangeScan<>(channel, bounds[i], bounds[i + 1], filePath, newVisitor.get()));
+        }
+        ForkJoinTask.invokeAll(scans);
+        return scans;
+    }
+
+    /**
+     * Boundaries of up to {@code ranges} byte ranges covering {@code [from, to)}, each but the last
+     * ending just after a line break.
+     */
+    static long[] split(FileChannel channel, long from, long to, int ranges) throws IOException {
+        long[] bounds = new long[ranges + 1];
+        bounds[0] = from;
+        int count = 1;
+        for (int i = 1; i < ranges; i++) {
+            // starting one byte early keeps a target that already is a line start where it is
+            long target = Math.max(from + (to - from) * i / ranges - 1, bounds[count - 1]);
+            long bound = MappedCsvReader.afterNextNewline(channel, target, to);
+            if (bound > bounds[count - 1] && bound < to) {
+                bounds[count++] = bound;
+            }
+        }
+        bounds[count++] = to;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static final class RangeScan<V extends PagedCsvReader.RecordVisitor> extends RecursiveAction {
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+        private final String filePath;
+        private final V visitor;
+        private long lines;
+        // line numbers relative to the start of the range
+        private final CsvQuarantine quarantine;
+
+        private RangeScan(FileChannel channel, long from, long to, String filePath, V visitor) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+            this.filePath = filePath;
+            this.visitor = visitor;
+            this.quarantine = new CsvQuarantine(filePath);
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                lines = MappedCsvReader.scan(channel, from, to, 0, filePath, visitor, quarantine);
+            } catch (IOException e) {
+                throw new TransactionServiceException("Error reading CSV file: " + filePath, e);
+            }
+        }
+    }
+}
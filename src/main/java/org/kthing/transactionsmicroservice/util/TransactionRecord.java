@@ -0,0 +1,34 @@
+package org.kthing.transactionsmicroservice.util;
+
+import lombok.Getter;
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+/**
+ * Decoded, validated record held in primitives. One instance is refilled by
+ * {@link CSVUtil#decodeRecord} for every line of a scan, so rows that are only filtered or copied into
+ * columns allocate nothing; {@link #toTransaction} builds the model object for rows that are returned.
+ */
+@Getter
+public final class TransactionRecord {
+
+    // written field by field by CSVUtil while decoding
+    long transactionId;
+    long customerId;
+    long accountId;
+    long unscaledAmount;
+    int amountScale;
+    long epochSecond;
+
+    public Transaction toTransaction(Transaction.TransactionType type) {
+        return CSVUtil.toTransaction(transactionId, customerId, accountId, unscaledAmount, amountScale, epochSecond, type);
+    }
+
+    /**
+     * The model object of the record decoded from {@code line}, with the IDs as written in the file, so
+     * leading zeros are kept.
+     */
+    public Transaction toTransaction(CsvLine line, Transaction.TransactionType type) {
+        return CSVUtil.toTransaction(line.field(CsvLine.TRANSACTION_ID), line.field(CsvLine.CUSTOMER_ID),
+                line.field(CsvLine.ACCOUNT_ID), unscaledAmount, amountScale, epochSecond, type);
+    }
+}
@@ -0,0 +1,114 @@
+package org.kthing.transactionsmicroservice.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic incomes and outcomes files shaped like the real ones: random IDs, amounts with up to two
+ * decimals and timestamps spread over five years in file order that is not time order. Files are
+ * generated once per size under {@code target/benchmark-data} (or {@code -Dbenchmark.data.dir}) and
+ * reused by later runs, since the larger ones take a while to write. Shared by the JMH benchmarks and
+ * {@link TransactionsLoadTest}.
+ */
+final class BenchmarkData {
+
+    static final String HEADER = "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME";
+
+    // one account per this many rows, so account pages have a few hundred matches
+    static final int ROWS_PER_ACCOUNT = 200;
+    static final long FIRST_ACCOUNT_ID = 1_000_000;
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static final long SPAN_SECONDS = 5L * 365 * 24 * 3600;
+    // ISO_LOCAL_DATE_TIME would drop zero seconds, which the source files always have
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private BenchmarkData() {
+
+    }
+
+    static Path incomes(int rows) {
+        return file("incomes", rows, 1);
+    }
+
+    static Path outcomes(int rows) {
+        return file("outcomes", rows, 2);
+    }
+
+    /** An account that has rows in both files. */
+    static String accountId(int rows) {
+        return Long.toString(FIRST_ACCOUNT_ID + accounts(rows) / 2);
+    }
+
+    /** Any of the generated accounts. */
+    static String accountId(int rows, SplittableRandom random) {
+        return Long.toString(FIRST_ACCOUNT_ID + random.nextInt(accounts(rows)));
+    }
+
+    /** The first second timestamps are generated from. */
+    static LocalDateTime startDate() {
+        return START;
+    }
+
+    /** The middle year of the generated range. */
+    static LocalDateTime fromDate() {
+        return START.plusYears(2);
+    }
+
+    static LocalDateTime toDate() {
+        return START.plusYears(3);
+    }
+
+    private static int accounts(int rows) {
+        return Math.max(rows / ROWS_PER_ACCOUNT, 1);
+    }
+
+    private static synchronized Path file(String name, int rows, long seed) {
+        Path directory = Paths.get(System.getProperty("benchmark.data.dir", "target/benchmark-data"));
+        Path path = directory.resolve(name + "-" + rows + ".csv");
+        if (Files.isRegularFile(path)) {
+            return path;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path temporary = directory.resolve(path.getFileName() + ".tmp");
+            write(temporary, rows, seed);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not generate " + path, e);
+        }
+    }
+
+    private static void write(Path path, int rows, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int accounts = accounts(rows);
+        long startSecond = START.toEpochSecond(ZoneOffset.UTC);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            StringBuilder line = new StringBuilder(64);
+            for (int row = 0; row < rows; row++) {
+                long epochSecond = startSecond + random.nextLong(SPAN_SECONDS);
+                line.setLength(0);
+                line.append(100_000_000 + random.nextInt(900_000_000)).append(',')
+                        .append(10_000 + random.nextInt(90_000)).append(',')
+                        .append(FIRST_ACCOUNT_ID + random.nextInt(accounts)).append(',')
+                        .append(1 + random.nextInt(999_999)).append('.').append(random.nextInt(100)).append(',')
+                        .append(DATE_TIME.format(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC)))
+                        .append('\n');
+                writer.append(line);
+            }
+        }
+    }
+}
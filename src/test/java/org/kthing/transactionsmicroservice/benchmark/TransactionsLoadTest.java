@@ -0,0 +1,256 @@
+package org.kthing.transactionsmicroservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.kthing.transactionsmicroservice.TransactionsMicroserviceApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * End-to-end load test of {@code GET /api/transactions}: boots the application on a random port
+ * against {@link BenchmarkData} files once per configuration, drives a weighted mix of unfiltered,
+ * account, date-range and deep-pagination requests from concurrent clients, and prints throughput and
+ * latency percentiles per configuration and request kind. Skipped unless {@code -Dloadtest.enabled=true}:
+ * <pre>
+ * mvn test -Dtest=TransactionsLoadTest -Dloadtest.enabled=true \
+ *     -Dloadtest.configs="transaction.storage.mode=csv;transaction.storage.mode=memory,transaction.page.size=100"
+ * </pre>
+ * Configurations are separated by {@code ;}, their properties by {@code ,}. Other settings, with
+ * their defaults: {@code loadtest.rows=1000000}, {@code loadtest.clients=32},
+ * {@code loadtest.warmup-seconds=10}, {@code loadtest.duration-seconds=30},
+ * {@code loadtest.mix=unfiltered=40,account=30,date-range=20,deep=10} (relative weights) and
+ * {@code loadtest.deep-pages=100} (how far the deep pages are from the first one).
+ *
+ * <p>Clients send their next request as soon as the previous one is answered, so latencies are those
+ * of a saturated server and throughput is the most it sustains with that many clients.
+ */
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+class TransactionsLoadTest {
+
+    private static final String BASE_CONFIGURATION = "transaction.storage.mode=csv;transaction.storage.mode=memory";
+    private static final String BASE_MIX = "unfiltered=40,account=30,date-range=20,deep=10";
+
+    private final int rows = Integer.getInteger("loadtest.rows", 1_000_000);
+    private final int clients = Integer.getInteger("loadtest.clients", 32);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 30);
+    private final int deepPages = Integer.getInteger("loadtest.deep-pages", 100);
+    private final Map<RequestKind, Integer> mix = parseMix(System.getProperty("loadtest.mix", BASE_MIX));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    enum RequestKind {
+        UNFILTERED, ACCOUNT, DATE_RANGE, DEEP;
+
+        static RequestKind of(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    @Test
+    void loadTest() throws Exception {
+        String incomes = BenchmarkData.incomes(rows).toAbsolutePath().toString();
+        String outcomes = BenchmarkData.outcomes(rows).toAbsolutePath().toString();
+
+        List<String> report = new ArrayList<>();
+        report.add(String.format(Locale.ROOT, "%-60s %-11s %9s %7s %9s %9s %9s %9s %9s",
+                "configuration", "kind", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        long errors = 0;
+        for (String configuration : System.getProperty("loadtest.configs", BASE_CONFIGURATION).split(";")) {
+            Result result = run(configuration.trim(), incomes, outcomes);
+            errors += result.errors;
+            report.add(line(configuration, "all", result.all(), result.errors, result.seconds));
+            for (Map.Entry<RequestKind, Histogram> kind : result.latencies.entrySet()) {
+                report.add(line("", kind.getKey().name().toLowerCase(Locale.ROOT).replace('_', '-'), kind.getValue(), 0, result.seconds));
+            }
+        }
+        System.out.printf(Locale.ROOT, "%n%d rows, %d clients, %d s per configuration%n", rows, clients, durationSeconds);
+        report.forEach(System.out::println);
+        assertEquals(0, errors, "requests that did not return 200 OK");
+    }
+
+    private Result run(String configuration, String incomes, String outcomes) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--transaction.incomes.file=" + incomes,
+                "--transaction.outcomes.file=" + outcomes,
+                "--transaction.snapshot.file=",
+                "--transaction.ingest.poll-interval-ms=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        if (!configuration.isEmpty()) {
+            for (String property : configuration.split(",")) {
+                arguments.add("--" + property.trim());
+            }
+        }
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TransactionsMicroserviceApplication.class)
+                .run(arguments.toArray(String[]::new))) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String baseUrl = "http://localhost:" + port + "/api/transactions";
+            List<String> deepTokens = pageTokens(baseUrl);
+
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            try {
+                drive(executor, baseUrl, deepTokens, warmupSeconds);
+                long started = System.nanoTime();
+                Result result = drive(executor, baseUrl, deepTokens, durationSeconds);
+                result.seconds = (System.nanoTime() - started) / 1e9;
+                return result;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /** Tokens of the unfiltered pages from half of {@code loadtest.deep-pages} on. */
+    private List<String> pageTokens(String baseUrl) throws IOException, InterruptedException {
+        List<String> tokens = new ArrayList<>();
+        String token = null;
+        for (int page = 1; page <= deepPages; page++) {
+            String url = token == null ? baseUrl : baseUrl + "?pageToken=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(url)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode(), response.body());
+            JsonNode body = objectMapper.readTree(response.body());
+            if (!body.path("hasMore").asBoolean()) {
+                break;
+            }
+            token = body.path("nextPageToken").asText();
+            if (page >= deepPages / 2) {
+                tokens.add(token);
+            }
+        }
+        assertFalse(tokens.isEmpty(), "too few rows for deep pages");
+        return tokens;
+    }
+
+    private Result drive(ExecutorService executor, String baseUrl, List<String> deepTokens, int seconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int client = 0; client < clients; client++) {
+            long seed = client;
+            futures.add(executor.submit(() -> client(baseUrl, deepTokens, deadline, new SplittableRandom(seed))));
+        }
+        Result total = new Result();
+        for (Future<Result> future : futures) {
+            total.add(future.get());
+        }
+        return total;
+    }
+
+    private Result client(String baseUrl, List<String> deepTokens, long deadline, SplittableRandom random) throws Exception {
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        Result result = new Result();
+        while (System.nanoTime() < deadline) {
+            RequestKind kind = pick(random.nextInt(totalWeight));
+            URI uri = URI.create(baseUrl + query(kind, deepTokens, random));
+            long started = System.nanoTime();
+            HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(uri).GET().build(),
+                    HttpResponse.BodyHandlers.discarding());
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+            result.latencies.computeIfAbsent(kind, ignored -> new Histogram(3)).recordValue(micros);
+            if (response.statusCode() != 200) {
+                result.errors++;
+            }
+        }
+        return result;
+    }
+
+    private RequestKind pick(int weight) {
+        for (Map.Entry<RequestKind, Integer> entry : mix.entrySet()) {
+            weight -= entry.getValue();
+            if (weight < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private String query(RequestKind kind, List<String> deepTokens, SplittableRandom random) {
+        switch (kind) {
+            case ACCOUNT:
+                return "?accountId=" + BenchmarkData.accountId(rows, random);
+            case DATE_RANGE:
+                // a month within the five generated years
+                LocalDateTime from = BenchmarkData.startDate().plusMonths(random.nextInt(59));
+                return "?fromDate=" + from + "&toDate=" + from.plusMonths(1);
+            case DEEP:
+                String token = deepTokens.get(random.nextInt(deepTokens.size()));
+                return "?pageToken=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
+            default:
+                return "";
+        }
+    }
+
+    private static Map<RequestKind, Integer> parseMix(String mix) {
+        Map<RequestKind, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(RequestKind.of(parts[0]), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix has no positive weight: " + mix);
+        }
+        return weights;
+    }
+
+    private static String line(String configuration, String kind, Histogram latencies, long errors, double seconds) {
+        return String.format(Locale.ROOT, "%-60s %-11s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f",
+                configuration, kind, latencies.getTotalCount(), errors, latencies.getTotalCount() / seconds,
+                latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxValue() / 1000.0);
+    }
+
+    private static final class Result {
+        final Map<RequestKind, Histogram> latencies = new EnumMap<>(RequestKind.class);
+        long errors;
+        double seconds;
+
+        void add(Result other) {
+            other.latencies.forEach((kind, histogram) -> latencies.computeIfAbsent(kind, ignored -> new Histogram(3)).add(histogram));
+            errors += other.errors;
+        }
+
+        Histogram all() {
+            Histogram all = new Histogram(3);
+            latencies.values().forEach(all::add);
+            return all;
+        }
+    }
+}
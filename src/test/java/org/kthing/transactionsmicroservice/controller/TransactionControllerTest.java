@@ -4,13 +4,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.kthing.transactionsmicroservice.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
+import org.kthing.transactionsmicroservice.service.TransactionExport;
 import org.kthing.transactionsmicroservice.service.TransactionService;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.math.BigDecimal;
@@ -20,10 +26,18 @@ import java.util.List;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,6 +46,10 @@ class TransactionControllerTest {
     private MockMvc mockMvc;
     @Mock
     private TransactionService transactionService;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     @InjectMocks
     private TransactionController transactionController;
     @BeforeEach
@@ -148,4 +166,62 @@ class TransactionControllerTest {
                 .andExpect(jsonPath("$.hasMore", is(true)))
                 .andExpect(jsonPath("$.nextPageToken", is("10:5")));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetTransactions_NotModifiedForCurrentETag() throws Exception {
+        when(transactionService.dataVersion()).thenReturn(0x2aL);
+
+        mockMvc.perform(get("/api/transactions").header("If-None-Match", "\"2a\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"2a\""))
+                .andExpect(header().string("Vary", "Accept"));
+        verify(transactionService, never()).getTransactions(any(), any(), any(), any());
+    }
+
+    @Test
+    void testExportTransactions_StreamsNdjsonAndCsv() throws Exception {
+        List<Transaction> transactions = List.of(
+                Transaction.builder()
+                        .transactionId("123456789")
+                        .customerId("10001")
+                        .accountId("1000001")
+                        .amount(new BigDecimal("500.00"))
+                        .dateTime(LocalDateTime.parse("2023-01-01T10:00:00"))
+                        .type(Transaction.TransactionType.INCOME)
+                        .build(),
+                Transaction.builder()
+                        .transactionId("223456789")
+                        .customerId("10001")
+                        .accountId("1000001")
+                        .amount(new BigDecimal("100.5"))
+                        .dateTime(LocalDateTime.parse("2023-01-01T15:00:00"))
+                        .type(Transaction.TransactionType.OUTCOME)
+                        .build());
+        TransactionExport export = mock(TransactionExport.class);
+        when(export.writeTo(any())).thenAnswer(invocation -> {
+            invocation.getArgument(0, TransactionExport.BatchWriter.class).write(transactions);
+            return 2L;
+        });
+        when(transactionService.exportTransactions(eq("1000001"), eq(null), eq(null))).thenReturn(export);
+
+        MvcResult ndjson = mockMvc.perform(get("/api/transactions/export").param("accountId", "1000001"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult csv = mockMvc.perform(get("/api/transactions/export").param("accountId", "1000001").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"transactionId\":\"123456789\",\"customerId\":\"10001\",\"accountId\":\"1000001\",\"amount\":500.00,\"dateTime\":\"2023-01-01T10:00:00\",\"type\":\"INCOME\"}\n"
+                        + "{\"transactionId\":\"223456789\",\"customerId\":\"10001\",\"accountId\":\"1000001\",\"amount\":100.5,\"dateTime\":\"2023-01-01T15:00:00\",\"type\":\"OUTCOME\"}\n"));
+        mockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv"))
+                .andExpect(content().string("TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME,TYPE\n"
+                        + "123456789,10001,1000001,500.00,2023-01-01T10:00:00,INCOME\n"
+                        + "223456789,10001,1000001,100.5,2023-01-01T15:00:00,OUTCOME\n"));
+    }
+}
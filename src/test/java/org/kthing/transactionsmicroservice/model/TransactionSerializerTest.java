@@ -0,0 +1,76 @@
+package org.kthing.transactionsmicroservice.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransactionSerializerTest {
+
+    private static final List<Transaction> TRANSACTIONS = List.of(
+            transaction("123456789", "500.00", "2023-01-01T10:00:00", Transaction.TransactionType.INCOME),
+            transaction("223456789", "0.5", "2023-12-31T23:59:59", Transaction.TransactionType.OUTCOME),
+            transaction("1", "0.00000001", "0999-01-02T03:04:05", Transaction.TransactionType.INCOME),
+            transaction("2", "12345678901234567890.123", "2024-02-29T00:00:00.250", Transaction.TransactionType.OUTCOME),
+            transaction("3", "1E+3", "+10000-01-01T00:00:00", Transaction.TransactionType.INCOME),
+            new Transaction(null, null, null, null, null, null));
+
+    @Test
+    void testSerialize_SameJsonAsBeanSerialization() throws Exception {
+        for (boolean timestamps : new boolean[]{false, true}) {
+            ObjectMapper tuned = JsonMapper.builder()
+                    .addModule(new JavaTimeModule())
+                    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, timestamps)
+                    .build();
+            // without annotations, so Transaction goes through the bean serializer
+            ObjectMapper bean = JsonMapper.builder()
+                    .addModule(new JavaTimeModule())
+                    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, timestamps)
+                    .disable(MapperFeature.USE_ANNOTATIONS)
+                    .build();
+            TransactionPageResponse page = new TransactionPageResponse(TRANSACTIONS, true, "token");
+
+            assertEquals(bean.writeValueAsString(page), tuned.writeValueAsString(page));
+            for (Transaction transaction : TRANSACTIONS) {
+                assertEquals(bean.writeValueAsString(transaction), tuned.writeValueAsString(transaction));
+            }
+        }
+    }
+
+    @Test
+    void testSerialize_CborHoldsTheSameValuesAsJson() throws Exception {
+        // CBOR keeps amounts as decimal fractions, so JSON is read back as decimals too
+        ObjectMapper json = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory()).registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        TransactionPageResponse page = new TransactionPageResponse(TRANSACTIONS.subList(0, 3), false, null);
+
+        byte[] encoded = cbor.writeValueAsBytes(page);
+
+        assertEquals(json.readTree(json.writeValueAsBytes(page)), cbor.readTree(encoded));
+    }
+
+    private static Transaction transaction(String id, String amount, String dateTime, Transaction.TransactionType type) {
+        return Transaction.builder()
+                .transactionId(id)
+                .customerId("10001")
+                .accountId("1000001")
+                .amount(new BigDecimal(amount))
+                .dateTime(LocalDateTime.parse(dateTime))
+                .type(type)
+                .build();
+    }
+}
@@ -1,10 +1,18 @@
 package org.kthing.transactionsmicroservice.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.BatchTransactionsRequest;
+import org.kthing.transactionsmicroservice.model.BatchTransactionsResponse;
 import org.kthing.transactionsmicroservice.model.Transaction;
 import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
+import org.kthing.transactionsmicroservice.store.CsvTransactionStore;
+import org.kthing.transactionsmicroservice.store.TransactionFilter;
+import org.kthing.transactionsmicroservice.store.TransactionStore;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -14,10 +22,27 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 
 @SpringBootTest
@@ -62,9 +87,13 @@ class TransactionServiceTest {
                 new FileOutputStream(outcomesFile), StandardCharsets.UTF_8))) {
             writer.write(TEST_OUTCOMES_CSV);
         }
-        ReflectionTestUtils.setField(transactionService, "incomesFilePath", incomesFile.getAbsolutePath(), String.class);
-        ReflectionTestUtils.setField(transactionService, "outcomesFilePath", outcomesFile.getAbsolutePath(), String.class);
+        CsvTransactionStore transactionStore = new CsvTransactionStore();
+        ReflectionTestUtils.setField(transactionStore, "incomesFilePath", incomesFile.getAbsolutePath(), String.class);
+        ReflectionTestUtils.setField(transactionStore, "outcomesFilePath", outcomesFile.getAbsolutePath(), String.class);
+        ReflectionTestUtils.setField(transactionService, "transactionStore", transactionStore);
         ReflectionTestUtils.setField(transactionService, "pageSize", 20, int.class);
+        ReflectionTestUtils.setField(transactionService, "largestMaxLimit", 1000, int.class);
+        ReflectionTestUtils.setField(transactionService, "batchMaxAccounts", 100, int.class);
     }
 
     @Test
@@ -96,7 +125,7 @@ class TransactionServiceTest {
         assertAll(
             () -> assertNotNull(response),
             () -> assertEquals(4, response.getTransactions().size()),
-            () -> assertTrue(response.isHasMore())
+            () -> assertFalse(response.isHasMore())
         );
         response.getTransactions().forEach(transaction -> 
             assertEquals(accountId, transaction.getAccountId())
@@ -113,7 +142,7 @@ class TransactionServiceTest {
         assertAll(
             () -> assertNotNull(response),
             () -> assertEquals(2, response.getTransactions().size()),
-            () -> assertTrue(response.isHasMore())
+            () -> assertFalse(response.isHasMore())
         );
         response.getTransactions().forEach(transaction -> {
             assertTrue(transaction.getDateTime().isAfter(fromDate) || 
@@ -122,4 +151,410 @@ class TransactionServiceTest {
                       transaction.getDateTime().isEqual(toDate));
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetTransactions_PageTokenResumesAfterLastReturnedTransaction() {
+        ReflectionTestUtils.setField(transactionService, "pageSize", 1, int.class);
+
+        TransactionPageResponse first = transactionService.getTransactions(null, null, null, null);
+        TransactionPageResponse second = transactionService.getTransactions(null, null, null, first.getNextPageToken());
+
+        assertAll(
+            () -> assertTrue(first.isHasMore()),
+            () -> assertNotNull(first.getNextPageToken()),
+            () -> assertEquals(1, second.getTransactions().size()),
+            () -> assertEquals("223456789", second.getTransactions().get(0).getTransactionId())
+        );
+    }
+
+    @Test
+    void testGetTransactions_PageTokenStaysValidAfterAppend() throws IOException {
+        ReflectionTestUtils.setField(transactionService, "pageSize", 1, int.class);
+        TransactionPageResponse first = transactionService.getTransactions(null, null, null, null);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(incomesFile, true), StandardCharsets.UTF_8))) {
+            writer.write("123456792,10003,1000003,10.00,2023-01-01T12:00:00\n");
+        }
+        TransactionPageResponse second = transactionService.getTransactions(null, null, null, first.getNextPageToken());
+
+        assertAll(
+            () -> assertEquals("123456789", first.getTransactions().get(0).getTransactionId()),
+            () -> assertEquals("123456792", second.getTransactions().get(0).getTransactionId())
+        );
+    }
+
+    @Test
+    void testGetTransactions_PageTokenRejectedAfterRewrite() throws IOException {
+        ReflectionTestUtils.setField(transactionService, "pageSize", 1, int.class);
+        TransactionPageResponse first = transactionService.getTransactions(null, null, null, null);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(incomesFile), StandardCharsets.UTF_8))) {
+            writer.write("TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n"
+                    + "123456792,10003,1000003,10.00,2023-01-04T10:00:00\n");
+        }
+
+        assertThrows(TransactionServiceException.class,
+                () -> transactionService.getTransactions(null, null, null, first.getNextPageToken()));
+    }
+
+    @Test
+    void testGetTransactions_InvalidPageToken() {
+        assertThrows(TransactionServiceException.class,
+                () -> transactionService.getTransactions(null, null, null, "5:3"));
+    }
+
+    @Test
+    void testGetTransactions_InvalidAccountIdRejected() {
+        assertAll(
+            () -> assertThrows(TransactionServiceException.class,
+                    () -> transactionService.getTransactions("10000a1", null, null, null)),
+            () -> assertThrows(TransactionServiceException.class,
+                    () -> transactionService.getTransactions("1000000000000000001", null, null, null))
+        );
+    }
+
+    @Test
+    void testGetTransactions_KeepsIdsAsWrittenInTheFile() throws IOException {
+        Files.writeString(incomesFile.toPath(), "000123456792,0010003,0001000001,5.00,2023-01-04T10:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        // the filter compares IDs by value, the page returns them as written
+        Transaction transaction = transactionService.getTransactions("1000001",
+                LocalDateTime.parse("2023-01-04T00:00:00"), null, null).getTransactions().get(0);
+
+        assertAll(
+            () -> assertEquals("000123456792", transaction.getTransactionId()),
+            () -> assertEquals("0010003", transaction.getCustomerId()),
+            () -> assertEquals("0001000001", transaction.getAccountId())
+        );
+    }
+
+    @Test
+    void testGetTransactions_HasMoreOnlyWhenMoreRecordsMatch() {
+        ReflectionTestUtils.setField(transactionService, "pageSize", 1, int.class);
+
+        TransactionPageResponse response = transactionService.getTransactions(
+                "1000002", null, LocalDateTime.parse("2023-01-02T12:00:00"), null);
+
+        assertAll(
+            () -> assertEquals(1, response.getTransactions().size()),
+            () -> assertFalse(response.isHasMore()),
+            () -> assertNull(response.getNextPageToken())
+        );
+    }
+
+    @Test
+    void testGetTransactions_PagesAreGloballyOrderedWithoutGapsOrDuplicates() {
+        List<String> expected = List.of("123456789", "223456789", "123456790", "223456790", "123456791", "223456791");
+
+        for (int size = 1; size <= expected.size(); size++) {
+            ReflectionTestUtils.setField(transactionService, "pageSize", size, int.class);
+            List<String> ids = new ArrayList<>();
+            String token = null;
+            do {
+                TransactionPageResponse page = transactionService.getTransactions(null, null, null, token);
+                page.getTransactions().forEach(transaction -> ids.add(transaction.getTransactionId()));
+                token = page.getNextPageToken();
+            } while (token != null);
+
+            assertEquals(expected, ids, "page size " + size);
+        }
+    }
+
+    @Test
+    void testGetTransactions_SeesAppendedRecords() throws IOException {
+        transactionService.getTransactions(null, null, null, null);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outcomesFile, true), StandardCharsets.UTF_8)) {
+            writer.write("223456792,10003,1000003,50.00,2023-01-02T12:00:00\n");
+        }
+
+        TransactionPageResponse response = transactionService.getTransactions("1000003", null, null, null);
+
+        assertEquals(1, response.getTransactions().size());
+        assertEquals("223456792", response.getTransactions().get(0).getTransactionId());
+    }
+
+    @Test
+    void testGetTransactions_CachesPagesUntilDataChanges() throws IOException {
+        TransactionPageCache pageCache = new TransactionPageCache(1 << 20);
+        ReflectionTestUtils.setField(transactionService, "pageCache", pageCache);
+
+        TransactionPageResponse first = transactionService.getTransactions(null, null, null, null);
+        TransactionPageResponse again = transactionService.getTransactions("", null, null, "");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outcomesFile, true), StandardCharsets.UTF_8)) {
+            writer.write("223456792,10003,1000003,50.00,2023-01-02T12:00:00\n");
+        }
+        TransactionPageResponse changed = transactionService.getTransactions(null, null, null, null);
+
+        assertAll(
+            () -> assertSame(first, again),
+            () -> assertEquals(7, changed.getTransactions().size()),
+            () -> assertEquals(1, pageCache.stats().getHits()),
+            () -> assertEquals(2, pageCache.stats().getMisses()),
+            () -> assertEquals(1, pageCache.stats().getEntries())
+        );
+    }
+
+    @Test
+    void testGetTransactions_EvictsLeastRecentlyUsedPages() {
+        // room for the page of all six transactions, but not for it and another page
+        TransactionPageCache pageCache = new TransactionPageCache(
+                TransactionPageCache.PAGE_BYTES + 7 * TransactionPageCache.TRANSACTION_BYTES);
+        ReflectionTestUtils.setField(transactionService, "pageCache", pageCache);
+
+        transactionService.getTransactions(null, null, null, null);
+        transactionService.getTransactions("1000002", null, null, null);
+        transactionService.getTransactions("1000002", null, null, null);
+
+        assertAll(
+            () -> assertEquals(1, pageCache.stats().getEvictions()),
+            () -> assertEquals(1, pageCache.stats().getHits()),
+            () -> assertEquals(TransactionPageCache.PAGE_BYTES + 2 * TransactionPageCache.TRANSACTION_BYTES,
+                    pageCache.stats().getBytes())
+        );
+    }
+
+    @Test
+    void testPageCache_ConcurrentIdenticalRequestsShareOneRead() throws Exception {
+        TransactionPageResponse page = TransactionPageResponse.builder().transactions(List.of()).build();
+        TransactionServiceException failure = new TransactionServiceException("read failed");
+
+        for (boolean fails : new boolean[]{false, true}) {
+            // caching disabled, so only coalescing can share the read
+            TransactionPageCache pageCache = new TransactionPageCache(0);
+            AtomicInteger reads = new AtomicInteger();
+            CountDownLatch reading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Supplier<TransactionPageResponse> loader = () -> {
+                reads.incrementAndGet();
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (fails) {
+                    throw failure;
+                }
+                return page;
+            };
+            TransactionFilter filter = TransactionFilter.of("1000001", null, null);
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<TransactionPageResponse>> requests = new ArrayList<>();
+                requests.add(executor.submit(() -> pageCache.get(filter, null, 0, loader)));
+                assertTrue(reading.await(10, TimeUnit.SECONDS));
+                for (int i = 0; i < 3; i++) {
+                    requests.add(executor.submit(() -> pageCache.get(filter, "", 0, loader)));
+                }
+                while (pageCache.stats().getCoalesced() < 3) {
+                    Thread.sleep(1);
+                }
+                release.countDown();
+
+                for (Future<TransactionPageResponse> request : requests) {
+                    if (fails) {
+                        ExecutionException thrown = assertThrows(ExecutionException.class, request::get);
+                        assertSame(failure, thrown.getCause());
+                    } else {
+                        assertSame(page, request.get());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(1, reads.get());
+            assertEquals(1, pageCache.stats().getMisses());
+        }
+    }
+
+    @Test
+    void testPageCache_WaiterReadsThePageItselfAfterTheWaitTimeout() throws Exception {
+        TransactionPageResponse slow = TransactionPageResponse.builder().transactions(List.of()).build();
+        TransactionPageResponse own = TransactionPageResponse.builder().transactions(List.of()).build();
+        TransactionPageCache pageCache = new TransactionPageCache(0, 10);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionFilter filter = TransactionFilter.of("1000001", null, null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<TransactionPageResponse> first = executor.submit(() -> pageCache.get(filter, null, 0, () -> {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return slow;
+            }));
+            assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+            TransactionPageResponse waited = pageCache.get(filter, null, 0, () -> own);
+            release.countDown();
+
+            assertAll(
+                () -> assertSame(own, waited),
+                () -> assertSame(slow, first.get()),
+                () -> assertEquals(1, pageCache.stats().getTimedOut()),
+                () -> assertEquals(2, pageCache.stats().getMisses())
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testPageCache_InterruptedWaiterKeepsItsInterruptFlag() throws Exception {
+        TransactionPageCache pageCache = new TransactionPageCache(0);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionFilter filter = TransactionFilter.of("1000001", null, null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> pageCache.get(filter, null, 0, () -> {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return TransactionPageResponse.builder().transactions(List.of()).build();
+            }));
+            assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+            Thread.currentThread().interrupt();
+            assertThrows(TransactionServiceException.class, () -> pageCache.get(filter, null, 0, () -> null));
+            assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGetTransactions_ConcurrentRequestsResolveRunsOnce() throws Exception {
+        TransactionPageCache pageCache = new TransactionPageCache(0);
+        ReflectionTestUtils.setField(transactionService, "pageCache", pageCache);
+        TransactionStore store = spy((TransactionStore) ReflectionTestUtils.getField(transactionService, "transactionStore"));
+        ReflectionTestUtils.setField(transactionService, "transactionStore", store);
+        CountDownLatch resolving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            resolving.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(store).runs(any());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TransactionPageResponse>> requests = new ArrayList<>();
+            requests.add(executor.submit(() -> transactionService.getTransactions("1000001", null, null, null)));
+            assertTrue(resolving.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                requests.add(executor.submit(() -> transactionService.getTransactions("1000001", null, null, null)));
+            }
+            while (pageCache.stats().getCoalesced() < 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<TransactionPageResponse> request : requests) {
+                assertEquals(4, request.get().getTransactions().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(store, times(1)).runs(any());
+    }
+
+    @Test
+    void testGetTransactions_RecordsPageMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(transactionService, "metrics", new TransactionMetrics(registry, TransactionPageCache.DISABLED));
+        long bytesBefore = PagedCsvReader.bytesRead();
+
+        transactionService.getTransactions("1000002", null, null, null);
+
+        assertAll(
+            () -> assertEquals(1, registry.get("transactions.page.stage").tag("stage", "materialize").timer().count()),
+            () -> assertEquals(2, registry.get("transactions.page.rows.returned").summary().totalAmount()),
+            // the csv store steps over the index entries of the other account
+            () -> assertEquals(6, registry.get("transactions.page.rows.scanned").summary().totalAmount()),
+            () -> assertEquals(3, registry.get("transactions.page.scan.amplification").summary().max()),
+            () -> assertEquals(0, registry.get("transactions.page.depth").summary().totalAmount()),
+            () -> assertTrue(PagedCsvReader.bytesRead() > bytesBefore)
+        );
+    }
+
+    @Test
+    void testGetTransactionsBatch_MatchesSingleAccountPages() {
+        ReflectionTestUtils.setField(transactionService, "pageSize", 1, int.class);
+        LocalDateTime noon = LocalDateTime.of(2023, 1, 1, 12, 0);
+        LocalDateTime midnight = LocalDateTime.of(2023, 1, 1, 0, 0);
+        BatchTransactionsResponse response = transactionService.getTransactionsBatch(BatchTransactionsRequest.builder()
+                .fromDate(noon)
+                .accounts(List.of(
+                        BatchTransactionsRequest.AccountQuery.builder().accountId("1000001").build(),
+                        BatchTransactionsRequest.AccountQuery.builder().accountId("1000002").fromDate(midnight).build(),
+                        BatchTransactionsRequest.AccountQuery.builder().accountId("1000003").build()))
+                .build());
+        TransactionPageResponse first = transactionService.getTransactions("1000001", noon, null, null);
+
+        String token = response.getAccounts().get("1000001").getNextPageToken();
+        BatchTransactionsResponse next = transactionService.getTransactionsBatch(BatchTransactionsRequest.builder()
+                .fromDate(noon)
+                .accounts(List.of(BatchTransactionsRequest.AccountQuery.builder().accountId("1000001").pageToken(token).build()))
+                .build());
+
+        assertAll(
+            () -> assertEquals(List.of("1000001", "1000002", "1000003"), new ArrayList<>(response.getAccounts().keySet())),
+            () -> assertEquals(first, response.getAccounts().get("1000001")),
+            () -> assertEquals("223456789", first.getTransactions().get(0).getTransactionId()),
+            () -> assertEquals(transactionService.getTransactions("1000002", midnight, null, null), response.getAccounts().get("1000002")),
+            () -> assertTrue(response.getAccounts().get("1000003").getTransactions().isEmpty()),
+            () -> assertFalse(response.getAccounts().get("1000003").isHasMore()),
+            () -> assertEquals(transactionService.getTransactions("1000001", noon, null, token), next.getAccounts().get("1000001")),
+            () -> assertThrows(TransactionServiceException.class, () -> transactionService.getTransactionsBatch(
+                    BatchTransactionsRequest.builder().accounts(List.of(
+                            BatchTransactionsRequest.AccountQuery.builder().accountId("1000001").build(),
+                            BatchTransactionsRequest.AccountQuery.builder().accountId("01000001").build())).build()))
+        );
+    }
+
+    @Test
+    void testGetLargestTransactions_LargestFirstWithinFilters() {
+        List<Transaction> largest = transactionService.getLargestTransactions("1000001", null, null, null, 3).getTransactions();
+        List<Transaction> outcomes = transactionService.getLargestTransactions(null,
+                LocalDateTime.of(2023, 1, 2, 0, 0), null, "OUTCOME", 10).getTransactions();
+
+        assertAll(
+            () -> assertEquals(List.of("123456791", "123456789", "223456791"),
+                    largest.stream().map(Transaction::getTransactionId).toList()),
+            () -> assertEquals(List.of("223456791", "223456790"),
+                    outcomes.stream().map(Transaction::getTransactionId).toList()),
+            () -> assertThrows(TransactionServiceException.class,
+                    () -> transactionService.getLargestTransactions(null, null, null, null, 1001))
+        );
+    }
+
+    @Test
+    void testExportTransactions_WritesAllMatchesInPageOrderBatchByBatch() throws IOException {
+        ReflectionTestUtils.setField(transactionService, "exportBatchSize", 4, int.class);
+        List<Integer> batchSizes = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+
+        long written = transactionService.exportTransactions(null, null, null).writeTo(batch -> {
+            batchSizes.add(batch.size());
+            batch.forEach(transaction -> ids.add(transaction.getTransactionId()));
+        });
+
+        assertEquals(6, written);
+        assertEquals(List.of(4, 2), batchSizes);
+        assertEquals(List.of("123456789", "223456789", "123456790", "223456790", "123456791", "223456791"), ids);
+    }
+}
@@ -0,0 +1,594 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.DuplicateTransaction;
+import org.kthing.transactionsmicroservice.model.DuplicateTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.LargestTransactionsResponse;
+import org.kthing.transactionsmicroservice.model.QuarantineResponse;
+import org.kthing.transactionsmicroservice.model.QuarantinedRecord;
+import org.kthing.transactionsmicroservice.model.Transaction;
+import org.kthing.transactionsmicroservice.model.TransactionPageResponse;
+import org.kthing.transactionsmicroservice.model.TransactionRollup;
+import org.kthing.transactionsmicroservice.model.TransactionRollupResponse;
+import org.kthing.transactionsmicroservice.service.TransactionService;
+import org.kthing.transactionsmicroservice.util.CsvFileVersion;
+import org.kthing.transactionsmicroservice.util.CsvQuarantine;
+import org.kthing.transactionsmicroservice.util.PagedCsvReader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+class ColumnarTransactionStoreTest {
+
+    private static final String TEST_INCOMES_CSV =
+            "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n" +
+                    "123456789,10001,1000001,500.00,2023-01-01T10:00:00\n" +
+                    "123456790,10002,1000002,750.5,2023-01-02T11:00:00\n" +
+                    "123456791,10001,1000001,1200.75,2023-01-03T12:00:00\n";
+
+    private static final String TEST_OUTCOMES_CSV =
+            "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n" +
+                    "223456789,10001,1000001,100.00,2023-01-01T15:00:00\n" +
+                    "223456790,10002,1000002,200.50,2023-01-02T16:00:00\n" +
+                    "223456791,10001,1000001,300.75,2023-01-03T17:00:00\n";
+
+    @TempDir
+    Path tempDir;
+
+    private TransactionService transactionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.writeString(tempDir.resolve("incomes.csv"), TEST_INCOMES_CSV, StandardCharsets.UTF_8);
+        Files.writeString(tempDir.resolve("outcomes.csv"), TEST_OUTCOMES_CSV, StandardCharsets.UTF_8);
+        transactionService = newService();
+    }
+
+    private TransactionService newService() {
+        return newService(newStore());
+    }
+
+    private ColumnarTransactionStore newStore() {
+        ColumnarTransactionStore store = new ColumnarTransactionStore();
+        ReflectionTestUtils.setField(store, "incomesFilePath", tempDir.resolve("incomes.csv").toString());
+        ReflectionTestUtils.setField(store, "outcomesFilePath", tempDir.resolve("outcomes.csv").toString());
+        ReflectionTestUtils.setField(store, "snapshotFilePath", tempDir.resolve("transactions.snapshot").toString());
+        store.load();
+        return store;
+    }
+
+    private static TransactionService newService(TransactionStore store) {
+        TransactionService service = new TransactionService();
+        ReflectionTestUtils.setField(service, "transactionStore", store);
+        ReflectionTestUtils.setField(service, "pageSize", 20);
+        ReflectionTestUtils.setField(service, "largestMaxLimit", 1000);
+        return service;
+    }
+
+    @Test
+    void testGetTransactions_MaterializesOriginalValues() {
+        TransactionPageResponse response = transactionService.getTransactions(null, null, null, null);
+
+        Transaction first = response.getTransactions().get(0);
+        Transaction income = response.getTransactions().stream()
+                .filter(transaction -> transaction.getTransactionId().equals("123456790"))
+                .findFirst().orElseThrow();
+        assertAll(
+            () -> assertEquals(6, response.getTransactions().size()),
+            () -> assertFalse(response.isHasMore()),
+            () -> assertEquals("123456789", first.getTransactionId()),
+            () -> assertEquals("10001", first.getCustomerId()),
+            () -> assertEquals(new BigDecimal("500.00"), first.getAmount()),
+            () -> assertEquals(LocalDateTime.parse("2023-01-01T10:00:00"), first.getDateTime()),
+            () -> assertEquals(Transaction.TransactionType.INCOME, first.getType()),
+            () -> assertEquals("750.5", income.getAmount().toPlainString())
+        );
+    }
+
+    @Test
+    void testGetTransactions_Filters() {
+        TransactionPageResponse byAccount = transactionService.getTransactions("1000002", null, null, null);
+        TransactionPageResponse byDate = transactionService.getTransactions(null,
+                LocalDateTime.parse("2023-01-03T00:00:00"), LocalDateTime.parse("2023-01-03T12:00:00"), null);
+
+        assertAll(
+            () -> assertEquals(2, byAccount.getTransactions().size()),
+            () -> assertTrue(byAccount.getTransactions().stream().allMatch(t -> t.getAccountId().equals("1000002"))),
+            () -> assertEquals(1, byDate.getTransactions().size()),
+            () -> assertEquals("123456791", byDate.getTransactions().get(0).getTransactionId())
+        );
+    }
+
+    @Test
+    void testGetTransactions_AccountIndexWithDateRange() {
+        TransactionPageResponse response = transactionService.getTransactions("1000001",
+                LocalDateTime.parse("2023-01-02T00:00:00"), null, null);
+        TransactionPageResponse unknown = transactionService.getTransactions("9999999", null, null, null);
+
+        assertAll(
+            () -> assertEquals(2, response.getTransactions().size()),
+            () -> assertEquals("123456791", response.getTransactions().get(0).getTransactionId()),
+            () -> assertEquals("223456791", response.getTransactions().get(1).getTransactionId()),
+            () -> assertFalse(response.isHasMore()),
+            () -> assertTrue(unknown.getTransactions().isEmpty()),
+            () -> assertFalse(unknown.isHasMore())
+        );
+    }
+
+    @Test
+    void testGetTransactions_PagesThroughAccountInTimeOrder() {
+        ReflectionTestUtils.setField(transactionService, "pageSize", 1);
+        List<String> ids = new ArrayList<>();
+        String token = null;
+        do {
+            TransactionPageResponse page = transactionService.getTransactions("1000001", null, null, token);
+            page.getTransactions().forEach(transaction -> ids.add(transaction.getTransactionId()));
+            token = page.getNextPageToken();
+        } while (token != null);
+
+        assertEquals(List.of("123456789", "223456789", "123456791", "223456791"), ids);
+    }
+
+    @Test
+    void testSnapshotReusedUntilCsvFileChanges() throws IOException {
+        Path incomes = tempDir.resolve("incomes.csv");
+        FileTime modified = Files.getLastModifiedTime(incomes);
+
+        // same size and modification time: the snapshot still counts as current and is served as it was
+        Files.writeString(incomes, TEST_INCOMES_CSV.replace("500.00", "999.00"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(incomes, modified);
+        Transaction fromSnapshot = newService().getTransactions(null, null, null, null).getTransactions().get(0);
+
+        Files.writeString(incomes, "323456789,10003,1000003,5.00,2023-01-04T10:00:00\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        TransactionPageResponse rebuilt = newService().getTransactions(null, null, null, null);
+
+        assertAll(
+            () -> assertEquals(new BigDecimal("500.00"), fromSnapshot.getAmount()),
+            () -> assertEquals(7, rebuilt.getTransactions().size()),
+            () -> assertEquals(new BigDecimal("999.00"), rebuilt.getTransactions().get(0).getAmount()),
+            () -> assertTrue(TransactionSnapshot.read(tempDir.resolve("transactions.snapshot"))
+                    .matches(TransactionSource.parse("", incomes.toString(), tempDir.resolve("outcomes.csv").toString()),
+                            new CsvFileVersion[]{PagedCsvReader.fileVersion(incomes.toString()),
+                            PagedCsvReader.fileVersion(tempDir.resolve("outcomes.csv").toString())}))
+        );
+    }
+
+    @Test
+    void testSnapshotOfOtherSourcesIsRebuilt() {
+        // the same files, and so the same versions, with their types swapped
+        ColumnarTransactionStore swapped = new ColumnarTransactionStore();
+        ReflectionTestUtils.setField(swapped, "sourceList", "OUTCOME:" + tempDir.resolve("incomes.csv")
+                + ",INCOME:" + tempDir.resolve("outcomes.csv"));
+        ReflectionTestUtils.setField(swapped, "snapshotFilePath", tempDir.resolve("transactions.snapshot").toString());
+        swapped.load();
+
+        Transaction first = newService(swapped).getTransactions(null, null, null, null).getTransactions().get(0);
+
+        assertAll(
+            () -> assertEquals("123456789", first.getTransactionId()),
+            () -> assertEquals(Transaction.TransactionType.OUTCOME, first.getType())
+        );
+    }
+
+    @Test
+    void testRefreshIngestsAppendedRecords() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        TransactionService service = newService(store);
+        Files.writeString(tempDir.resolve("incomes.csv"), "123456792,10001,1000001,20.00,2023-01-01T12:00:00\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Files.writeString(tempDir.resolve("outcomes.csv"), "223456792,10003,1000001,50.00,2023-01-02T12:00:00\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        int beforeRefresh = service.getTransactions(null, null, null, null).getTransactions().size();
+        store.refresh();
+        List<String> all = transactionIds(service.getTransactions(null, null, null, null));
+        List<String> account = transactionIds(service.getTransactions("1000001", null, null, null));
+
+        assertAll(
+            () -> assertEquals(6, beforeRefresh),
+            () -> assertEquals(List.of("123456789", "123456792", "223456789", "123456790", "223456792", "223456790", "123456791", "223456791"), all),
+            () -> assertEquals(List.of("123456789", "123456792", "223456789", "223456792", "123456791", "223456791"), account)
+        );
+    }
+
+    @Test
+    void testRefresh_ManyAppendsServeWhatAFullLoadServes() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        TransactionService service = newService(store);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 40; i++) {
+            // amounts of one to three decimal places, so the rollups of the appends have different scales
+            String record = (323456789 + i) + ",10004," + (1000001 + random.nextInt(3)) + "," + random.nextInt(1000)
+                    + "." + random.nextInt(1000) + ",2023-01-0" + (1 + random.nextInt(4)) + "T1" + random.nextInt(10) + ":00:00\n";
+            Files.writeString(tempDir.resolve(i % 3 == 0 ? "outcomes.csv" : "incomes.csv"), record,
+                    StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            store.refresh();
+        }
+        TransactionService loaded = newService(duplicatesStore(true, "report"));
+
+        assertAll(
+            // one run per segment and source; appends are merged so that the segments stay few
+            () -> assertTrue(store.runs(TransactionFilter.of(null, null, null)).size() > 2),
+            () -> assertTrue(store.runs(TransactionFilter.of(null, null, null)).size() <= 2 * 6),
+            () -> assertEquals(pagedIds(loaded, null), pagedIds(service, null)),
+            () -> assertEquals(pagedIds(loaded, "1000002"), pagedIds(service, "1000002")),
+            () -> assertEquals(loaded.getRollups(null, null, null, "day"), service.getRollups(null, null, null, "day")),
+            () -> assertEquals(loaded.getRollups("1000003", null, null, "hour"), service.getRollups("1000003", null, null, "hour"))
+        );
+    }
+
+    @Test
+    void testRefreshReloadsRewrittenFile() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        TransactionService service = newService(store);
+        Files.writeString(tempDir.resolve("incomes.csv"),
+                "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n323456789,10003,1000003,5.00,2023-01-04T10:00:00\n",
+                StandardCharsets.UTF_8);
+
+        store.refresh();
+
+        assertEquals(List.of("223456789", "223456790", "223456791", "323456789"),
+                transactionIds(service.getTransactions(null, null, null, null)));
+    }
+
+    @Test
+    void testRefresh_UnexpectedFailureLeavesNoRowsBehind() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        TransactionService service = newService(store);
+        TransactionDuplicates duplicates = (TransactionDuplicates) ReflectionTestUtils.getField(store, "duplicates");
+        TransactionDuplicates failing = spy(duplicates);
+        TransactionDuplicates.Batch batch = mock(TransactionDuplicates.Batch.class);
+        when(batch.add(anyLong(), any())).thenThrow(new IllegalStateException("Batch is full"));
+        doReturn(batch).when(failing).batch(anyInt());
+        ReflectionTestUtils.setField(store, "duplicates", failing);
+        Files.writeString(tempDir.resolve("incomes.csv"), "123456792,10001,1000001,20.00,2023-01-01T12:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        store.refresh();
+        int afterFailure = pagedIds(service, null).size();
+        ReflectionTestUtils.setField(store, "duplicates", duplicates);
+        Files.writeString(tempDir.resolve("incomes.csv"), "123456793,10001,1000001,30.00,2023-01-01T13:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        store.refresh();
+
+        assertAll(
+            () -> assertEquals(6, afterFailure),
+            // the first append is read again from the last published cursor, and only once
+            () -> assertEquals(8, pagedIds(service, null).size())
+        );
+    }
+
+    @Test
+    void testPageToken_ValidAcrossAppendsAndRestarts() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        TransactionService service = newService(store);
+        ReflectionTestUtils.setField(service, "pageSize", 2);
+        String token = service.getTransactions(null, null, null, null).getNextPageToken();
+        // the first sorts before the token's key, the second after the income it shares its timestamp with
+        Files.writeString(tempDir.resolve("incomes.csv"), "123456792,10001,1000001,20.00,2023-01-01T15:00:00\n"
+                + "123456793,10001,1000001,30.00,2023-01-02T11:00:00\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        store.refresh();
+        List<String> afterAppend = transactionIds(service.getTransactions(null, null, null, token));
+        TransactionService restarted = newService(newStore());
+        ReflectionTestUtils.setField(restarted, "pageSize", 2);
+        List<String> afterRestart = transactionIds(restarted.getTransactions(null, null, null, token));
+        Files.writeString(tempDir.resolve("incomes.csv"), TEST_INCOMES_CSV, StandardCharsets.UTF_8);
+        store.refresh();
+
+        assertAll(
+            () -> assertEquals(List.of("123456790", "123456793"), afterAppend),
+            () -> assertEquals(afterAppend, afterRestart),
+            () -> assertThrows(TransactionServiceException.class, () -> service.getTransactions(null, null, null, token))
+        );
+    }
+
+    @Test
+    void testGetRollups_CombinesHourBucketsExactly() {
+        TransactionRollupResponse month = transactionService.getRollups(null, null, null, "month");
+        TransactionRollupResponse days = transactionService.getRollups("1000001",
+                LocalDateTime.of(2023, 1, 1, 10, 30), LocalDateTime.of(2023, 1, 3, 12, 59), "day");
+
+        TransactionRollup firstDay = days.getBuckets().get(0);
+        assertAll(
+            () -> assertEquals(1, month.getBuckets().size()),
+            () -> assertEquals(new BigDecimal("2451.25"), month.getTotals().getTotalIncome()),
+            () -> assertEquals(new BigDecimal("601.25"), month.getTotals().getTotalOutcome()),
+            () -> assertEquals(new BigDecimal("1850.00"), month.getTotals().getNet()),
+            () -> assertEquals(LocalDateTime.of(2023, 2, 1, 0, 0), month.getBuckets().get(0).getPeriodEnd()),
+            () -> assertEquals(2, days.getBuckets().size()),
+            () -> assertEquals(LocalDateTime.of(2023, 1, 1, 0, 0), firstDay.getPeriodStart()),
+            () -> assertEquals(new BigDecimal("400.00"), firstDay.getNet()),
+            () -> assertEquals(new BigDecimal("100.00"), firstDay.getMinAmount()),
+            () -> assertEquals(new BigDecimal("500.00"), firstDay.getMaxAmount()),
+            // the range is widened to whole hours: 12:00 is in, the outcome at 17:00 is not
+            () -> assertEquals(3, days.getTotals().getCount()),
+            () -> assertEquals(new BigDecimal("1700.75"), days.getTotals().getTotalIncome()),
+            () -> assertEquals(LocalDateTime.of(2023, 1, 1, 10, 0), days.getTotals().getPeriodStart()),
+            () -> assertEquals(LocalDateTime.of(2023, 1, 3, 13, 0), days.getTotals().getPeriodEnd())
+        );
+    }
+
+    @Test
+    void testGetRollups_SeesAppendedRecords() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        TransactionService service = newService(store);
+        Files.writeString(tempDir.resolve("outcomes.csv"), "223456792,10001,1000001,0.125,2023-01-04T10:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        store.refresh();
+        TransactionRollupResponse response = service.getRollups("1000001", null, null, "hour");
+
+        assertAll(
+            () -> assertEquals(5, response.getBuckets().size()),
+            () -> assertEquals(new BigDecimal("400.875"), response.getTotals().getTotalOutcome()),
+            () -> assertNull(service.getRollups("9999999", null, null, "day").getTotals())
+        );
+    }
+
+    @Test
+    void testGetRollups_KeepsLargeTotalsNextToAHighScaleAmount() throws IOException {
+        ColumnarTransactionStore appendedTo = newStore();
+        StringBuilder records = new StringBuilder("323456789,10005,1000005,0.00000001,2023-01-01T10:00:00\n");
+        for (int i = 0; i < 20; i++) {
+            // at the 8 decimal places of the amount above, these add up to more than a long holds
+            records.append(323456790 + i).append(",10006,1000006,5000000000.00,2023-01-0").append(1 + i % 3).append("T12:00:00\n");
+        }
+        Files.writeString(tempDir.resolve("incomes.csv"), records, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        appendedTo.refresh();
+        TransactionService service = newService(newStore());
+
+        TransactionRollupResponse all = service.getRollups(null, null, null, "month");
+        TransactionRollupResponse account = service.getRollups("1000006", null, null, "day");
+        assertAll(
+            () -> assertEquals(new BigDecimal("100000002451.25000001"), all.getTotals().getTotalIncome()),
+            () -> assertEquals(new BigDecimal("0.00000001"), all.getTotals().getMinAmount()),
+            () -> assertEquals(new BigDecimal("5000000000.00000000"), all.getTotals().getMaxAmount()),
+            // the account's own series keeps the scale of its own amounts
+            () -> assertEquals(new BigDecimal("100000000000.00"), account.getTotals().getTotalIncome()),
+            () -> assertEquals(3, account.getBuckets().size()),
+            () -> assertEquals(new BigDecimal("35000000000.00"), account.getBuckets().get(0).getNet()),
+            () -> assertEquals(all, newService(appendedTo).getRollups(null, null, null, "month")),
+            () -> assertEquals(account, newService(appendedTo).getRollups("1000006", null, null, "day"))
+        );
+    }
+
+    @Test
+    void testGetLargestTransactions_MatchesFullSortInBothModes() throws IOException {
+        // few distinct amounts, written with different scales, and few timestamps, so there are many ties
+        SplittableRandom random = new SplittableRandom(11);
+        List<Transaction> all = new ArrayList<>();
+        for (String file : List.of("incomes.csv", "outcomes.csv")) {
+            StringBuilder csv = new StringBuilder("TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n");
+            for (int row = 0; row < 3000; row++) {
+                String amount = (1 + random.nextInt(40)) + (random.nextBoolean() ? ".5" : ".50");
+                LocalDateTime dateTime = LocalDateTime.of(2023, 1, 1, 0, 0).plusHours(random.nextInt(200));
+                String accountId = "100000" + random.nextInt(3);
+                csv.append(300_000_000 + row).append(",10001,").append(accountId).append(',').append(amount)
+                        .append(',').append(dateTime).append(":00\n");
+                all.add(Transaction.builder().accountId(accountId).amount(new BigDecimal(amount)).dateTime(dateTime)
+                        .type(file.startsWith("incomes") ? Transaction.TransactionType.INCOME : Transaction.TransactionType.OUTCOME)
+                        .build());
+            }
+            Files.writeString(tempDir.resolve(file), csv, StandardCharsets.UTF_8);
+        }
+        TransactionService memory = newService();
+        TransactionService csv = newService(csvStore());
+
+        LocalDateTime from = LocalDateTime.of(2023, 1, 2, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 1, 6, 0, 0);
+        List<String> expected = all.stream()
+                .filter(transaction -> transaction.getAccountId().equals("1000001"))
+                .filter(transaction -> !transaction.getDateTime().isBefore(from) && !transaction.getDateTime().isAfter(to))
+                .filter(transaction -> transaction.getType() == Transaction.TransactionType.OUTCOME)
+                .sorted(Comparator.comparing(Transaction::getAmount).reversed().thenComparing(Transaction::getDateTime))
+                .limit(50)
+                .map(ColumnarTransactionStoreTest::amountAndTime)
+                .collect(Collectors.toList());
+
+        for (TransactionService service : List.of(memory, csv)) {
+            LargestTransactionsResponse response = service.getLargestTransactions("1000001", from, to, "outcome", 50);
+            assertEquals(expected, response.getTransactions().stream()
+                    .map(ColumnarTransactionStoreTest::amountAndTime).collect(Collectors.toList()));
+        }
+        assertEquals(3, memory.getLargestTransactions(null, null, null, null, 3).getTransactions().size());
+        assertThrows(TransactionServiceException.class, () -> memory.getLargestTransactions(null, null, null, null, 0));
+        assertThrows(TransactionServiceException.class, () -> memory.getLargestTransactions(null, null, null, "refund", 10));
+    }
+
+    @Test
+    void testSources_FilesSplitIntoMoreSourcesServeTheSamePages() throws IOException {
+        String header = "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n";
+        String[] incomes = TEST_INCOMES_CSV.split("\n");
+        Files.writeString(tempDir.resolve("incomes-1.csv"), header + incomes[1] + "\n" + incomes[3] + "\n", StandardCharsets.UTF_8);
+        Files.writeString(tempDir.resolve("incomes-2.csv"), header + incomes[2] + "\n", StandardCharsets.UTF_8);
+        String sources = "INCOME:" + tempDir.resolve("incomes-1.csv") + ",outcome:" + tempDir.resolve("outcomes.csv")
+                + ",INCOME:" + tempDir.resolve("incomes-2.csv");
+
+        CsvTransactionStore csv = csvStore();
+        ReflectionTestUtils.setField(csv, "sourceList", sources);
+        List<TransactionService> services = new ArrayList<>(List.of(newService(csv)));
+        // the second store reads the snapshot the first one wrote
+        for (int load = 0; load < 2; load++) {
+            ColumnarTransactionStore memory = new ColumnarTransactionStore();
+            ReflectionTestUtils.setField(memory, "sourceList", sources);
+            ReflectionTestUtils.setField(memory, "snapshotFilePath", tempDir.resolve("split.snapshot").toString());
+            memory.load();
+            assertEquals(3, memory.runs(TransactionFilter.of(null, null, null)).size());
+            services.add(newService(memory));
+        }
+
+        for (String accountId : new String[]{null, "1000001"}) {
+            List<String> expected = pagedIds(transactionService, accountId);
+            for (TransactionService service : services) {
+                assertEquals(expected, pagedIds(service, accountId));
+                assertEquals(transactionService.getRollups(accountId, null, null, "day"), service.getRollups(accountId, null, null, "day"));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> TransactionSource.parse("REFUND:refunds.csv", null, null));
+        assertThrows(IllegalArgumentException.class, () -> TransactionSource.parse("incomes.csv", null, null));
+    }
+
+    @Test
+    void testDuplicates_PoliciesInBothModes() throws IOException {
+        List<String> expected = pagedIds(transactionService, null);
+        TransactionRollupResponse expectedRollups = transactionService.getRollups(null, null, null, "hour");
+        // repeats an income's ID, then one of its own
+        Files.writeString(tempDir.resolve("outcomes.csv"),
+                "123456790,10009,1000002,99.00,2023-01-02T09:00:00\n223456789,10009,1000001,999.00,2023-01-05T09:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        for (boolean memory : new boolean[]{false, true}) {
+            TransactionStore report = duplicatesStore(memory, "report");
+            TransactionStore keepFirst = duplicatesStore(memory, "keep-first");
+            TransactionService keepFirstService = newService(keepFirst);
+            DuplicateTransactionsResponse listed = newService(report).getDuplicates();
+
+            assertAll(
+                () -> assertEquals(8, pagedIds(newService(report), null).size()),
+                () -> assertEquals(2, listed.getCount()),
+                () -> assertEquals(List.of("123456790", "223456789"),
+                        listed.getDuplicates().stream().map(DuplicateTransaction::getTransactionId).toList()),
+                () -> assertEquals(Transaction.TransactionType.OUTCOME, listed.getDuplicates().get(0).getType()),
+                () -> assertEquals(expected, pagedIds(keepFirstService, null)),
+                () -> assertEquals(List.of("123456790", "223456790"), pagedIds(keepFirstService, "1000002")),
+                () -> assertEquals(expectedRollups, keepFirstService.getRollups(null, null, null, "hour")),
+                () -> assertEquals(new BigDecimal("1200.75"),
+                        keepFirstService.getLargestTransactions(null, null, null, null, 1).getTransactions().get(0).getAmount()),
+                () -> assertThrows(TransactionServiceException.class,
+                        () -> newService(duplicatesStore(memory, "reject")).getTransactions(null, null, null, null))
+            );
+        }
+    }
+
+    @Test
+    void testDuplicates_AppendedRepeatsFollowThePolicy() throws IOException {
+        ColumnarTransactionStore keepFirst = (ColumnarTransactionStore) duplicatesStore(true, "keep-first");
+        ColumnarTransactionStore reject = (ColumnarTransactionStore) duplicatesStore(true, "reject");
+        Files.writeString(tempDir.resolve("outcomes.csv"),
+                "123456789,10009,1000001,99.00,2023-01-01T09:00:00\n223456792,10009,1000001,5.00,2023-01-05T09:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        keepFirst.refresh();
+        reject.refresh();
+
+        assertAll(
+            () -> assertEquals(7, pagedIds(newService(keepFirst), null).size()),
+            () -> assertEquals(List.of("123456789", "223456789", "123456791", "223456791", "223456792"),
+                    pagedIds(newService(keepFirst), "1000001")),
+            () -> assertEquals(1, keepFirst.duplicates().getCount()),
+            () -> assertEquals(6, pagedIds(newService(reject), null).size()),
+            () -> assertEquals(0, reject.duplicates().getCount())
+        );
+    }
+
+    @Test
+    void testQuarantine_CorruptLinesAreLeftOutInBothModes() throws IOException {
+        List<String> expected = pagedIds(transactionService, null);
+        TransactionRollupResponse expectedRollups = transactionService.getRollups(null, null, null, "day");
+        String[] outcomes = TEST_OUTCOMES_CSV.split("\n");
+        Files.writeString(tempDir.resolve("outcomes.csv"), outcomes[0] + "\n" + outcomes[1] + "\n"
+                + "323456789,10001,1000001,-5.00,2023-01-01T16:00:00\n"
+                + outcomes[2] + "\n"
+                + "323456790,10001,1000001,5.00,2023-13-01T16:00:00\n"
+                + "323456791,10001\n"
+                + outcomes[3] + "\n", StandardCharsets.UTF_8);
+
+        // the last store reads the quarantine back from the snapshot the one before it wrote
+        List<TransactionService> services = List.of(newService(csvStore()), newService(newStore()), newService(newStore()));
+        for (TransactionService service : services) {
+            QuarantineResponse quarantine = service.getQuarantine();
+            QuarantinedRecord first = quarantine.getRecords().get(0);
+            assertAll(
+                () -> assertEquals(expected, pagedIds(service, null)),
+                () -> assertEquals(expectedRollups, service.getRollups(null, null, null, "day")),
+                () -> assertEquals(3, quarantine.getCount()),
+                () -> assertEquals(List.of(3L, 5L, 6L), quarantine.getRecords().stream().map(QuarantinedRecord::getLineNumber).toList()),
+                () -> assertEquals("AMOUNT", first.getField()),
+                () -> assertEquals("Amount must be positive: -5.00", first.getReason()),
+                () -> assertEquals("DATE_TIME", quarantine.getRecords().get(1).getField()),
+                () -> assertNull(quarantine.getRecords().get(2).getField())
+            );
+        }
+    }
+
+    @Test
+    void testQuarantine_BadAppendedRecordDoesNotHoldBackTheOthers() throws IOException {
+        ColumnarTransactionStore store = newStore();
+        Files.writeString(tempDir.resolve("incomes.csv"),
+                "123456792,10001,1000001,20.00,2023-01-01T12:00:00\n123456793,10001,1000001,x,2023-01-01T13:00:00\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        store.refresh();
+        List<CsvQuarantine> quarantine = store.quarantine();
+
+        assertAll(
+            () -> assertEquals(7, pagedIds(newService(store), null).size()),
+            () -> assertEquals(1, quarantine.get(0).getCount()),
+            () -> assertEquals(CsvQuarantine.UNKNOWN_LINE, quarantine.get(0).getEntries().get(0).getLineNumber()),
+            () -> assertEquals(0, quarantine.get(1).getCount())
+        );
+    }
+
+    private TransactionStore duplicatesStore(boolean memory, String policy) {
+        TransactionStore store = memory ? new ColumnarTransactionStore() : csvStore();
+        ReflectionTestUtils.setField(store, "incomesFilePath", tempDir.resolve("incomes.csv").toString());
+        ReflectionTestUtils.setField(store, "outcomesFilePath", tempDir.resolve("outcomes.csv").toString());
+        ReflectionTestUtils.setField(store, "duplicatePolicy", policy);
+        if (store instanceof ColumnarTransactionStore columnar) {
+            columnar.load();
+        }
+        return store;
+    }
+
+    private static List<String> pagedIds(TransactionService service, String accountId) {
+        ReflectionTestUtils.setField(service, "pageSize", 1);
+        List<String> ids = new ArrayList<>();
+        String token = null;
+        do {
+            TransactionPageResponse page = service.getTransactions(accountId, null, null, token);
+            ids.addAll(transactionIds(page));
+            token = page.getNextPageToken();
+        } while (token != null);
+        return ids;
+    }
+
+    private CsvTransactionStore csvStore() {
+        CsvTransactionStore store = new CsvTransactionStore();
+        ReflectionTestUtils.setField(store, "incomesFilePath", tempDir.resolve("incomes.csv").toString());
+        ReflectionTestUtils.setField(store, "outcomesFilePath", tempDir.resolve("outcomes.csv").toString());
+        return store;
+    }
+
+    private static String amountAndTime(Transaction transaction) {
+        return transaction.getAmount().stripTrailingZeros().toPlainString() + "@" + transaction.getDateTime();
+    }
+
+    private static List<String> transactionIds(TransactionPageResponse response) {
+        List<String> ids = new ArrayList<>();
+        response.getTransactions().forEach(transaction -> ids.add(transaction.getTransactionId()));
+        return ids;
+    }
+}
@@ -0,0 +1,80 @@
+package org.kthing.transactionsmicroservice.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceFetcherTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testFetchAllKeepsTaskOrder() {
+        SourceFetcher fetcher = new SourceFetcher(executor, 0);
+
+        assertEquals(List.of("incomes", "outcomes", "more"),
+                fetcher.fetchAll(List.<Callable<String>>of(() -> "incomes", () -> "outcomes", () -> "more")));
+    }
+
+    @Test
+    void testFailureCancelsOtherSources() throws InterruptedException {
+        SourceFetcher fetcher = new SourceFetcher(executor, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        TransactionServiceException e = assertThrows(TransactionServiceException.class, () -> fetcher.fetchAll(List.<Callable<String>>of(
+                () -> {
+                    started.await();
+                    throw new TransactionServiceException("incomes failed");
+                },
+                () -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(60_000);
+                    } catch (InterruptedException cancelled) {
+                        interrupted.countDown();
+                    }
+                    return "outcomes";
+                })));
+
+        assertEquals("incomes failed", e.getMessage());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testReadsAreLimited() throws Exception {
+        SourceFetcher fetcher = new SourceFetcher(null, 2);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Future<?>> requests = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            requests.add(executor.submit(() -> fetcher.read(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                return inFlight.decrementAndGet();
+            })));
+        }
+        for (Future<?> request : requests) {
+            request.get(5, TimeUnit.SECONDS);
+        }
+
+        assertTrue(maxInFlight.get() <= 2);
+    }
+}
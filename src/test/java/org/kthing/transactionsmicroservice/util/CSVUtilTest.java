@@ -0,0 +1,69 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CSVUtilTest {
+
+    @Test
+    void testDecodeRecord() {
+        TransactionRecord record = decode("123456789,0,1000001,750.50,2024-02-29T23:59:59");
+
+        assertAll(
+            () -> assertEquals(123456789L, record.getTransactionId()),
+            () -> assertEquals(0L, record.getCustomerId()),
+            () -> assertEquals(1000001L, record.getAccountId()),
+            () -> assertEquals(75050L, record.getUnscaledAmount()),
+            () -> assertEquals(2, record.getAmountScale()),
+            () -> assertEquals(LocalDateTime.parse("2024-02-29T23:59:59").toEpochSecond(ZoneOffset.UTC), record.getEpochSecond())
+        );
+
+        Transaction transaction = record.toTransaction(Transaction.TransactionType.INCOME);
+        assertAll(
+            () -> assertEquals("123456789", transaction.getTransactionId()),
+            () -> assertEquals(new BigDecimal("750.50"), transaction.getAmount()),
+            () -> assertEquals(LocalDateTime.parse("2024-02-29T23:59:59"), transaction.getDateTime())
+        );
+    }
+
+    @Test
+    void testDecodeAmountOutsideFastPath() {
+        assertEquals(new BigDecimal("1000"), decode("1,2,3,1E+3,2023-01-01T10:00:00").toTransaction(Transaction.TransactionType.INCOME).getAmount());
+        assertEquals(new BigDecimal("0.5"), decode("1,2,3,.5,2023-01-01T10:00:00").toTransaction(Transaction.TransactionType.INCOME).getAmount());
+    }
+
+    @Test
+    void testDecodeRejectsInvalidFields() {
+        assertAll(
+            () -> assertMessage("Invalid account ID format: 12a", "1,2,12a,10,2023-01-01T10:00:00"),
+            () -> assertMessage("Required field is missing or empty: CUSTOMER_ID", "1,,3,10,2023-01-01T10:00:00"),
+            () -> assertMessage("Amount must be positive: 0.00", "1,2,3,0.00,2023-01-01T10:00:00"),
+            () -> assertMessage("Amount must be positive: -5", "1,2,3,-5,2023-01-01T10:00:00"),
+            () -> assertMessage("Invalid amount format: 1x5", "1,2,3,1x5,2023-01-01T10:00:00"),
+            () -> assertMessage("Invalid date time format: 2023-02-29T10:00:00", "1,2,3,10,2023-02-29T10:00:00")
+        );
+    }
+
+    private static void assertMessage(String expected, String text) {
+        TransactionServiceException e = assertThrows(TransactionServiceException.class, () -> decode(text));
+        assertEquals(expected, e.getMessage());
+    }
+
+    private static TransactionRecord decode(String text) {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        CsvLine line = new CsvLine();
+        assertTrue(line.tokenize(buffer, 0, buffer.limit()));
+        TransactionRecord record = new TransactionRecord();
+        CSVUtil.decodeRecord(line, record);
+        return record;
+    }
+}
@@ -0,0 +1,55 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CsvFileVersionTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testVersionsThatALinearCombinationConfusesDiffer() {
+        // 31 * modified + size is the same for both
+        CsvFileVersion first = new CsvFileVersion(1_700_000_000_000L, 1000, "(dev=803,ino=42)");
+        CsvFileVersion second = new CsvFileVersion(1_700_000_000_001L, 969, "(dev=803,ino=42)");
+
+        assertAll(
+            () -> assertNotEquals(first, second),
+            () -> assertNotEquals(first.hash(), second.hash()),
+            () -> assertNotEquals(CsvFileVersion.hash(new CsvFileVersion[]{first, second}),
+                    CsvFileVersion.hash(new CsvFileVersion[]{second, first}))
+        );
+    }
+
+    @Test
+    void testFileReplacedWithSameSizeAndTimeGetsAnotherVersion() throws IOException {
+        Path file = tempDir.resolve("incomes.csv");
+        Path replacement = tempDir.resolve("incomes.csv.new");
+        Files.writeString(file, "TRANSACTION_ID\n1\n", StandardCharsets.UTF_8);
+        Files.writeString(replacement, "TRANSACTION_ID\n2\n", StandardCharsets.UTF_8);
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.setLastModifiedTime(replacement, modified);
+        CsvFileVersion before = PagedCsvReader.fileVersion(file.toString());
+        assumeTrue(before.getFileKey() != null, "the file system does not identify files");
+
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        CsvFileVersion after = PagedCsvReader.fileVersion(file.toString());
+
+        assertAll(
+            () -> assertEquals(before.getSize(), after.getSize()),
+            () -> assertEquals(before.getLastModifiedMillis(), after.getLastModifiedMillis()),
+            () -> assertNotEquals(before, after)
+        );
+    }
+}
@@ -0,0 +1,111 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kthing.transactionsmicroservice.exception.TransactionServiceException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvTimeIndexCacheTest {
+
+    private static final String HEADER = "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME\n";
+    private static final String RECORD = "123456789,10001,1000001,500.00,2023-01-01T10:00:00\n";
+
+    private final CsvTimeIndexCache cache = new CsvTimeIndexCache();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testConcurrentRequestsOnAColdFileShareOneIndex() throws Exception {
+        Path file = tempDir.resolve("cold.csv");
+        Files.writeString(file, HEADER + RECORD.repeat(10_000), StandardCharsets.UTF_8);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CsvTimeIndex>> indexes = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                indexes.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(file);
+                }));
+            }
+            start.countDown();
+
+            CsvTimeIndex first = indexes.get(0).get();
+            for (Future<CsvTimeIndex> index : indexes) {
+                assertSame(first, index.get());
+            }
+            assertEquals(10_000, first.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailedBuildIsNotCached() throws IOException {
+        Path file = tempDir.resolve("late.csv");
+        assertThrows(TransactionServiceException.class, () -> cache.get(file));
+
+        Files.writeString(file, HEADER + RECORD, StandardCharsets.UTF_8);
+
+        assertEquals(1, cache.get(file).size());
+    }
+
+    @Test
+    void testAppendedRecordsExtendTheCachedIndex() throws IOException {
+        Path file = tempDir.resolve("growing.csv");
+        Files.writeString(file, HEADER + RECORD, StandardCharsets.UTF_8);
+        CsvTimeIndex before = cache.get(file);
+        assertSame(before, cache.get(file));
+
+        Files.writeString(file, RECORD, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        CsvTimeIndex after = cache.get(file);
+
+        assertAll(
+            () -> assertEquals(1, before.size()),
+            () -> assertEquals(2, after.size()),
+            () -> assertEquals(PagedCsvReader.fileVersion(file.toString()), after.getVersion())
+        );
+    }
+
+    @Test
+    void testManyAppendsKeepFewSegmentsInTimeOrder() throws IOException {
+        Path file = tempDir.resolve("appended.csv");
+        Files.writeString(file, HEADER + RECORD, StandardCharsets.UTF_8);
+        cache.get(file);
+        for (int i = 0; i < 100; i++) {
+            // every other record is older than all before it
+            String dateTime = i % 2 == 0 ? "2023-01-02T" + String.format("%02d", i % 24) + ":00:00" : "2022-12-31T10:00:00";
+            Files.writeString(file, (200000000 + i) + ",10001,1000001,1.00," + dateTime + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+            cache.get(file);
+        }
+        CsvTimeIndex index = cache.get(file);
+        CsvTimeIndex built = CsvTimeIndex.build(file.toString(), index.getVersion());
+        List<Long> appendedOffsets = new ArrayList<>();
+        index.forEachInTimeOrder((segment, position) -> appendedOffsets.add(segment.offset(position)));
+        List<Long> builtOffsets = new ArrayList<>();
+        built.forEachInTimeOrder((segment, position) -> builtOffsets.add(segment.offset(position)));
+
+        assertAll(
+            () -> assertEquals(101, index.size()),
+            // appended records were indexed on their own, but merged so that the segments stay few
+            () -> assertTrue(index.getSegments().size() > 1 && index.getSegments().size() <= 8),
+            () -> assertEquals(builtOffsets, appendedOffsets)
+        );
+    }
+}
@@ -0,0 +1,59 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    void testAddAndContains_MatchHashSetWhileGrowing() {
+        LongHashSet set = new LongHashSet(4);
+        Set<Long> expected = new HashSet<>();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 50_000; i++) {
+            // a narrow range so values repeat
+            long value = random.nextInt(3) == 0 ? random.nextLong() : random.nextLong(40_000);
+            assertEquals(expected.add(value), set.add(value));
+        }
+        for (long value = -10; value < 41_000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        assertEquals(expected.size(), set.size());
+    }
+
+    @Test
+    void testFreeSlotMarkerIsAnOrdinaryElement() {
+        LongHashSet set = new LongHashSet(10);
+
+        assertFalse(set.contains(Long.MIN_VALUE));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(Long.MIN_VALUE));
+        assertTrue(set.add(0));
+
+        assertAll(
+            () -> assertTrue(set.contains(Long.MIN_VALUE)),
+            () -> assertTrue(set.contains(0)),
+            () -> assertFalse(set.contains(Long.MAX_VALUE)),
+            () -> assertEquals(2, set.size())
+        );
+    }
+
+    @Test
+    void testMemoryFootprint_SizedForExpectedElements() {
+        LongHashSet set = new LongHashSet(1_000_000);
+        long sized = set.memoryFootprintBytes();
+        for (long value = 0; value < 1_000_000; value++) {
+            set.add(value * 31);
+        }
+
+        assertAll(
+            () -> assertEquals(sized, set.memoryFootprintBytes()),
+            () -> assertTrue(sized < 11 * 1_000_000L)
+        );
+    }
+}
@@ -0,0 +1,84 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kthing.transactionsmicroservice.model.Transaction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedCsvReaderTest {
+
+    private static final String HEADER = "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testScanMatchesCommonsCsvForMixedLines() throws IOException {
+        Path file = tempDir.resolve("data.csv");
+        Files.writeString(file, HEADER + "\r\n"
+                + "123456789,10001,1000001,500.00,2024-02-29T23:59:59\r\n"
+                + "\"223456789\",10002, 1000002 ,300.5,2023-01-01T00:00:00.5\r\n"
+                + "\r\n"
+                + "323456789,10003,1000003,7,1969-12-31T23:59", StandardCharsets.UTF_8);
+
+        List<Long> offsets = new ArrayList<>();
+        List<Long> epochSeconds = new ArrayList<>();
+        List<Long> accountIds = new ArrayList<>();
+        PagedCsvReader.scanRecords(file.toString(), (line, offset) -> {
+            offsets.add(offset);
+            epochSeconds.add(line.epochSecond(CsvLine.DATE_TIME));
+            accountIds.add(line.digits(CsvLine.ACCOUNT_ID));
+        }, new CsvQuarantine(file.toString()));
+
+        assertEquals(List.of(
+                LocalDateTime.parse("2024-02-29T23:59:59").toEpochSecond(ZoneOffset.UTC),
+                LocalDateTime.parse("2023-01-01T00:00:00").toEpochSecond(ZoneOffset.UTC),
+                LocalDateTime.parse("1969-12-31T23:59").toEpochSecond(ZoneOffset.UTC)), epochSeconds);
+        assertEquals(List.of(1000001L, 1000002L, 1000003L), accountIds);
+
+        long[] positions = offsets.stream().mapToLong(Long::longValue).toArray();
+        List<Transaction> transactions = PagedCsvReader.readTransactionsAt(
+                file.toString(), Transaction.TransactionType.INCOME, positions, positions.length);
+
+        assertAll(
+            () -> assertEquals("123456789", transactions.get(0).getTransactionId()),
+            () -> assertEquals("223456789", transactions.get(1).getTransactionId()),
+            () -> assertEquals("1000002", transactions.get(1).getAccountId()),
+            () -> assertEquals(new BigDecimal("300.5"), transactions.get(1).getAmount()),
+            () -> assertEquals("323456789", transactions.get(2).getTransactionId())
+        );
+    }
+
+    @Test
+    void testReorderedHeaderFallsBackToCommonsCsv() throws IOException {
+        Path file = tempDir.resolve("data.csv");
+        Files.writeString(file, "DATE_TIME,AMOUNT,ACCOUNT_ID,CUSTOMER_ID,TRANSACTION_ID\n"
+                + "2023-01-01T10:00:00,500.00,1000001,10001,123456789\n", StandardCharsets.UTF_8);
+
+        List<Long> offsets = new ArrayList<>();
+        PagedCsvReader.scanRecords(file.toString(), (line, offset) -> {
+            assertEquals(1000001L, line.digits(CsvLine.ACCOUNT_ID));
+            offsets.add(offset);
+        }, new CsvQuarantine(file.toString()));
+
+        List<Transaction> transactions = PagedCsvReader.readTransactionsAt(
+                file.toString(), Transaction.TransactionType.OUTCOME, new long[]{offsets.get(0)}, 1);
+
+        assertAll(
+            () -> assertEquals(1, offsets.size()),
+            () -> assertEquals("123456789", transactions.get(0).getTransactionId()),
+            () -> assertEquals(LocalDateTime.parse("2023-01-01T10:00:00"), transactions.get(0).getDateTime())
+        );
+    }
+}
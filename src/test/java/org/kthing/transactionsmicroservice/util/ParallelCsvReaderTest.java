@@ -0,0 +1,100 @@
+package org.kthing.transactionsmicroservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelCsvReaderTest {
+
+    private static final String HEADER = "TRANSACTION_ID,CUSTOMER_ID,ACCOUNT_ID,AMOUNT,DATE_TIME";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRangesVisitRecordsInFileOrder() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < 200; i++) {
+            csv.append(1000 + i).append(",1,").append(i % 7).append(",1.50,2023-01-01T10:00:00").append(i % 3 == 0 ? "\r\n" : "\n");
+            if (i % 50 == 0) {
+                csv.append('\n');
+            }
+        }
+        Path file = tempDir.resolve("data.csv");
+        Files.writeString(file, csv.toString(), StandardCharsets.UTF_8);
+
+        List<String> sequential = new ArrayList<>();
+        PagedCsvReader.scanRecords(file.toString(), (line, offset) -> sequential.add(offset + ":" + line.field(CsvLine.TRANSACTION_ID)),
+                new CsvQuarantine(file.toString()));
+        ParallelCsvReader.Scan<Collector> scan = ParallelCsvReader.scanRecords(file.toString(), Collector::new, 64, 4);
+        List<String> parallel = new ArrayList<>();
+        scan.getVisitors().forEach(collector -> parallel.addAll(collector.records));
+
+        assertAll(
+            () -> assertEquals(16, scan.getVisitors().size()),
+            () -> assertEquals(200, parallel.size()),
+            () -> assertEquals(sequential, parallel),
+            () -> assertEquals(Files.size(file), scan.getCursor().getOffset())
+        );
+    }
+
+    @Test
+    void testQuarantinesBadRecordsWithLineNumbers() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < 100; i++) {
+            String accountId = i == 40 || i == 90 ? "12a" : String.valueOf(i);
+            csv.append(1000 + i).append(",1,").append(accountId).append(",1.50,2023-01-01T10:00:00\n");
+            if (i == 10) {
+                csv.append("\r\n");
+            }
+        }
+        Path file = tempDir.resolve("data.csv");
+        Files.writeString(file, csv.toString(), StandardCharsets.UTF_8);
+
+        ParallelCsvReader.Scan<DecodingCollector> parallel = ParallelCsvReader.scanRecords(file.toString(), DecodingCollector::new, 64, 4);
+        DecodingCollector sequentialCollector = new DecodingCollector();
+        CsvQuarantine sequential = new CsvQuarantine(file.toString());
+        PagedCsvReader.scanRecords(file.toString(), sequentialCollector, sequential);
+
+        // header, 40 good records and one blank line come before the first bad record
+        CsvQuarantine.Entry first = parallel.getQuarantine().getEntries().get(0);
+        assertAll(
+            () -> assertEquals(98, parallel.getVisitors().stream().mapToInt(collector -> collector.decoded).sum()),
+            () -> assertEquals(98, sequentialCollector.decoded),
+            () -> assertEquals(2, parallel.getQuarantine().getCount()),
+            () -> assertEquals(43, first.getLineNumber()),
+            () -> assertEquals(93, parallel.getQuarantine().getEntries().get(1).getLineNumber()),
+            () -> assertEquals("ACCOUNT_ID", first.getField()),
+            () -> assertEquals("Invalid account ID format: 12a", first.getReason()),
+            () -> assertEquals(sequential.getEntries(), parallel.getQuarantine().getEntries())
+        );
+    }
+
+    private static class Collector implements PagedCsvReader.RecordVisitor {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void visit(CsvLine line, long offset) {
+            records.add(offset + ":" + line.field(CsvLine.TRANSACTION_ID));
+        }
+    }
+
+    private static class DecodingCollector implements PagedCsvReader.RecordVisitor {
+        private final TransactionRecord record = new TransactionRecord();
+        int decoded;
+
+        @Override
+        public void visit(CsvLine line, long offset) {
+            CSVUtil.decodeRecord(line, record);
+            decoded++;
+        }
+    }
+}